@@ -26,6 +26,7 @@ import org.sonar.api.database.model.RuleFailureModel;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.api.database.model.SnapshotSource;
 import org.sonar.api.resources.Resource;
+import org.sonar.core.source.SourceCompression;
 
 import javax.persistence.Query;
 
@@ -53,7 +54,7 @@ public class ReferenceAnalysis implements BatchExtension {
     if (snapshot != null) {
       SnapshotSource source = session.getSingleResult(SnapshotSource.class, "snapshotId", snapshot.getId());
       if (source != null) {
-        return source.getData();
+        return SourceCompression.decompress(source.getData());
       }
     }
     return "";
@@ -0,0 +1,128 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.core.timemachine;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.batch.BatchExtensionDictionnary;
+import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.batch.events.EventHandler;
+import org.sonar.api.config.Settings;
+import org.sonar.api.database.DatabaseSession;
+import org.sonar.api.database.model.RuleFailureModel;
+import org.sonar.api.database.model.Snapshot;
+import org.sonar.api.platform.ComponentContainer;
+import org.sonar.api.resources.JavaFile;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.rules.Rule;
+import org.sonar.api.rules.RuleFinder;
+import org.sonar.api.rules.Violation;
+import org.sonar.api.utils.DateUtils;
+import org.sonar.api.violations.ViolationQuery;
+import org.sonar.batch.events.EventBus;
+import org.sonar.batch.index.ResourcePersister;
+import org.sonar.batch.phases.DecoratorsExecutor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ViolationDecoratorsConcurrencyTest {
+
+  private static final int FILES = 50;
+
+  @Test
+  public void shouldTrackAndPersistViolationsWhenDecoratingConcurrently() {
+    Project project = new Project("key").setAnalysisDate(DateUtils.parseDate("2012-06-01"));
+    Rule rule = Rule.create("repo", "rule", "Rule");
+    rule.setId(1);
+
+    SonarIndex index = mock(SonarIndex.class);
+    ReferenceAnalysis referenceAnalysis = mock(ReferenceAnalysis.class);
+    ResourcePersister resourcePersister = mock(ResourcePersister.class);
+    final Map<Resource, List<Violation>> violationsByResource = Maps.newHashMap();
+    List<Resource> files = Lists.newArrayList();
+    for (int i = 0; i < FILES; i++) {
+      JavaFile file = new JavaFile("org.foo.Bar" + i);
+      files.add(file);
+      String source = "class Bar" + i + " {}";
+      violationsByResource.put(file, Lists.newArrayList(Violation.create(rule, file).setLineId(1).setMessage("message")));
+      when(index.getSource(file)).thenReturn(source);
+
+      // the reference violation of each file has its own permanent id
+      RuleFailureModel referenceViolation = new RuleFailureModel();
+      referenceViolation.setId(i);
+      referenceViolation.setRuleId(1);
+      referenceViolation.setLine(1);
+      referenceViolation.setMessage("message");
+      referenceViolation.setChecksum(SourceChecksum.getChecksumForLine(SourceChecksum.lineChecksumsOfFile(source), 1));
+      referenceViolation.setPermanentId(i);
+      when(referenceAnalysis.getViolations(file)).thenReturn(Lists.newArrayList(referenceViolation));
+
+      Snapshot snapshot = new Snapshot();
+      snapshot.setId(i);
+      when(resourcePersister.saveResource(project, file)).thenReturn(snapshot);
+    }
+    when(index.getProject()).thenReturn(project);
+    when(index.getChildren(any(Resource.class))).thenReturn(Collections.<Resource>emptyList());
+    when(index.getChildren(project)).thenReturn(files);
+    Answer<List<Violation>> violations = new Answer<List<Violation>>() {
+      public List<Violation> answer(InvocationOnMock invocation) {
+        Object argument = invocation.getArguments()[0];
+        Resource resource = argument instanceof ViolationQuery ? ((ViolationQuery) argument).getResource() : (Resource) argument;
+        List<Violation> result = violationsByResource.get(resource);
+        return result != null ? result : Collections.<Violation>emptyList();
+      }
+    };
+    when(index.getViolations(any(ViolationQuery.class))).thenAnswer(violations);
+    when(index.getViolations(any(Resource.class))).thenAnswer(violations);
+    RuleFinder ruleFinder = mock(RuleFinder.class);
+    when(ruleFinder.findByKey("repo", "rule")).thenReturn(rule);
+    DatabaseSession session = mock(DatabaseSession.class);
+
+    ViolationTrackingDecorator tracker = new ViolationTrackingDecorator(project, referenceAnalysis, index);
+    ComponentContainer container = new ComponentContainer();
+    container.addSingleton(tracker);
+    container.addSingleton(new ViolationPersisterDecorator(tracker, resourcePersister, ruleFinder, session));
+    Settings settings = new Settings().setProperty(DecoratorsExecutor.THREADS_PROPERTY, 4);
+    new DecoratorsExecutor(new BatchExtensionDictionnary(container), project, index, new EventBus(new EventHandler[0]), settings).execute();
+
+    ArgumentCaptor<RuleFailureModel> models = ArgumentCaptor.forClass(RuleFailureModel.class);
+    verify(session, atLeastOnce()).saveWithoutFlush(models.capture());
+    assertThat(models.getAllValues().size(), is(FILES));
+    for (RuleFailureModel model : models.getAllValues()) {
+      // the violation kept the permanent id of the reference violation of its own file
+      assertThat(model.getPermanentId(), is(model.getSnapshotId()));
+    }
+  }
+}
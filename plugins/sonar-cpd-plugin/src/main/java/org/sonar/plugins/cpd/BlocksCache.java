@@ -0,0 +1,207 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.cpd;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.utils.SonarException;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import javax.annotation.CheckForNull;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Blocks of files from previous analysis, stored on disk and identified by checksum of content of files,
+ * so that only modified files have to be tokenized. Cache is ignored when size of blocks, encoding of sources or rules of
+ * statements were changed.
+ * Methods {@link #get(String, String)} and {@link #put(String, String, List)} can be called concurrently.
+ *
+ * @since 3.2
+ */
+class BlocksCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BlocksCache.class);
+
+  /**
+   * Should be incremented each time when format of file or computation of blocks is changed.
+   */
+  private static final int VERSION = 3;
+
+  private final File file;
+  private final int blockSize;
+  private final String charset;
+  private final String statementRules;
+
+  private final Map<String, Entry> previous = Maps.newHashMap();
+  private final Map<String, Entry> current = new ConcurrentHashMap<String, Entry>();
+  private final AtomicInteger hits = new AtomicInteger();
+
+  private static final class Entry {
+    private final String checksum;
+    private final List<Block> blocks;
+
+    Entry(String checksum, List<Block> blocks) {
+      this.checksum = checksum;
+      this.blocks = blocks;
+    }
+  }
+
+  /**
+   * @param statementRules identifies the rules used to build statements, for example the language and the version of the plugin
+   */
+  BlocksCache(File file, int blockSize, String charset, String statementRules) {
+    this.file = file;
+    this.blockSize = blockSize;
+    this.charset = charset;
+    this.statementRules = statementRules;
+  }
+
+  /**
+   * Loads blocks of previous analysis. Cache is considered as empty if file does not exist or can not be read.
+   */
+  BlocksCache load() {
+    previous.clear();
+    if (!file.isFile()) {
+      return this;
+    }
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (in.readInt() != VERSION || in.readInt() != blockSize || !charset.equals(in.readUTF()) || !statementRules.equals(in.readUTF())) {
+        LOG.debug("Cache of duplications is outdated: {}", file);
+        return this;
+      }
+      int entries = in.readInt();
+      for (int i = 0; i < entries; i++) {
+        String resourceKey = in.readUTF();
+        String checksum = in.readUTF();
+        previous.put(resourceKey, new Entry(checksum, readBlocks(in, resourceKey)));
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to read cache of duplications: " + file, e);
+      previous.clear();
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+    return this;
+  }
+
+  private static List<Block> readBlocks(DataInputStream in, String resourceKey) throws IOException {
+    int size = in.readInt();
+    List<Block> blocks = Lists.newArrayListWithCapacity(size);
+    Block.Builder builder = Block.builder().setResourceId(resourceKey);
+    for (int i = 0; i < size; i++) {
+      blocks.add(builder
+          .setBlockHash(new ByteArray(in.readLong()))
+          .setIndexInFile(in.readInt())
+          .setLines(in.readInt(), in.readInt())
+          .setUnit(in.readInt(), in.readInt())
+          .build());
+    }
+    return blocks;
+  }
+
+  /**
+   * Saves blocks, which were put in this cache. Blocks of deleted files are not kept.
+   * Cache is only an optimization, so analysis is not failed if file can not be written, but partly written file is deleted.
+   */
+  void save() {
+    DataOutputStream out = null;
+    try {
+      FileUtils.forceMkdir(file.getParentFile());
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      out.writeInt(VERSION);
+      out.writeInt(blockSize);
+      out.writeUTF(charset);
+      out.writeUTF(statementRules);
+      out.writeInt(current.size());
+      for (Map.Entry<String, Entry> entry : current.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeUTF(entry.getValue().checksum);
+        writeBlocks(out, entry.getValue().blocks);
+      }
+      out.close();
+    } catch (IOException e) {
+      LOG.warn("Unable to write cache of duplications: " + file, e);
+      IOUtils.closeQuietly(out);
+      FileUtils.deleteQuietly(file);
+    } finally {
+      IOUtils.closeQuietly(out);
+    }
+  }
+
+  private static void writeBlocks(DataOutputStream out, List<Block> blocks) throws IOException {
+    out.writeInt(blocks.size());
+    for (Block block : blocks) {
+      out.writeLong(block.getBlockHash().toLong());
+      out.writeInt(block.getIndexInFile());
+      out.writeInt(block.getStartLine());
+      out.writeInt(block.getEndLine());
+      out.writeInt(block.getStartUnit());
+      out.writeInt(block.getEndUnit());
+    }
+  }
+
+  /**
+   * @return blocks from previous analysis, or null if file was added or modified since
+   */
+  @CheckForNull
+  List<Block> get(String resourceKey, String checksum) {
+    Entry entry = previous.get(resourceKey);
+    if (entry != null && entry.checksum.equals(checksum)) {
+      hits.incrementAndGet();
+      return entry.blocks;
+    }
+    return null;
+  }
+
+  void put(String resourceKey, String checksum, List<Block> blocks) {
+    current.put(resourceKey, new Entry(checksum, Collections.unmodifiableList(blocks)));
+  }
+
+  /**
+   * @return number of files, for which blocks were found in this cache
+   */
+  int getHits() {
+    return hits.get();
+  }
+
+  static String checksum(byte[] content) {
+    try {
+      return new ByteArray(MessageDigest.getInstance("MD5").digest(content)).toHexString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new SonarException(e);
+    }
+  }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.cpd;
+
+import org.sonar.api.batch.CpdStatementMapping;
+import org.sonar.api.resources.InputFile;
+import org.sonar.api.resources.Java;
+import org.sonar.api.resources.JavaFile;
+import org.sonar.api.resources.Language;
+import org.sonar.api.resources.Resource;
+import org.sonar.duplications.java.JavaStatementBuilder;
+import org.sonar.duplications.java.JavaTokenProducer;
+import org.sonar.duplications.statement.StatementChunker;
+import org.sonar.duplications.token.TokenChunker;
+
+/**
+ * Built-in rules of {@link SonarEngine} for Java.
+ */
+class JavaStatementMapping implements CpdStatementMapping {
+
+  public Language getLanguage() {
+    return Java.INSTANCE;
+  }
+
+  public TokenChunker createTokenChunker() {
+    return JavaTokenProducer.build();
+  }
+
+  public StatementChunker createStatementChunker() {
+    return JavaStatementBuilder.build();
+  }
+
+  public Resource createResource(InputFile inputFile) {
+    return JavaFile.fromRelativePath(inputFile.getRelativePath(), false);
+  }
+
+}
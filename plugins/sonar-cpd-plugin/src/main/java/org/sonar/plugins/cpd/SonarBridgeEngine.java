@@ -37,7 +37,6 @@ import org.sonar.duplications.internal.pmd.TokenizerBridge;
 import org.sonar.plugins.cpd.index.IndexFactory;
 import org.sonar.plugins.cpd.index.SonarDuplicationsIndex;
 
-import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.*;
 
@@ -100,11 +99,9 @@ public class SonarBridgeEngine extends CpdEngine {
         Resource resource = mapping.createResource(inputFile.getFile(), fileSystem.getSourceDirs());
         String resourceKey = SonarEngine.getFullKey(project, resource);
 
-        Collection<Block> fileBlocks = index.getByResource(resource, resourceKey);
-
         Iterable<CloneGroup> filtered;
         try {
-          List<CloneGroup> duplications = executorService.submit(new SonarEngine.Task(index, fileBlocks)).get(TIMEOUT, TimeUnit.SECONDS);
+          List<CloneGroup> duplications = executorService.submit(new SonarEngine.Task(index, resource, resourceKey)).get(TIMEOUT, TimeUnit.SECONDS);
           filtered = Iterables.filter(duplications, minimumTokensPredicate);
         } catch (TimeoutException e) {
           filtered = null;
@@ -122,7 +119,7 @@ public class SonarBridgeEngine extends CpdEngine {
     }
   }
 
-  private static int getBlockSize(Project project) {
+  static int getBlockSize(Project project) {
     String languageKey = project.getLanguageKey();
     return project.getConfiguration()
         .getInt("sonar.cpd." + languageKey + ".minimumLines", getDefaultBlockSize(languageKey));
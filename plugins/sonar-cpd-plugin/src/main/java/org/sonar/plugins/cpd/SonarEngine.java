@@ -20,38 +20,47 @@
 package org.sonar.plugins.cpd;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.CpdStatementMapping;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.model.ResourceModel;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.PersistenceMode;
 import org.sonar.api.resources.*;
 import org.sonar.api.utils.SonarException;
+import org.sonar.core.duplication.DuplicationsData;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.BlockChunker;
 import org.sonar.duplications.detector.suffixtree.SuffixTreeCloneDetectionAlgorithm;
 import org.sonar.duplications.index.CloneGroup;
-import org.sonar.duplications.index.CloneIndex;
 import org.sonar.duplications.index.ClonePart;
-import org.sonar.duplications.java.JavaStatementBuilder;
-import org.sonar.duplications.java.JavaTokenProducer;
 import org.sonar.duplications.statement.Statement;
 import org.sonar.duplications.statement.StatementChunker;
 import org.sonar.duplications.token.TokenChunker;
 import org.sonar.plugins.cpd.index.IndexFactory;
 import org.sonar.plugins.cpd.index.SonarDuplicationsIndex;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.*;
@@ -67,15 +76,75 @@ public class SonarEngine extends CpdEngine {
    */
   private static final int TIMEOUT = 5 * 60;
 
+  /**
+   * Number of threads used to tokenize files and to detect duplications. Files are processed one after another when this value is lower than 2.
+   *
+   * @since 3.2
+   */
+  public static final String THREADS_PROPERTY = "sonar.cpd.threads";
+
+  /**
+   * Whether blocks of files should be kept between analyses, so that only modified files are tokenized. By default they are kept
+   * in the working directory, which is deleted by a clean build (for example "mvn clean" deletes target/sonar), see {@link #CACHE_DIR_PROPERTY}.
+   *
+   * @since 3.2
+   */
+  public static final String CACHE_PROPERTY = "sonar.cpd.cache";
+
+  /**
+   * Directory of the cache of blocks, for example a directory which is not deleted by clean builds. A relative path is resolved
+   * against the base directory of the project. Each project has its own sub-directory.
+   *
+   * @since 3.2
+   */
+  public static final String CACHE_DIR_PROPERTY = "sonar.cpd.cache.dir";
+
+  private static final CpdStatementMapping JAVA_MAPPING = new JavaStatementMapping();
+
   private final IndexFactory indexFactory;
+  private final Settings settings;
+  private final CpdStatementMapping[] mappings;
 
-  public SonarEngine(IndexFactory indexFactory) {
+  /**
+   * @since 3.2
+   */
+  public SonarEngine(IndexFactory indexFactory, Settings settings, CpdStatementMapping[] mappings) {
     this.indexFactory = indexFactory;
+    this.settings = settings;
+    this.mappings = mappings;
+  }
+
+  public SonarEngine(IndexFactory indexFactory, Settings settings) {
+    this(indexFactory, settings, new CpdStatementMapping[0]);
+  }
+
+  public SonarEngine(IndexFactory indexFactory) {
+    this(indexFactory, new Settings());
   }
 
   @Override
   public boolean isLanguageSupported(Language language) {
-    return Java.INSTANCE.equals(language);
+    return getMapping(language) != null;
+  }
+
+  /**
+   * @return built-in rules for Java, otherwise rules provided by plugins, or null if language is not supported
+   */
+  @CheckForNull
+  private CpdStatementMapping getMapping(Language language) {
+    if (Java.INSTANCE.equals(language)) {
+      return JAVA_MAPPING;
+    }
+    for (CpdStatementMapping mapping : mappings) {
+      if (mapping.getLanguage().equals(language)) {
+        return mapping;
+      }
+    }
+    return null;
+  }
+
+  private static int getBlockSize(Project project) {
+    return Java.INSTANCE.equals(project.getLanguage()) ? BLOCK_SIZE : SonarBridgeEngine.getBlockSize(project);
   }
 
   static String getFullKey(Project project, Resource resource) {
@@ -93,87 +162,282 @@ public class SonarEngine extends CpdEngine {
       return;
     }
     SonarDuplicationsIndex index = createIndex(project, inputFiles);
-    detect(index, context, project, inputFiles);
+    try {
+      List<InputFile> timedOut = detect(index, context, project, inputFiles, TimeUnit.SECONDS.toMillis(TIMEOUT));
+      if (!timedOut.isEmpty()) {
+        StringBuilder message = new StringBuilder()
+            .append("Duplications are not saved for ").append(timedOut.size()).append(" file(s) out of ").append(inputFiles.size())
+            .append(", because of timeout of ").append(TIMEOUT).append(" seconds:");
+        for (InputFile inputFile : timedOut) {
+          message.append(' ').append(inputFile.getRelativePath());
+        }
+        LOG.warn(message.toString());
+      }
+    } finally {
+      index.close();
+    }
   }
 
-  private SonarDuplicationsIndex createIndex(Project project, List<InputFile> inputFiles) {
-    final SonarDuplicationsIndex index = indexFactory.create(project);
+  SonarDuplicationsIndex createIndex(Project project, List<InputFile> inputFiles) {
+    SonarDuplicationsIndex index = indexFactory.create(project, inputFiles.size());
+    CpdStatementMapping mapping = getMapping(project.getLanguage());
+    int blockSize = getBlockSize(project);
+    BlocksCache cache = createCache(project, mapping, blockSize);
 
-    TokenChunker tokenChunker = JavaTokenProducer.build();
-    StatementChunker statementChunker = JavaStatementBuilder.build();
-    BlockChunker blockChunker = new BlockChunker(BLOCK_SIZE);
+    int threads = Math.min(settings.getInt(THREADS_PROPERTY), inputFiles.size());
+    if (threads > 1) {
+      List<List<Block>> blocksByFile = chunkConcurrently(project, mapping, blockSize, cache, inputFiles, threads);
+      for (int i = 0; i < inputFiles.size(); i++) {
+        index.insert(mapping.createResource(inputFiles.get(i)), blocksByFile.get(i));
+      }
+    } else {
+      ChunkTask task = new ChunkTask(project, mapping, blockSize, cache, inputFiles);
+      for (InputFile inputFile : inputFiles) {
+        index.insert(mapping.createResource(inputFile), task.chunk(inputFile));
+      }
+    }
 
-    for (InputFile inputFile : inputFiles) {
-      LOG.debug("Populating index from {}", inputFile.getFile());
-      Resource resource = getResource(inputFile);
-      String resourceKey = getFullKey(project, resource);
+    if (cache != null) {
+      LOG.info("Blocks of {} file(s) out of {} reused from previous analysis", cache.getHits(), inputFiles.size());
+      cache.save();
+    }
+    return index;
+  }
 
-      List<Statement> statements;
+  @Nullable
+  private BlocksCache createCache(Project project, CpdStatementMapping mapping, int blockSize) {
+    File file = settings.getBoolean(CACHE_PROPERTY) ? getCacheFile(project) : null;
+    if (file == null) {
+      return null;
+    }
+    return new BlocksCache(file, blockSize, project.getFileSystem().getSourceCharset().name(), getStatementRules(project, mapping)).load();
+  }
 
+  @CheckForNull
+  private File getCacheFile(Project project) {
+    String cacheDir = settings.getString(CACHE_DIR_PROPERTY);
+    if (StringUtils.isNotBlank(cacheDir)) {
+      File projectDir = new File(project.getFileSystem().resolvePath(cacheDir), project.getKey().replaceAll("[^\\w.-]", "_"));
+      return new File(projectDir, "blocks.dat");
+    }
+    File workingDir = project.getFileSystem().getSonarWorkingDirectory();
+    return workingDir == null ? null : new File(workingDir, "cpd/blocks.dat");
+  }
+
+  /**
+   * Statements depend on the language and on the implementation of the mapping, which can change with the version of its plugin.
+   */
+  static String getStatementRules(Project project, CpdStatementMapping mapping) {
+    Package mappingPackage = mapping.getClass().getPackage();
+    return new StringBuilder()
+        .append(project.getLanguageKey())
+        .append('/')
+        .append(mapping.getClass().getName())
+        .append('/')
+        .append(mappingPackage == null ? "" : StringUtils.defaultString(mappingPackage.getImplementationVersion()))
+        .toString();
+  }
+
+  /**
+   * Files are split in as many slices as threads. Blocks are inserted in the index by the current thread, in the order of files.
+   */
+  private List<List<Block>> chunkConcurrently(Project project, CpdStatementMapping mapping, int blockSize, @Nullable BlocksCache cache,
+      List<InputFile> inputFiles, int threads) {
+    int sliceSize = (inputFiles.size() + threads - 1) / threads;
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<List<List<Block>>>> futures = Lists.newArrayList();
+      for (List<InputFile> slice : Lists.partition(inputFiles, sliceSize)) {
+        futures.add(executorService.submit(new ChunkTask(project, mapping, blockSize, cache, slice)));
+      }
+      List<List<Block>> result = Lists.newArrayListWithCapacity(inputFiles.size());
+      for (Future<List<List<Block>>> future : futures) {
+        result.addAll(future.get());
+      }
+      return result;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SonarException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new SonarException(e.getCause());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  /**
+   * Tokenizes and chunks files, unless their blocks are found in cache. Chunkers are not shared between tasks.
+   */
+  static class ChunkTask implements Callable<List<List<Block>>> {
+    private final Project project;
+    private final CpdStatementMapping mapping;
+    private final BlocksCache cache;
+    private final List<InputFile> inputFiles;
+    private final TokenChunker tokenChunker;
+    private final StatementChunker statementChunker;
+    private final BlockChunker blockChunker;
+
+    ChunkTask(Project project, CpdStatementMapping mapping, int blockSize, @Nullable BlocksCache cache, List<InputFile> inputFiles) {
+      this.project = project;
+      this.mapping = mapping;
+      this.cache = cache;
+      this.inputFiles = inputFiles;
+      this.tokenChunker = mapping.createTokenChunker();
+      this.statementChunker = mapping.createStatementChunker();
+      this.blockChunker = new BlockChunker(blockSize);
+    }
+
+    public List<List<Block>> call() {
+      List<List<Block>> result = Lists.newArrayListWithCapacity(inputFiles.size());
+      for (InputFile inputFile : inputFiles) {
+        result.add(chunk(inputFile));
+      }
+      return result;
+    }
+
+    List<Block> chunk(InputFile inputFile) {
+      String resourceKey = getFullKey(project, mapping.createResource(inputFile));
+      if (cache == null) {
+        LOG.debug("Populating index from {}", inputFile.getFile());
+        try {
+          return chunk(resourceKey, new FileInputStream(inputFile.getFile()));
+        } catch (FileNotFoundException e) {
+          throw new SonarException(e);
+        }
+      }
+
+      byte[] content;
+      try {
+        content = FileUtils.readFileToByteArray(inputFile.getFile());
+      } catch (IOException e) {
+        throw new SonarException(e);
+      }
+      String checksum = BlocksCache.checksum(content);
+      List<Block> blocks = cache.get(resourceKey, checksum);
+      if (blocks == null) {
+        LOG.debug("Populating index from {}", inputFile.getFile());
+        blocks = chunk(resourceKey, new ByteArrayInputStream(content));
+      }
+      cache.put(resourceKey, checksum, blocks);
+      return blocks;
+    }
+
+    private List<Block> chunk(String resourceKey, InputStream input) {
+      List<Statement> statements;
       Reader reader = null;
       try {
-        reader = new InputStreamReader(new FileInputStream(inputFile.getFile()), project.getFileSystem().getSourceCharset());
+        reader = new InputStreamReader(input, project.getFileSystem().getSourceCharset());
         statements = statementChunker.chunk(tokenChunker.chunk(reader));
-      } catch (FileNotFoundException e) {
-        throw new SonarException(e);
       } finally {
         IOUtils.closeQuietly(reader);
       }
-
-      List<Block> blocks = blockChunker.chunk(resourceKey, statements);
-      index.insert(resource, blocks);
+      return blockChunker.chunk(resourceKey, statements);
     }
-
-    return index;
   }
 
-  private void detect(SonarDuplicationsIndex index, SensorContext context, Project project, List<InputFile> inputFiles) {
-    ExecutorService executorService = Executors.newSingleThreadExecutor();
+  /**
+   * Files are analysed by a pool of threads sharing the index, which is not modified anymore. In order to bound memory consumption,
+   * results are saved by the current thread in the order of files, while a limited number of next files is being analysed.
+   *
+   * @return files, for which analysis was cancelled because of timeout
+   */
+  List<InputFile> detect(SonarDuplicationsIndex index, SensorContext context, Project project, List<InputFile> inputFiles, long timeout) {
+    CpdStatementMapping mapping = getMapping(project.getLanguage());
+    int threads = Math.max(1, Math.min(settings.getInt(THREADS_PROPERTY), inputFiles.size()));
+    List<InputFile> timedOut = Lists.newArrayList();
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
     try {
+      LinkedList<TaskFuture> futures = Lists.newLinkedList();
+      int submitted = 0;
       for (InputFile inputFile : inputFiles) {
-        LOG.debug("Detection of duplications for {}", inputFile.getFile());
-        Resource resource = getResource(inputFile);
-        String resourceKey = getFullKey(project, resource);
-
-        Collection<Block> fileBlocks = index.getByResource(resource, resourceKey);
+        while (submitted < inputFiles.size() && futures.size() < 2 * threads) {
+          Resource resource = mapping.createResource(inputFiles.get(submitted));
+          TaskFuture future = new TaskFuture(new Task(index, resource, getFullKey(project, resource)));
+          executorService.execute(future);
+          futures.add(future);
+          submitted++;
+        }
 
+        TaskFuture future = futures.removeFirst();
+        Resource resource = mapping.createResource(inputFile);
         List<CloneGroup> clones;
         try {
-          clones = executorService.submit(new Task(index, fileBlocks)).get(TIMEOUT, TimeUnit.SECONDS);
+          clones = future.get(timeout);
         } catch (TimeoutException e) {
+          future.cancel(true);
           clones = null;
-          LOG.warn("Timeout during detection of duplications for " + inputFile.getFile(), e);
-        } catch (InterruptedException e) {
-          throw new SonarException(e);
-        } catch (ExecutionException e) {
-          throw new SonarException(e);
+          timedOut.add(inputFile);
+          LOG.warn("Timeout during detection of duplications for " + inputFile.getFile());
+          context.saveMeasure(resource, CoreMetrics.DUPLICATIONS_TIMED_OUT_FILES, 1.0);
         }
 
         save(context, resource, clones);
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SonarException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new SonarException(e.getCause());
     } finally {
-      executorService.shutdown();
+      executorService.shutdownNow();
+    }
+    return timedOut;
+  }
+
+  /**
+   * Measures timeout from the start of its task, rather than from the start of waiting for the result.
+   */
+  static class TaskFuture extends FutureTask<List<CloneGroup>> {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private volatile long startTime;
+
+    TaskFuture(Task task) {
+      super(task);
+    }
+
+    @Override
+    public void run() {
+      startTime = System.nanoTime();
+      started.countDown();
+      super.run();
+    }
+
+    /**
+     * @param timeout maximum time in milliseconds since start of the task, a task not started in this time is considered as timed out
+     */
+    List<CloneGroup> get(long timeout) throws InterruptedException, ExecutionException, TimeoutException {
+      if (!started.await(timeout, TimeUnit.MILLISECONDS)) {
+        throw new TimeoutException();
+      }
+      long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+      return get(Math.max(0L, timeout - elapsed), TimeUnit.MILLISECONDS);
     }
   }
 
   static class Task implements Callable<List<CloneGroup>> {
-    private final CloneIndex index;
-    private final Collection<Block> fileBlocks;
+    private final SonarDuplicationsIndex index;
+    private final Resource resource;
+    private final String resourceKey;
 
-    public Task(CloneIndex index, Collection<Block> fileBlocks) {
+    public Task(SonarDuplicationsIndex index, Resource resource, String resourceKey) {
       this.index = index;
-      this.fileBlocks = fileBlocks;
+      this.resource = resource;
+      this.resourceKey = resourceKey;
     }
 
     public List<CloneGroup> call() {
+      LOG.debug("Detection of duplications for {}", resourceKey);
+      Collection<Block> fileBlocks = index.getByResource(resource, resourceKey);
       return SuffixTreeCloneDetectionAlgorithm.detect(index, fileBlocks);
     }
   }
 
-  private Resource getResource(InputFile inputFile) {
-    return JavaFile.fromRelativePath(inputFile.getRelativePath(), false);
-  }
-
   static void save(SensorContext context, Resource resource, @Nullable Iterable<CloneGroup> duplications) {
     if (duplications == null || Iterables.isEmpty(duplications)) {
       return;
@@ -197,26 +461,20 @@ public class SonarEngine extends CpdEngine {
     context.saveMeasure(resource, CoreMetrics.DUPLICATED_LINES, (double) duplicatedLines.size());
     context.saveMeasure(resource, CoreMetrics.DUPLICATED_BLOCKS, duplicatedBlocks);
 
-    Measure data = new Measure(CoreMetrics.DUPLICATIONS_DATA, toXml(duplications))
+    Measure data = new Measure(CoreMetrics.DUPLICATIONS_DATA, encode(duplications))
         .setPersistenceMode(PersistenceMode.DATABASE);
     context.saveMeasure(resource, data);
   }
 
-  private static String toXml(Iterable<CloneGroup> duplications) {
-    StringBuilder xml = new StringBuilder();
-    xml.append("<duplications>");
+  private static String encode(Iterable<CloneGroup> duplications) {
+    DuplicationsData data = new DuplicationsData();
     for (CloneGroup duplication : duplications) {
-      xml.append("<g>");
+      data.addGroup();
       for (ClonePart part : duplication.getCloneParts()) {
-        xml.append("<b s=\"").append(part.getStartLine())
-            .append("\" l=\"").append(part.getLines())
-            .append("\" r=\"").append(part.getResourceId())
-            .append("\"/>");
+        data.addBlock(part.getResourceId(), part.getStartLine(), part.getLines());
       }
-      xml.append("</g>");
     }
-    xml.append("</duplications>");
-    return xml.toString();
+    return data.encode();
   }
 
 }
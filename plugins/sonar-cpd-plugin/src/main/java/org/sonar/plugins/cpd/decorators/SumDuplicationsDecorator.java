@@ -35,7 +35,8 @@ public class SumDuplicationsDecorator extends AbstractSumChildrenDecorator {
   @Override
   @DependedUpon
   public List<Metric> generatesMetrics() {
-    return Arrays.asList(CoreMetrics.DUPLICATED_BLOCKS, CoreMetrics.DUPLICATED_FILES, CoreMetrics.DUPLICATED_LINES);
+    return Arrays.asList(CoreMetrics.DUPLICATED_BLOCKS, CoreMetrics.DUPLICATED_FILES, CoreMetrics.DUPLICATED_LINES,
+        CoreMetrics.DUPLICATIONS_TIMED_OUT_FILES);
   }
 
   @Override
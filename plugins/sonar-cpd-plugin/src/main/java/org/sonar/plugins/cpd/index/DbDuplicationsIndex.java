@@ -21,6 +21,10 @@ package org.sonar.plugins.cpd.index;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
@@ -37,17 +41,48 @@ import java.util.Map;
 
 public class DbDuplicationsIndex {
 
-  private final Map<ByteArray, Collection<Block>> cache = Maps.newHashMap();
+  private static final Logger LOG = LoggerFactory.getLogger(DbDuplicationsIndex.class);
+
+  /**
+   * Candidates for the file being analysed by current thread, so that several files can be analysed concurrently.
+   */
+  private final ThreadLocal<Map<ByteArray, Collection<Block>>> cache = new ThreadLocal<Map<ByteArray, Collection<Block>>>() {
+    @Override
+    protected Map<ByteArray, Collection<Block>> initialValue() {
+      return Maps.newHashMap();
+    }
+  };
+
+  /**
+   * Hashes of inserted blocks, which are used to prefetch candidates.
+   */
+  private final Map<Long, ByteArray> hashes = Maps.newHashMap();
+
+  /**
+   * Candidates for all inserted blocks.
+   */
+  private volatile Map<ByteArray, Collection<Block>> prefetched;
+  private boolean prefetchDone = false;
 
   private final ResourcePersister resourcePersister;
   private final int currentProjectSnapshotId;
   private final Integer lastSnapshotId;
   private final String languageKey;
+  private final int prefetchLimit;
 
   private DuplicationDao dao;
 
   public DbDuplicationsIndex(ResourcePersister resourcePersister, Project currentProject, DuplicationDao dao) {
+    this(resourcePersister, currentProject, dao, 0);
+  }
+
+  /**
+   * @param prefetchLimit maximal number of candidates to load for all the files at once, or 0 to load candidates for each file separately
+   * @since 3.2
+   */
+  public DbDuplicationsIndex(ResourcePersister resourcePersister, Project currentProject, DuplicationDao dao, int prefetchLimit) {
     this.dao = dao;
+    this.prefetchLimit = prefetchLimit;
     this.resourcePersister = resourcePersister;
     Snapshot currentSnapshot = resourcePersister.getSnapshotOrFail(currentProject);
     Snapshot lastSnapshot = resourcePersister.getLastSnapshot(currentSnapshot, false);
@@ -61,37 +96,87 @@ public class DbDuplicationsIndex {
   }
 
   public void prepareCache(Resource resource) {
+    if (prefetch()) {
+      return;
+    }
     int resourceSnapshotId = getSnapshotIdFor(resource);
     List<DuplicationUnitDto> units = dao.selectCandidates(resourceSnapshotId, lastSnapshotId, languageKey);
-    cache.clear();
-    // TODO Godin: maybe remove conversion of units to blocks?
+    Map<ByteArray, Collection<Block>> blocksByHash = cache.get();
+    blocksByHash.clear();
     for (DuplicationUnitDto unit : units) {
-      String hash = unit.getHash();
-      String resourceKey = unit.getResourceKey();
-      int indexInFile = unit.getIndexInFile();
-      int startLine = unit.getStartLine();
-      int endLine = unit.getEndLine();
-
-      // TODO Godin: in fact we could work directly with id instead of key - this will allow to decrease memory consumption
-      Block block = Block.builder()
-          .setResourceId(resourceKey)
-          .setBlockHash(new ByteArray(hash))
-          .setIndexInFile(indexInFile)
-          .setLines(startLine, endLine)
-          .build();
-
-      // Group blocks by hash
-      Collection<Block> sameHash = cache.get(block.getBlockHash());
-      if (sameHash == null) {
-        sameHash = Lists.newArrayList();
-        cache.put(block.getBlockHash(), sameHash);
+      addCandidate(blocksByHash, unit, new ByteArray(unit.getHash()));
+    }
+  }
+
+  /**
+   * Loads candidates for all the inserted blocks, unless their number exceeds the limit.
+   * Must be called once all the blocks are inserted.
+   *
+   * @return true, if candidates were loaded
+   */
+  synchronized boolean prefetch() {
+    if (!prefetchDone) {
+      prefetchDone = true;
+      if (prefetchLimit > 0 && !hashes.isEmpty()) {
+        prefetched = loadCandidates();
       }
-      sameHash.add(block);
+      hashes.clear();
     }
+    return prefetched != null;
+  }
+
+  private Map<ByteArray, Collection<Block>> loadCandidates() {
+    CandidatesHandler handler = new CandidatesHandler();
+    dao.selectCandidates(hashes.keySet(), lastSnapshotId, languageKey, handler);
+    if (handler.limitExceeded) {
+      LOG.info("More than {} candidates for cross-project duplications, so they will be loaded for each file separately", prefetchLimit);
+      return null;
+    }
+    return handler.blocksByHash;
+  }
+
+  /**
+   * Candidates are counted by the handler, as the count of the {@link ResultContext} is reset for each chunk of hashes.
+   */
+  private final class CandidatesHandler implements ResultHandler {
+    private final Map<ByteArray, Collection<Block>> blocksByHash = Maps.newHashMap();
+    private int count = 0;
+    private boolean limitExceeded = false;
+
+    public void handleResult(ResultContext context) {
+      count++;
+      if (count > prefetchLimit) {
+        limitExceeded = true;
+        context.stop();
+        return;
+      }
+      DuplicationUnitDto unit = (DuplicationUnitDto) context.getResultObject();
+      // reuse hash of inserted block instead of creating new one
+      addCandidate(blocksByHash, unit, hashes.get(unit.getHash()));
+    }
+  }
+
+  private static void addCandidate(Map<ByteArray, Collection<Block>> blocksByHash, DuplicationUnitDto unit, ByteArray hash) {
+    // TODO Godin: in fact we could work directly with id instead of key - this will allow to decrease memory consumption
+    Block block = Block.builder()
+        .setResourceId(unit.getResourceKey())
+        .setBlockHash(hash)
+        .setIndexInFile(unit.getIndexInFile())
+        .setLines(unit.getStartLine(), unit.getEndLine())
+        .build();
+
+    // Group blocks by hash
+    Collection<Block> sameHash = blocksByHash.get(hash);
+    if (sameHash == null) {
+      sameHash = Lists.newArrayList();
+      blocksByHash.put(hash, sameHash);
+    }
+    sameHash.add(block);
   }
 
   public Collection<Block> getByHash(ByteArray hash) {
-    Collection<Block> result = cache.get(hash);
+    Map<ByteArray, Collection<Block>> blocksByHash = prefetched;
+    Collection<Block> result = blocksByHash != null ? blocksByHash.get(hash) : cache.get().get(hash);
     if (result != null) {
       return result;
     } else {
@@ -105,10 +190,13 @@ public class DbDuplicationsIndex {
     // TODO Godin: maybe remove conversion of blocks to units?
     List<DuplicationUnitDto> units = Lists.newArrayList();
     for (Block block : blocks) {
+      if (prefetchLimit > 0) {
+        hashes.put(block.getBlockHash().toLong(), block.getBlockHash());
+      }
       DuplicationUnitDto unit = new DuplicationUnitDto(
           currentProjectSnapshotId,
           resourceSnapshotId,
-          block.getBlockHash().toString(),
+          block.getBlockHash().toLong(),
           block.getIndexInFile(),
           block.getStartLine(),
           block.getEndLine());
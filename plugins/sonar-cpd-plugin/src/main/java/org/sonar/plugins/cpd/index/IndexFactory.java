@@ -27,40 +27,84 @@ import org.sonar.api.BatchExtension;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
+import org.sonar.batch.bootstrap.TempDirectories;
 import org.sonar.batch.index.ResourcePersister;
 import org.sonar.core.duplication.DuplicationDao;
+import org.sonar.duplications.index.CloneIndex;
+import org.sonar.duplications.index.MappedCloneIndex;
+import org.sonar.duplications.index.PackedMemoryCloneIndex;
 
 public class IndexFactory implements BatchExtension {
 
   private static final Logger LOG = LoggerFactory.getLogger(IndexFactory.class);
 
+  /**
+   * Whether blocks should be kept in memory-mapped files instead of Java heap.
+   *
+   * @since 3.2
+   */
+  public static final String MAPPED_INDEX_PROPERTY = "sonar.cpd.mappedIndex";
+
+  /**
+   * Maximal number of blocks from other projects to load at once for all the files of a project during cross-project analysis.
+   * When this value is 0 or when there are more blocks, they are loaded for each file separately.
+   *
+   * @since 3.2
+   */
+  public static final String PREFETCH_LIMIT_PROPERTY = "sonar.cpd.cross_project.prefetchLimit";
+
+  /**
+   * Used to estimate initial capacity of memory-mapped index.
+   */
+  private static final int EXPECTED_BLOCKS_PER_FILE = 64;
+
   private final Settings settings;
+  private final TempDirectories tempDirectories;
   private final ResourcePersister resourcePersister;
   private final DuplicationDao dao;
 
   /**
    * For dry run, where is no access to database.
    */
-  public IndexFactory(Settings settings) {
+  public IndexFactory(Settings settings, TempDirectories tempDirectories) {
     this.settings = settings;
+    this.tempDirectories = tempDirectories;
     this.resourcePersister = null;
     this.dao = null;
   }
 
-  public IndexFactory(Settings settings, ResourcePersister resourcePersister, DuplicationDao dao) {
+  public IndexFactory(Settings settings, TempDirectories tempDirectories, ResourcePersister resourcePersister, DuplicationDao dao) {
     this.settings = settings;
+    this.tempDirectories = tempDirectories;
     this.resourcePersister = resourcePersister;
     this.dao = dao;
   }
 
   public SonarDuplicationsIndex create(Project project) {
+    return create(project, 0);
+  }
+
+  /**
+   * @param filesCount number of files to be indexed, used to size index
+   * @since 3.2
+   */
+  public SonarDuplicationsIndex create(Project project, int filesCount) {
+    CloneIndex mem = createMemoryIndex(filesCount);
     if (isCrossProject(project)) {
       LOG.info("Cross-project analysis enabled");
-      return new SonarDuplicationsIndex(new DbDuplicationsIndex(resourcePersister, project, dao));
+      return new SonarDuplicationsIndex(mem, new DbDuplicationsIndex(resourcePersister, project, dao, settings.getInt(PREFETCH_LIMIT_PROPERTY)));
     } else {
       LOG.info("Cross-project analysis disabled");
-      return new SonarDuplicationsIndex();
+      return new SonarDuplicationsIndex(mem, null);
+    }
+  }
+
+  private CloneIndex createMemoryIndex(int filesCount) {
+    if (settings.getBoolean(MAPPED_INDEX_PROPERTY)) {
+      int initialCapacity = Math.max(filesCount * EXPECTED_BLOCKS_PER_FILE, 1024);
+      return new MappedCloneIndex(tempDirectories.getDir("cpd"), 8, initialCapacity);
     }
+    return new PackedMemoryCloneIndex();
   }
 
   /**
@@ -20,26 +20,39 @@
 package org.sonar.plugins.cpd.index;
 
 import com.google.common.collect.Lists;
+import org.apache.commons.io.IOUtils;
 import org.sonar.api.resources.Resource;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
 import org.sonar.duplications.index.AbstractCloneIndex;
 import org.sonar.duplications.index.CloneIndex;
+import org.sonar.duplications.index.MappedCloneIndex;
 import org.sonar.duplications.index.PackedMemoryCloneIndex;
 
+import javax.annotation.Nullable;
+
+import java.io.Closeable;
 import java.util.Collection;
 import java.util.List;
 
 public class SonarDuplicationsIndex extends AbstractCloneIndex {
 
-  private final CloneIndex mem = new PackedMemoryCloneIndex();
+  private final CloneIndex mem;
   private final DbDuplicationsIndex db;
 
   public SonarDuplicationsIndex() {
-    this.db = null;
+    this(new PackedMemoryCloneIndex(), null);
   }
 
   public SonarDuplicationsIndex(DbDuplicationsIndex db) {
+    this(new PackedMemoryCloneIndex(), db);
+  }
+
+  /**
+   * @since 3.2
+   */
+  public SonarDuplicationsIndex(CloneIndex mem, @Nullable DbDuplicationsIndex db) {
+    this.mem = mem;
     this.db = db;
   }
 
@@ -69,6 +82,15 @@ public class SonarDuplicationsIndex extends AbstractCloneIndex {
     }
   }
 
+  /**
+   * Releases resources of the in-memory index, for example files of {@link MappedCloneIndex}.
+   */
+  public void close() {
+    if (mem instanceof Closeable) {
+      IOUtils.closeQuietly((Closeable) mem);
+    }
+  }
+
   public Collection<Block> getByResourceId(String resourceId) {
     throw new UnsupportedOperationException();
   }
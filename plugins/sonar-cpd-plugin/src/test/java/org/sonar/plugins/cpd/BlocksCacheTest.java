@@ -0,0 +1,129 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.cpd;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class BlocksCacheTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldReuseBlocksOfUnchangedFiles() throws Exception {
+    File file = new File(temp.getRoot(), "cpd/blocks.dat");
+    List<Block> blocks = Arrays.asList(newBlock("foo:Bar", 0, 1L), newBlock("foo:Bar", 1, -1L));
+    BlocksCache cache = new BlocksCache(file, 10, "UTF-8", "java").load();
+    assertThat(cache.get("foo:Bar", "abc"), nullValue());
+    cache.put("foo:Bar", "abc", blocks);
+    cache.save();
+
+    cache = new BlocksCache(file, 10, "UTF-8", "java").load();
+    assertThat(cache.get("foo:Bar", "abc"), is(blocks));
+    assertThat(cache.get("foo:Bar", "def"), nullValue());
+    assertThat(cache.get("foo:Baz", "abc"), nullValue());
+    assertThat(cache.getHits(), is(1));
+  }
+
+  @Test
+  public void shouldForgetBlocksOfDeletedFiles() {
+    File file = new File(temp.getRoot(), "blocks.dat");
+    BlocksCache cache = new BlocksCache(file, 10, "UTF-8", "java").load();
+    cache.put("foo:Bar", "abc", Arrays.asList(newBlock("foo:Bar", 0, 1L)));
+    cache.save();
+
+    new BlocksCache(file, 10, "UTF-8", "java").load().save();
+
+    assertThat(new BlocksCache(file, 10, "UTF-8", "java").load().get("foo:Bar", "abc"), nullValue());
+  }
+
+  @Test
+  public void shouldIgnoreCacheWithOtherSettings() {
+    File file = new File(temp.getRoot(), "blocks.dat");
+    BlocksCache cache = new BlocksCache(file, 10, "UTF-8", "java").load();
+    cache.put("foo:Bar", "abc", Arrays.asList(newBlock("foo:Bar", 0, 1L)));
+    cache.save();
+
+    assertThat(new BlocksCache(file, 5, "UTF-8", "java").load().get("foo:Bar", "abc"), nullValue());
+    assertThat(new BlocksCache(file, 10, "ISO-8859-1", "java").load().get("foo:Bar", "abc"), nullValue());
+    assertThat(new BlocksCache(file, 10, "UTF-8", "java/1.1").load().get("foo:Bar", "abc"), nullValue());
+  }
+
+  @Test
+  public void shouldIgnoreCorruptedCache() throws Exception {
+    File file = temp.newFile("blocks.dat");
+    FileUtils.writeStringToFile(file, "corrupted");
+
+    assertThat(new BlocksCache(file, 10, "UTF-8", "java").load().get("foo:Bar", "abc"), nullValue());
+  }
+
+  @Test
+  public void shouldNotFailWhenCacheCanNotBeWritten() throws Exception {
+    File file = new File(temp.newFile("not_a_directory"), "blocks.dat");
+    BlocksCache cache = new BlocksCache(file, 10, "UTF-8", "java").load();
+    cache.put("foo:Bar", "abc", Arrays.asList(newBlock("foo:Bar", 0, 1L)));
+    cache.save();
+
+    assertThat(file.exists(), is(false));
+  }
+
+  @Test
+  public void shouldDeletePartlyWrittenCache() {
+    File file = new File(temp.getRoot(), "blocks.dat");
+    BlocksCache cache = new BlocksCache(file, 10, "UTF-8", "java").load();
+    // too long to be written as modified UTF-8
+    String resourceKey = StringUtils.repeat("a", 70000);
+    cache.put(resourceKey, "abc", Arrays.asList(newBlock(resourceKey, 0, 1L)));
+    cache.save();
+
+    assertThat(file.exists(), is(false));
+  }
+
+  @Test
+  public void checksumShouldDependOnContent() {
+    assertThat(BlocksCache.checksum("foo".getBytes()), is(BlocksCache.checksum("foo".getBytes())));
+    assertThat(BlocksCache.checksum("foo".getBytes()).equals(BlocksCache.checksum("bar".getBytes())), is(false));
+  }
+
+  private static Block newBlock(String resourceKey, int indexInFile, long hash) {
+    return Block.builder()
+        .setResourceId(resourceKey)
+        .setBlockHash(new ByteArray(hash))
+        .setIndexInFile(indexInFile)
+        .setLines(indexInFile + 1, indexInFile + 10)
+        .setUnit(indexInFile, indexInFile + 9)
+        .build();
+  }
+
+}
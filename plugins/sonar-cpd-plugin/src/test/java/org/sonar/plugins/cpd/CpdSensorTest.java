@@ -22,6 +22,8 @@ package org.sonar.plugins.cpd;
 import org.apache.commons.configuration.PropertiesConfiguration;
 import org.junit.Before;
 import org.junit.Test;
+import org.sonar.api.batch.CpdStatementMapping;
+import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Java;
 import org.sonar.api.resources.Language;
 import org.sonar.api.resources.Project;
@@ -32,6 +34,7 @@ import static junit.framework.Assert.assertTrue;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class CpdSensorTest {
 
@@ -41,7 +44,7 @@ public class CpdSensorTest {
 
   @Before
   public void setUp() {
-    IndexFactory indexFactory = new IndexFactory(null);
+    IndexFactory indexFactory = new IndexFactory(null, null);
     sonarEngine = new SonarEngine(indexFactory);
     sonarBridgeEngine = new SonarBridgeEngine(indexFactory);
     sensor = new CpdSensor(sonarEngine, sonarBridgeEngine);
@@ -86,6 +89,17 @@ public class CpdSensorTest {
     assertThat(sensor.getEngine(phpProject), is((CpdEngine) sonarBridgeEngine));
   }
 
+  @Test
+  public void shouldUseSonarEngineForLanguageWithStatementMapping() {
+    Project phpProject = createPhpProject();
+    CpdStatementMapping mapping = mock(CpdStatementMapping.class);
+    when(mapping.getLanguage()).thenReturn(phpProject.getLanguage());
+    sonarEngine = new SonarEngine(new IndexFactory(null, null), new Settings(), new CpdStatementMapping[] {mapping});
+    sensor = new CpdSensor(sonarEngine, sonarBridgeEngine);
+
+    assertThat(sensor.getEngine(phpProject), is((CpdEngine) sonarEngine));
+  }
+
   private Project createJavaProject() {
     return new Project("java_project").setLanguageKey("java").setLanguage(Java.INSTANCE);
   }
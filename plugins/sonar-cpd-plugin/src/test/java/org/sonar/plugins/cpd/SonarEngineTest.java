@@ -19,26 +19,57 @@
  */
 package org.sonar.plugins.cpd;
 
+import com.google.common.collect.Lists;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.CpdStatementMapping;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.resources.InputFile;
+import org.sonar.api.resources.InputFileUtils;
+import org.sonar.api.resources.Java;
 import org.sonar.api.resources.JavaFile;
+import org.sonar.api.resources.Language;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.ProjectFileSystem;
 import org.sonar.api.resources.Resource;
-import org.sonar.api.test.IsMeasure;
+import org.sonar.core.duplication.DuplicationsData;
+import org.sonar.duplications.block.Block;
 import org.sonar.duplications.index.CloneGroup;
 import org.sonar.duplications.index.ClonePart;
+import org.sonar.duplications.java.JavaStatementBuilder;
+import org.sonar.duplications.java.JavaTokenProducer;
+import org.sonar.plugins.cpd.index.IndexFactory;
+import org.sonar.plugins.cpd.index.SonarDuplicationsIndex;
 
+import java.io.File;
+import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
 public class SonarEngineTest {
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   private SensorContext context;
   private Resource resource;
 
@@ -48,6 +79,200 @@ public class SonarEngineTest {
     resource = new JavaFile("key1");
   }
 
+  @Test
+  public void shouldChunkFilesConcurrently() throws Exception {
+    List<InputFile> inputFiles = createInputFiles(3);
+    Project project = createProject();
+    IndexFactory indexFactory = mock(IndexFactory.class);
+    when(indexFactory.create(eq(project), anyInt())).thenReturn(new SonarDuplicationsIndex(), new SonarDuplicationsIndex());
+    Settings settings = new Settings();
+
+    SonarDuplicationsIndex index = new SonarEngine(indexFactory, settings).createIndex(project, inputFiles);
+    settings.setProperty(SonarEngine.THREADS_PROPERTY, 2);
+    SonarDuplicationsIndex concurrentIndex = new SonarEngine(indexFactory, settings).createIndex(project, inputFiles);
+
+    for (int i = 0; i < 3; i++) {
+      JavaFile javaFile = JavaFile.fromRelativePath("Foo" + i + ".java", false);
+      String resourceKey = SonarEngine.getFullKey(project, javaFile);
+      Collection<Block> blocks = index.getByResource(javaFile, resourceKey);
+      assertThat(blocks.isEmpty(), is(false));
+      assertThat(Lists.newArrayList(concurrentIndex.getByResource(javaFile, resourceKey)), is(Lists.newArrayList(blocks)));
+    }
+  }
+
+  @Test
+  public void shouldDetectDuplicationsConcurrently() throws Exception {
+    List<InputFile> inputFiles = createInputFiles(5);
+    Project project = createProject();
+    Settings settings = new Settings();
+    settings.setProperty(SonarEngine.THREADS_PROPERTY, 2);
+    IndexFactory indexFactory = mock(IndexFactory.class);
+    when(indexFactory.create(eq(project), anyInt())).thenReturn(new SonarDuplicationsIndex());
+    SonarEngine engine = new SonarEngine(indexFactory, settings);
+    SonarDuplicationsIndex index = engine.createIndex(project, inputFiles);
+
+    List<InputFile> timedOut = engine.detect(index, context, project, inputFiles, 60000L);
+
+    assertThat(timedOut.isEmpty(), is(true));
+    for (int i = 0; i < 5; i++) {
+      verify(context).saveMeasure(JavaFile.fromRelativePath("Foo" + i + ".java", false), CoreMetrics.DUPLICATED_FILES, 1d);
+    }
+  }
+
+  @Test
+  public void shouldReportFilesAnalysedTooLong() throws Exception {
+    List<InputFile> inputFiles = createInputFiles(3);
+    Project project = createProject();
+    Settings settings = new Settings();
+    settings.setProperty(SonarEngine.THREADS_PROPERTY, 2);
+    final JavaFile slowFile = JavaFile.fromRelativePath("Foo1.java", false);
+    SonarDuplicationsIndex index = new SonarDuplicationsIndex() {
+      @Override
+      public Collection<Block> getByResource(Resource resource, String resourceKey) {
+        if (slowFile.equals(resource)) {
+          try {
+            Thread.sleep(10000L);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        return super.getByResource(resource, resourceKey);
+      }
+    };
+    IndexFactory indexFactory = mock(IndexFactory.class);
+    when(indexFactory.create(eq(project), anyInt())).thenReturn(index);
+    SonarEngine engine = new SonarEngine(indexFactory, settings);
+    engine.createIndex(project, inputFiles);
+
+    List<InputFile> timedOut = engine.detect(index, context, project, inputFiles, 200L);
+
+    assertThat(timedOut, is(Arrays.asList(inputFiles.get(1))));
+    verify(context).saveMeasure(JavaFile.fromRelativePath("Foo0.java", false), CoreMetrics.DUPLICATED_FILES, 1d);
+    verify(context, never()).saveMeasure(slowFile, CoreMetrics.DUPLICATED_FILES, 1d);
+    verify(context).saveMeasure(slowFile, CoreMetrics.DUPLICATIONS_TIMED_OUT_FILES, 1d);
+    verify(context).saveMeasure(JavaFile.fromRelativePath("Foo2.java", false), CoreMetrics.DUPLICATED_FILES, 1d);
+  }
+
+  /**
+   * Second file is analysed while waiting for the first one, so its timeout expires before the end of the waiting of the first file.
+   */
+  @Test
+  public void shouldMeasureTimeoutFromStartOfAnalysis() throws Exception {
+    List<InputFile> inputFiles = createInputFiles(2);
+    Project project = createProject();
+    Settings settings = new Settings();
+    settings.setProperty(SonarEngine.THREADS_PROPERTY, 2);
+    final JavaFile firstFile = JavaFile.fromRelativePath("Foo0.java", false);
+    final JavaFile secondFile = JavaFile.fromRelativePath("Foo1.java", false);
+    SonarDuplicationsIndex index = new SonarDuplicationsIndex() {
+      @Override
+      public Collection<Block> getByResource(Resource resource, String resourceKey) {
+        try {
+          Thread.sleep(firstFile.equals(resource) ? 1000L : 2000L);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return super.getByResource(resource, resourceKey);
+      }
+    };
+    IndexFactory indexFactory = mock(IndexFactory.class);
+    when(indexFactory.create(eq(project), anyInt())).thenReturn(index);
+    SonarEngine engine = new SonarEngine(indexFactory, settings);
+    engine.createIndex(project, inputFiles);
+
+    List<InputFile> timedOut = engine.detect(index, context, project, inputFiles, 1500L);
+
+    assertThat(timedOut, is(Arrays.asList(inputFiles.get(1))));
+    verify(context).saveMeasure(firstFile, CoreMetrics.DUPLICATED_FILES, 1d);
+    verify(context).saveMeasure(secondFile, CoreMetrics.DUPLICATIONS_TIMED_OUT_FILES, 1d);
+  }
+
+  @Test
+  public void shouldChunkFilesOfOtherLanguages() throws Exception {
+    List<InputFile> inputFiles = createInputFiles(1);
+    Language language = mock(Language.class);
+    Project project = createProject().setLanguage(language).setLanguageKey("foo").setConfiguration(new PropertiesConfiguration());
+    CpdStatementMapping mapping = mock(CpdStatementMapping.class);
+    when(mapping.getLanguage()).thenReturn(language);
+    when(mapping.createTokenChunker()).thenReturn(JavaTokenProducer.build());
+    when(mapping.createStatementChunker()).thenReturn(JavaStatementBuilder.build());
+    when(mapping.createResource(any(InputFile.class))).thenReturn(new org.sonar.api.resources.File("Foo0.foo"));
+    IndexFactory indexFactory = mock(IndexFactory.class);
+    when(indexFactory.create(eq(project), anyInt())).thenReturn(new SonarDuplicationsIndex());
+    SonarEngine engine = new SonarEngine(indexFactory, new Settings(), new CpdStatementMapping[] {mapping});
+
+    assertThat(engine.isLanguageSupported(language), is(true));
+    SonarDuplicationsIndex index = engine.createIndex(project, inputFiles);
+
+    org.sonar.api.resources.File file = new org.sonar.api.resources.File("Foo0.foo");
+    assertThat(index.getByResource(file, SonarEngine.getFullKey(project, file)).isEmpty(), is(false));
+  }
+
+  @Test
+  public void shouldReuseBlocksOfUnchangedFiles() throws Exception {
+    List<InputFile> inputFiles = createInputFiles(3);
+    Project project = createProject();
+    File workingDir = temp.newFolder("work");
+    when(project.getFileSystem().getSonarWorkingDirectory()).thenReturn(workingDir);
+    IndexFactory indexFactory = mock(IndexFactory.class);
+    when(indexFactory.create(eq(project), anyInt())).thenReturn(new SonarDuplicationsIndex(), new SonarDuplicationsIndex());
+    Settings settings = new Settings();
+    settings.setProperty(SonarEngine.CACHE_PROPERTY, true);
+
+    SonarDuplicationsIndex index = new SonarEngine(indexFactory, settings).createIndex(project, inputFiles);
+    assertThat(new File(workingDir, "cpd/blocks.dat").isFile(), is(true));
+    SonarDuplicationsIndex cachedIndex = new SonarEngine(indexFactory, settings).createIndex(project, inputFiles);
+
+    for (int i = 0; i < 3; i++) {
+      JavaFile javaFile = JavaFile.fromRelativePath("Foo" + i + ".java", false);
+      String resourceKey = SonarEngine.getFullKey(project, javaFile);
+      Collection<Block> blocks = index.getByResource(javaFile, resourceKey);
+      assertThat(blocks.isEmpty(), is(false));
+      assertThat(Lists.newArrayList(cachedIndex.getByResource(javaFile, resourceKey)), is(Lists.newArrayList(blocks)));
+    }
+  }
+
+  @Test
+  public void shouldStoreCacheInConfiguredDirectory() throws Exception {
+    List<InputFile> inputFiles = createInputFiles(1);
+    Project project = createProject();
+    File cacheDir = temp.newFolder("cache");
+    when(project.getFileSystem().resolvePath("cache")).thenReturn(cacheDir);
+    IndexFactory indexFactory = mock(IndexFactory.class);
+    when(indexFactory.create(eq(project), anyInt())).thenReturn(new SonarDuplicationsIndex());
+    Settings settings = new Settings();
+    settings.setProperty(SonarEngine.CACHE_PROPERTY, true);
+    settings.setProperty(SonarEngine.CACHE_DIR_PROPERTY, "cache");
+
+    new SonarEngine(indexFactory, settings).createIndex(project, inputFiles);
+
+    assertThat(new File(cacheDir, "foo/blocks.dat").isFile(), is(true));
+  }
+
+  private List<InputFile> createInputFiles(int count) throws Exception {
+    List<InputFile> inputFiles = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      StringBuilder source = new StringBuilder("class Foo" + i + " {\n  void bar() {\n");
+      for (int line = 0; line < 20; line++) {
+        source.append("    System.out.println(").append(line % (i + 2)).append(");\n");
+      }
+      source.append("  }\n}\n");
+      File file = temp.newFile("Foo" + i + ".java");
+      FileUtils.writeStringToFile(file, source.toString());
+      inputFiles.add(InputFileUtils.create(temp.getRoot(), file));
+    }
+    return inputFiles;
+  }
+
+  private Project createProject() {
+    ProjectFileSystem fileSystem = mock(ProjectFileSystem.class);
+    when(fileSystem.getSourceCharset()).thenReturn(Charset.defaultCharset());
+    Project project = new Project("foo");
+    project.setLanguage(Java.INSTANCE);
+    project.setFileSystem(fileSystem);
+    return project;
+  }
+
   @Test
   public void testNothingToSave() {
     SonarEngine.save(context, resource, null);
@@ -66,7 +291,7 @@ public class SonarEngineTest {
     verify(context).saveMeasure(resource, CoreMetrics.DUPLICATED_LINES, 200d);
     verify(context).saveMeasure(
         eq(resource),
-        argThat(new IsMeasure(CoreMetrics.DUPLICATIONS_DATA, "<duplications><g>"
+        argThat(new IsDuplicationsData("<duplications><g>"
             + "<b s=\"5\" l=\"200\" r=\"key1\"/>"
             + "<b s=\"15\" l=\"200\" r=\"key2\"/>"
             + "</g></duplications>")));
@@ -82,7 +307,7 @@ public class SonarEngineTest {
     verify(context).saveMeasure(resource, CoreMetrics.DUPLICATED_BLOCKS, 2d);
     verify(context).saveMeasure(
         eq(resource),
-        argThat(new IsMeasure(CoreMetrics.DUPLICATIONS_DATA, "<duplications><g>"
+        argThat(new IsDuplicationsData("<duplications><g>"
             + "<b s=\"5\" l=\"200\" r=\"key1\"/>"
             + "<b s=\"215\" l=\"200\" r=\"key1\"/>"
             + "</g></duplications>")));
@@ -98,7 +323,7 @@ public class SonarEngineTest {
     verify(context).saveMeasure(resource, CoreMetrics.DUPLICATED_LINES, 200d);
     verify(context).saveMeasure(
         eq(resource),
-        argThat(new IsMeasure(CoreMetrics.DUPLICATIONS_DATA, "<duplications><g>"
+        argThat(new IsDuplicationsData("<duplications><g>"
             + "<b s=\"5\" l=\"200\" r=\"key1\"/>"
             + "<b s=\"15\" l=\"200\" r=\"key2\"/>"
             + "<b s=\"25\" l=\"200\" r=\"key3\"/>"
@@ -117,7 +342,7 @@ public class SonarEngineTest {
     verify(context).saveMeasure(resource, CoreMetrics.DUPLICATED_LINES, 210d);
     verify(context).saveMeasure(
         eq(resource),
-        argThat(new IsMeasure(CoreMetrics.DUPLICATIONS_DATA, "<duplications>"
+        argThat(new IsDuplicationsData("<duplications>"
             + "<g>"
             + "<b s=\"5\" l=\"200\" r=\"key1\"/>"
             + "<b s=\"15\" l=\"200\" r=\"key2\"/>"
@@ -129,6 +354,26 @@ public class SonarEngineTest {
             + "</duplications>")));
   }
 
+  /**
+   * Compares duplications in the legacy XML format.
+   */
+  private static class IsDuplicationsData extends BaseMatcher<Measure> {
+    private final String xml;
+
+    IsDuplicationsData(String xml) {
+      this.xml = xml;
+    }
+
+    public boolean matches(Object o) {
+      Measure measure = (Measure) o;
+      return CoreMetrics.DUPLICATIONS_DATA.equals(measure.getMetric()) && xml.equals(DuplicationsData.toXml(measure.getData()));
+    }
+
+    public void describeTo(Description description) {
+      description.appendText(xml);
+    }
+  }
+
   private CloneGroup newCloneGroup(ClonePart... parts) {
     return CloneGroup.builder().setLength(0).setOrigin(parts[0]).setParts(Arrays.asList(parts)).build();
   }
@@ -0,0 +1,193 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.cpd.index;
+
+import com.google.common.collect.Lists;
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.database.model.Snapshot;
+import org.sonar.api.resources.JavaFile;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Resource;
+import org.sonar.batch.index.ResourcePersister;
+import org.sonar.core.duplication.DuplicationDao;
+import org.sonar.core.duplication.DuplicationUnitDto;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class DbDuplicationsIndexTest {
+
+  private ResourcePersister resourcePersister;
+  private DuplicationDao dao;
+  private Project project;
+  private Resource file;
+  private ByteArray hash;
+  private ByteArray newBlockHash;
+
+  @Before
+  public void setUp() {
+    Snapshot snapshot = new Snapshot();
+    snapshot.setId(10);
+    resourcePersister = mock(ResourcePersister.class);
+    when(resourcePersister.getSnapshotOrFail(any(Resource.class))).thenReturn(snapshot);
+    dao = mock(DuplicationDao.class);
+    doAnswer(new StreamCandidates(2)).when(dao).selectCandidates(anyCollection(), any(Integer.class), anyString(), any(ResultHandler.class));
+    when(dao.selectCandidates(anyInt(), any(Integer.class), anyString())).thenReturn(Arrays.asList(newUnit("other-file", 0)));
+    project = new Project("foo").setLanguageKey("java");
+    file = new JavaFile("Foo");
+    hash = new ByteArray(0xaaL);
+  }
+
+  @Test
+  public void shouldLoadCandidatesForEachFile() {
+    DbDuplicationsIndex index = new DbDuplicationsIndex(resourcePersister, project, dao);
+    index.insert(file, Arrays.asList(newBlock()));
+
+    index.prepareCache(file);
+    index.prepareCache(file);
+
+    assertThat(index.getByHash(hash).size(), is(1));
+    verify(dao, times(2)).selectCandidates(anyInt(), any(Integer.class), anyString());
+    verify(dao, never()).selectCandidates(anyCollection(), any(Integer.class), anyString(), any(ResultHandler.class));
+  }
+
+  @Test
+  public void shouldPrefetchCandidatesOfAllFiles() {
+    DbDuplicationsIndex index = new DbDuplicationsIndex(resourcePersister, project, dao, 10);
+    index.insert(file, Arrays.asList(newBlock()));
+
+    index.prepareCache(file);
+    index.prepareCache(file);
+
+    Collection<Block> candidates = index.getByHash(hash);
+    assertThat(candidates.size(), is(2));
+    assertThat(candidates.iterator().next().getBlockHash() == newBlockHash, is(true));
+    verify(dao, times(1)).selectCandidates(anyCollection(), any(Integer.class), eq("java"), any(ResultHandler.class));
+    verify(dao, never()).selectCandidates(anyInt(), any(Integer.class), anyString());
+  }
+
+  @Test
+  public void shouldLoadCandidatesForEachFileWhenLimitExceeded() {
+    DbDuplicationsIndex index = new DbDuplicationsIndex(resourcePersister, project, dao, 1);
+    index.insert(file, Arrays.asList(newBlock()));
+
+    index.prepareCache(file);
+
+    assertThat(index.getByHash(hash).size(), is(1));
+    verify(dao, times(1)).selectCandidates(anyCollection(), any(Integer.class), anyString(), any(ResultHandler.class));
+    verify(dao, times(1)).selectCandidates(anyInt(), any(Integer.class), anyString());
+  }
+
+  @Test
+  public void shouldCountCandidatesOfAllChunksOfHashes() {
+    doAnswer(new StreamCandidatesByChunks()).when(dao).selectCandidates(anyCollection(), any(Integer.class), anyString(), any(ResultHandler.class));
+    DbDuplicationsIndex index = new DbDuplicationsIndex(resourcePersister, project, dao, 1200);
+    List<Block> blocks = Lists.newArrayList();
+    for (int i = 0; i < 1500; i++) {
+      blocks.add(Block.builder().setResourceId("foo:Foo").setBlockHash(new ByteArray((long) i)).setIndexInFile(i).setLines(i, i + 1).build());
+    }
+    index.insert(file, blocks);
+
+    index.prepareCache(file);
+
+    // 1500 candidates in two chunks exceed the limit, even if each chunk does not
+    verify(dao, times(1)).selectCandidates(anyInt(), any(Integer.class), anyString());
+  }
+
+  private Block newBlock() {
+    newBlockHash = new ByteArray(0xaaL);
+    return Block.builder()
+        .setResourceId("foo:Foo")
+        .setBlockHash(newBlockHash)
+        .setIndexInFile(0)
+        .setLines(1, 2)
+        .build();
+  }
+
+  private static DuplicationUnitDto newUnit(String resourceKey, int indexInFile) {
+    DuplicationUnitDto unit = new DuplicationUnitDto(1, 2, 0xaaL, indexInFile, 1, 2);
+    unit.setResourceKey(resourceKey);
+    return unit;
+  }
+
+  /**
+   * Streams one candidate per hash to the handler, with a new context for each chunk of 1000 hashes as done by MyBatis.
+   */
+  private static class StreamCandidatesByChunks implements Answer<Object> {
+    @SuppressWarnings("unchecked")
+    public Object answer(InvocationOnMock invocation) {
+      Collection<Long> hashes = (Collection<Long>) invocation.getArguments()[0];
+      ResultHandler handler = (ResultHandler) invocation.getArguments()[3];
+      for (List<Long> chunk : Lists.partition(Lists.newArrayList(hashes), 1000)) {
+        DefaultResultContext context = new DefaultResultContext();
+        for (Long hash : chunk) {
+          DuplicationUnitDto unit = new DuplicationUnitDto(1, 2, hash, 0, 1, 2);
+          unit.setResourceKey("other-file");
+          context.nextResultObject(unit);
+          handler.handleResult(context);
+          if (context.isStopped()) {
+            return null;
+          }
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Streams given number of candidates to the handler.
+   */
+  private static class StreamCandidates implements Answer<Object> {
+    private final int count;
+
+    StreamCandidates(int count) {
+      this.count = count;
+    }
+
+    public Object answer(InvocationOnMock invocation) {
+      ResultHandler handler = (ResultHandler) invocation.getArguments()[3];
+      ResultContext context = mock(ResultContext.class);
+      for (int i = 1; i <= count && !context.isStopped(); i++) {
+        when(context.getResultCount()).thenReturn(i);
+        when(context.getResultObject()).thenReturn(newUnit("other-file", i));
+        handler.handleResult(context);
+      }
+      return null;
+    }
+  }
+
+}
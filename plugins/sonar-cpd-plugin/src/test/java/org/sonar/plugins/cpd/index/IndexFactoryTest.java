@@ -24,6 +24,7 @@ import org.junit.Test;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
+import org.sonar.batch.bootstrap.TempDirectories;
 import org.sonar.batch.index.ResourcePersister;
 import org.sonar.core.duplication.DuplicationDao;
 
@@ -45,14 +46,14 @@ public class IndexFactoryTest {
   @Test
   public void crossProjectEnabled() {
     settings.setProperty(CoreProperties.CPD_CROSS_RPOJECT, "true");
-    IndexFactory factory = new IndexFactory(settings, mock(ResourcePersister.class), mock(DuplicationDao.class));
+    IndexFactory factory = new IndexFactory(settings, null, mock(ResourcePersister.class), mock(DuplicationDao.class));
     assertThat(factory.isCrossProject(project), is(true));
   }
 
   @Test
   public void noCrossProjectWithBranch() {
     settings.setProperty(CoreProperties.CPD_CROSS_RPOJECT, "true");
-    IndexFactory factory = new IndexFactory(settings, mock(ResourcePersister.class), mock(DuplicationDao.class));
+    IndexFactory factory = new IndexFactory(settings, null, mock(ResourcePersister.class), mock(DuplicationDao.class));
     project.setBranch("branch");
     assertThat(factory.isCrossProject(project), is(false));
   }
@@ -60,15 +61,31 @@ public class IndexFactoryTest {
   @Test
   public void noCrossProjectWithoutDatabase() {
     settings.setProperty(CoreProperties.CPD_CROSS_RPOJECT, "true");
-    IndexFactory factory = new IndexFactory(settings);
+    IndexFactory factory = new IndexFactory(settings, null);
     assertThat(factory.isCrossProject(project), is(false));
   }
 
   @Test
   public void crossProjectDisabled() {
     settings.setProperty(CoreProperties.CPD_CROSS_RPOJECT, "false");
-    IndexFactory factory = new IndexFactory(settings, mock(ResourcePersister.class), mock(DuplicationDao.class));
+    IndexFactory factory = new IndexFactory(settings, null, mock(ResourcePersister.class), mock(DuplicationDao.class));
     assertThat(factory.isCrossProject(project), is(false));
   }
 
+  @Test
+  public void shouldCreateMappedIndex() throws Exception {
+    settings.setProperty(IndexFactory.MAPPED_INDEX_PROPERTY, "true");
+    TempDirectories tempDirectories = new TempDirectories();
+    try {
+      IndexFactory factory = new IndexFactory(settings, tempDirectories);
+      SonarDuplicationsIndex index = factory.create(project, 10);
+      assertThat(tempDirectories.getDir("cpd").list().length, is(2));
+
+      index.close();
+      assertThat(tempDirectories.getDir("cpd").list().length, is(0));
+    } finally {
+      tempDirectories.stop();
+    }
+  }
+
 }
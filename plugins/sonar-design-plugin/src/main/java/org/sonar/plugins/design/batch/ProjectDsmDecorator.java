@@ -20,9 +20,12 @@
 package org.sonar.plugins.design.batch;
 
 import com.google.common.collect.Lists;
+import org.apache.commons.configuration.Configuration;
+import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.Decorator;
 import org.sonar.api.batch.DecoratorContext;
 import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.design.Dependency;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.PersistenceMode;
@@ -34,6 +37,7 @@ import org.sonar.graph.*;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * For performance reasons, this decorator is currently limited to matrix between modules.
@@ -57,7 +61,7 @@ public class ProjectDsmDecorator implements Decorator {
       Collection<Resource> subProjects = getSubProjects((Project) resource);
 
       if (!subProjects.isEmpty()) {
-        Dsm<Resource> dsm = getDsm(subProjects);
+        Dsm<Resource> dsm = getDsm(subProjects, getFeedbackEdgesTimeout((Project) resource));
         saveDsm(context, dsm);
       }
     }
@@ -69,14 +73,28 @@ public class ProjectDsmDecorator implements Decorator {
     context.saveMeasure(measure);
   }
 
-  private Dsm<Resource> getDsm(Collection<Resource> subProjects) {
-    CycleDetector<Resource> cycleDetector = new CycleDetector<Resource>(index, subProjects);
+  private int getFeedbackEdgesTimeout(Project project) {
+    Configuration configuration = project.getConfiguration();
+    if (configuration == null) {
+      return CoreProperties.DESIGN_FEEDBACK_EDGES_TIMEOUT_DEFAULT_VALUE;
+    }
+    return configuration.getInt(CoreProperties.DESIGN_FEEDBACK_EDGES_TIMEOUT_PROPERTY, CoreProperties.DESIGN_FEEDBACK_EDGES_TIMEOUT_DEFAULT_VALUE);
+  }
+
+  private Dsm<Resource> getDsm(Collection<Resource> subProjects, int feedbackEdgesTimeout) {
+    DirectedGraphAccessor<Resource, Dependency> graph = CompactDirectedGraph.copyOf(index, subProjects);
+    CycleDetector<Resource> cycleDetector = new CycleDetector<Resource>(graph, subProjects);
     Set<Cycle> cycles = cycleDetector.getCycles();
 
-    MinimumFeedbackEdgeSetSolver solver = new MinimumFeedbackEdgeSetSolver(cycles);
+    MinimumFeedbackEdgeSetSolver solver;
+    if (feedbackEdgesTimeout > 0) {
+      solver = new MinimumFeedbackEdgeSetSolver(cycles, Runtime.getRuntime().availableProcessors(), feedbackEdgesTimeout, TimeUnit.SECONDS);
+    } else {
+      solver = new MinimumFeedbackEdgeSetSolver(cycles);
+    }
     Set<Edge> feedbackEdges = solver.getEdges();
 
-    Dsm<Resource> dsm = new Dsm<Resource>(index, subProjects, feedbackEdges);
+    Dsm<Resource> dsm = new Dsm<Resource>(graph, subProjects, feedbackEdges);
     DsmTopologicalSorter.sort(dsm);
     return dsm;
   }
@@ -61,7 +61,18 @@ import java.util.List;
     project = true,
     global = true,
     category = CoreProperties.CATEGORY_JAVA,
-    type = PropertyType.BOOLEAN)
+    type = PropertyType.BOOLEAN),
+  @Property(
+    key = CoreProperties.DESIGN_FEEDBACK_EDGES_TIMEOUT_PROPERTY,
+    defaultValue = "" + CoreProperties.DESIGN_FEEDBACK_EDGES_TIMEOUT_DEFAULT_VALUE,
+    name = "Timeout of feedback edges search",
+    description = "Maximum duration in seconds of each search of the minimum set of dependencies to remove in order to break cycles. " +
+      "When positive, the search runs on all available processors and keeps the best solution found when the time is over. " +
+      "Zero bounds the search by a number of iterations only.",
+    project = true,
+    global = true,
+    category = CoreProperties.CATEGORY_JAVA,
+    type = PropertyType.INTEGER)
 })
 public final class SquidPlugin extends SonarPlugin {
 
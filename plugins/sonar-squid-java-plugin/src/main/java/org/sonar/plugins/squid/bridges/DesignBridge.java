@@ -21,6 +21,7 @@ package org.sonar.plugins.squid.bridges;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.design.Dependency;
 import org.sonar.api.measures.CoreMetrics;
@@ -31,7 +32,6 @@ import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
 import org.sonar.api.utils.TimeProfiler;
 import org.sonar.graph.*;
-import org.sonar.squid.Squid;
 import org.sonar.squid.api.SourceCode;
 import org.sonar.squid.api.SourceCodeEdge;
 import org.sonar.squid.api.SourcePackage;
@@ -40,6 +40,7 @@ import org.sonar.squid.api.SourceProject;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class DesignBridge extends Bridge {
 
@@ -50,12 +51,21 @@ public class DesignBridge extends Bridge {
    */
   private DependencyIndex dependencyIndex = new DependencyIndex();
 
+  /*
+   * Same as dependencyIndex, read in onProject() and used by onPackage().
+   */
+  private int feedbackEdgesTimeout = CoreProperties.DESIGN_FEEDBACK_EDGES_TIMEOUT_DEFAULT_VALUE;
+
   protected DesignBridge() {
     super(true);
   }
 
   @Override
   public void onProject(SourceProject squidProject, Project sonarProject) {
+    if (sonarProject.getConfiguration() != null) {
+      feedbackEdgesTimeout = sonarProject.getConfiguration()
+          .getInt(CoreProperties.DESIGN_FEEDBACK_EDGES_TIMEOUT_PROPERTY, CoreProperties.DESIGN_FEEDBACK_EDGES_TIMEOUT_DEFAULT_VALUE);
+    }
     Set<SourceCode> squidPackages = squidProject.getChildren();
     if (squidPackages != null && !squidPackages.isEmpty()) {
       TimeProfiler profiler = new TimeProfiler(LOG).start("Package design analysis");
@@ -63,7 +73,8 @@ public class DesignBridge extends Bridge {
 
       savePackageDependencies(squidPackages);
 
-      IncrementalCyclesAndFESSolver<SourceCode> cyclesAndFESSolver = new IncrementalCyclesAndFESSolver<SourceCode>(squid, squidPackages);
+      DirectedGraphAccessor<SourceCode, SourceCodeEdge> graph = CompactDirectedGraph.copyOf(squid, squidPackages);
+      IncrementalCyclesAndFESSolver<SourceCode> cyclesAndFESSolver = newCyclesAndFESSolver(graph, squidPackages);
       LOG.debug("{} cycles", cyclesAndFESSolver.getCycles().size());
 
       Set<Edge> feedbackEdges = cyclesAndFESSolver.getFeedbackEdgeSet();
@@ -75,7 +86,7 @@ public class DesignBridge extends Bridge {
       savePositiveMeasure(sonarProject, CoreMetrics.PACKAGE_TANGLES, tangles);
       savePositiveMeasure(sonarProject, CoreMetrics.PACKAGE_EDGES_WEIGHT, getEdgesWeight(squidPackages));
 
-      String dsmJson = serializeDsm(squid, squidPackages, feedbackEdges);
+      String dsmJson = serializeDsm(graph, squidPackages, feedbackEdges);
       Measure dsmMeasure = new Measure(CoreMetrics.DEPENDENCY_MATRIX, dsmJson).setPersistenceMode(PersistenceMode.DATABASE);
       context.saveMeasure(sonarProject, dsmMeasure);
 
@@ -96,10 +107,11 @@ public class DesignBridge extends Bridge {
 
       saveFileDependencies(squidFiles);
 
-      IncrementalCyclesAndFESSolver<SourceCode> cycleDetector = new IncrementalCyclesAndFESSolver<SourceCode>(squid, squidFiles);
+      DirectedGraphAccessor<SourceCode, SourceCodeEdge> graph = CompactDirectedGraph.copyOf(squid, squidFiles);
+      IncrementalCyclesAndFESSolver<SourceCode> cycleDetector = newCyclesAndFESSolver(graph, squidFiles);
       Set<Cycle> cycles = cycleDetector.getCycles();
 
-      MinimumFeedbackEdgeSetSolver solver = new MinimumFeedbackEdgeSetSolver(cycles);
+      MinimumFeedbackEdgeSetSolver solver = newFeedbackEdgeSetSolver(cycles);
       Set<Edge> feedbackEdges = solver.getEdges();
       int tangles = solver.getWeightOfFeedbackEdgeSet();
 
@@ -108,11 +120,27 @@ public class DesignBridge extends Bridge {
       savePositiveMeasure(sonarPackage, CoreMetrics.FILE_TANGLES, tangles);
       savePositiveMeasure(sonarPackage, CoreMetrics.FILE_EDGES_WEIGHT, getEdgesWeight(squidFiles));
 
-      String dsmJson = serializeDsm(squid, squidFiles, feedbackEdges);
+      String dsmJson = serializeDsm(graph, squidFiles, feedbackEdges);
       context.saveMeasure(sonarPackage, new Measure(CoreMetrics.DEPENDENCY_MATRIX, dsmJson));
     }
   }
 
+  private IncrementalCyclesAndFESSolver<SourceCode> newCyclesAndFESSolver(DirectedGraphAccessor<SourceCode, SourceCodeEdge> graph,
+      Set<SourceCode> squidSources) {
+    if (feedbackEdgesTimeout > 0) {
+      return new IncrementalCyclesAndFESSolver<SourceCode>(graph, squidSources, Runtime.getRuntime().availableProcessors(),
+          feedbackEdgesTimeout, TimeUnit.SECONDS);
+    }
+    return new IncrementalCyclesAndFESSolver<SourceCode>(graph, squidSources);
+  }
+
+  private MinimumFeedbackEdgeSetSolver newFeedbackEdgeSetSolver(Set<Cycle> cycles) {
+    if (feedbackEdgesTimeout > 0) {
+      return new MinimumFeedbackEdgeSetSolver(cycles, Runtime.getRuntime().availableProcessors(), feedbackEdgesTimeout, TimeUnit.SECONDS);
+    }
+    return new MinimumFeedbackEdgeSetSolver(cycles);
+  }
+
   private double getEdgesWeight(Collection<SourceCode> sourceCodes) {
     List<SourceCodeEdge> edges = squid.getEdges(sourceCodes);
     double total = 0.0;
@@ -122,8 +150,8 @@ public class DesignBridge extends Bridge {
     return total;
   }
 
-  private String serializeDsm(Squid squid, Set<SourceCode> squidSources, Set<Edge> feedbackEdges) {
-    Dsm<SourceCode> dsm = new Dsm<SourceCode>(squid, squidSources, feedbackEdges);
+  private String serializeDsm(DirectedGraphAccessor<SourceCode, SourceCodeEdge> graph, Set<SourceCode> squidSources, Set<Edge> feedbackEdges) {
+    Dsm<SourceCode> dsm = new Dsm<SourceCode>(graph, squidSources, feedbackEdges);
     DsmTopologicalSorter.sort(dsm);
     return DsmSerializer.serialize(dsm, dependencyIndex, resourceIndex);
   }
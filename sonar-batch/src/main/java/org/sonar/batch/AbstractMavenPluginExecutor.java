@@ -42,7 +42,10 @@ public abstract class AbstractMavenPluginExecutor implements MavenPluginExecutor
     return handler;
   }
 
-  public final void execute(Project project, ProjectDefinition projectDefinition, String goal) {
+  /**
+   * Executions are serialized, as the Maven session is shared by the modules that are analysed concurrently.
+   */
+  public final synchronized void execute(Project project, ProjectDefinition projectDefinition, String goal) {
     TimeProfiler profiler = new TimeProfiler().start("Execute " + goal);
     ClassLoader currentClassLoader = Thread.currentThread().getContextClassLoader();
     try {
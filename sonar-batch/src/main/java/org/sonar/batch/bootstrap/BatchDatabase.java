@@ -29,15 +29,20 @@ import java.util.Properties;
  */
 public class BatchDatabase extends DefaultDatabase {
 
+  private final Settings settings;
+
   public BatchDatabase(Settings settings) {
     super(settings);
+    this.settings = settings;
   }
 
   @Override
   protected void doCompleteProperties(Properties properties) {
     // two connections are required : one for Hibernate and one for MyBatis
     // Note that Hibernate will be remove soon
+    // plus one Hibernate session per module analysed concurrently
+    int moduleThreads = settings.getInt(BatchModule.THREADS_PROPERTY);
     properties.setProperty("sonar.jdbc.initialSize", "2");
-    properties.setProperty("sonar.jdbc.maxActive", "2");
+    properties.setProperty("sonar.jdbc.maxActive", String.valueOf(moduleThreads > 1 ? 2 + moduleThreads : 2));
   }
 }
@@ -19,29 +19,52 @@
  */
 package org.sonar.batch.bootstrap;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.Plugins;
+import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Metric;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.ResourceTypes;
 import org.sonar.api.utils.ServerHttpClient;
-import org.sonar.batch.DefaultFileLinesContextFactory;
-import org.sonar.batch.DefaultResourceCreationLock;
+import org.sonar.api.utils.SonarException;
 import org.sonar.batch.ProjectConfigurator;
 import org.sonar.batch.ProjectTree;
-import org.sonar.batch.components.*;
-import org.sonar.batch.index.*;
-import org.sonar.core.metric.CacheMetricFinder;
+import org.sonar.batch.index.DefaultIndex;
+import org.sonar.batch.index.DefaultResourcePersister;
 import org.sonar.core.notification.DefaultNotificationManager;
-import org.sonar.core.rule.CacheRuleFinder;
 import org.sonar.core.user.DefaultUserFinder;
-import org.sonar.jpa.dao.MeasuresDao;
+import org.sonar.jpa.session.DatabaseSessionFactory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Level-2 components. Connected to database.
  */
 public class BatchModule extends Module {
 
+  private static final Logger LOG = LoggerFactory.getLogger(BatchModule.class);
+
+  /**
+   * Maximum number of modules analysed concurrently. Modules are analysed one after another when this value is lower than 2.
+   * Otherwise the modules without sub-modules are analysed in parallel, each one in its own container with its own index,
+   * persisters and database session. Their measures are then copied to the index of the batch, before analysing the parent
+   * modules one after another. Extensions instantiated per batch must be thread-safe.
+   *
+   * @since 3.2
+   */
+  public static final String THREADS_PROPERTY = "sonar.modules.threads";
+
   private final boolean dryRun;
 
   public BatchModule(boolean dryRun) {
@@ -53,34 +76,9 @@ public class BatchModule extends Module {
     addCoreSingleton(ProjectTree.class);
     addCoreSingleton(ProjectFilter.class);
     addCoreSingleton(ProjectConfigurator.class);
-    addCoreSingleton(DefaultResourceCreationLock.class);
-    addCoreSingleton(DefaultIndex.class);
-    addCoreSingleton(DefaultFileLinesContextFactory.class);
-
-    if (dryRun) {
-      addCoreSingleton(ReadOnlyPersistenceManager.class);
-    } else {
-      addCoreSingleton(DefaultPersistenceManager.class);
-      addCoreSingleton(DependencyPersister.class);
-      addCoreSingleton(EventPersister.class);
-      addCoreSingleton(LinkPersister.class);
-      addCoreSingleton(MeasurePersister.class);
-      addCoreSingleton(MemoryOptimizer.class);
-      addCoreSingleton(DefaultResourcePersister.class);
-      addCoreSingleton(SourcePersister.class);
-    }
-
+    install(new PersistenceModule(dryRun));
     addCoreSingleton(Plugins.class);
     addCoreSingleton(ServerHttpClient.class);
-    addCoreSingleton(MeasuresDao.class);
-    addCoreSingleton(CacheRuleFinder.class);
-    addCoreSingleton(CacheMetricFinder.class);
-    addCoreSingleton(PastSnapshotFinderByDate.class);
-    addCoreSingleton(PastSnapshotFinderByDays.class);
-    addCoreSingleton(PastSnapshotFinderByPreviousAnalysis.class);
-    addCoreSingleton(PastSnapshotFinderByVersion.class);
-    addCoreSingleton(PastMeasuresLoader.class);
-    addCoreSingleton(PastSnapshotFinder.class);
     addCoreSingleton(DefaultNotificationManager.class);
     addCoreSingleton(DefaultUserFinder.class);
     addCoreSingleton(ResourceTypes.class);
@@ -102,20 +100,113 @@ public class BatchModule extends Module {
   @Override
   protected void doStart() {
     ProjectTree projectTree = getComponentByType(ProjectTree.class);
-    analyze(projectTree.getRootProject());
+    Set<Project> analyzedProjects = Sets.newHashSet();
+    int threads = getComponentByType(Settings.class).getInt(THREADS_PROPERTY);
+    if (threads > 1) {
+      analyzeConcurrently(getLeafModules(projectTree), threads, analyzedProjects);
+    }
+    analyze(projectTree.getRootProject(), analyzedProjects);
   }
 
-  private void analyze(Project project) {
+  private void analyze(Project project, Set<Project> analyzedProjects) {
     for (Project subProject : project.getModules()) {
-      analyze(subProject);
+      analyze(subProject, analyzedProjects);
+    }
+
+    if (!analyzedProjects.contains(project)) {
+      Module projectComponents = installChild(createProjectModule(project, false));
+      try {
+        projectComponents.start();
+      } finally {
+        projectComponents.stop();
+        uninstallChild();
+      }
+    }
+  }
+
+  /**
+   * Overridden by unit tests
+   */
+  Module createProjectModule(Project project, boolean isolated) {
+    return new ProjectModule(project, dryRun, isolated);
+  }
+
+  private static List<Project> getLeafModules(ProjectTree projectTree) {
+    List<Project> result = Lists.newArrayList();
+    for (Project project : projectTree.getProjects()) {
+      if (!project.isRoot() && project.getModules().isEmpty()) {
+        result.add(project);
+      }
     }
+    return result;
+  }
+
+  private void analyzeConcurrently(List<Project> modules, int threads, Set<Project> analyzedProjects) {
+    if (modules.size() < 2) {
+      return;
+    }
+    // picocontainer lazily instantiates components without synchronization
+    getComponents(Object.class);
 
-    Module projectComponents = installChild(new ProjectModule(project, dryRun));
+    int poolSize = Math.min(threads, modules.size());
+    LOG.info("Analyze {} modules on {} threads", modules.size(), poolSize);
+    ExecutorService executorService = Executors.newFixedThreadPool(poolSize);
+    CompletionService<Project> completionService = new ExecutorCompletionService<Project>(executorService);
     try {
-      projectComponents.start();
+      for (Project module : modules) {
+        completionService.submit(new ModuleTask(module));
+      }
+      for (int i = 0; i < modules.size(); i++) {
+        analyzedProjects.add(waitForModule(completionService));
+      }
     } finally {
-      projectComponents.stop();
-      uninstallChild();
+      executorService.shutdownNow();
+    }
+  }
+
+  private static Project waitForModule(CompletionService<Project> completionService) {
+    try {
+      return completionService.take().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SonarException("Interrupted while analyzing modules", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new SonarException("Fail to analyze module", e.getCause());
+    }
+  }
+
+  /**
+   * Analyzes a module in its own container, then copies its results to the index of the batch.
+   */
+  private class ModuleTask implements Callable<Project> {
+    private final Project module;
+
+    ModuleTask(Project module) {
+      this.module = module;
+    }
+
+    public Project call() {
+      DefaultIndex batchIndex = getComponentByType(DefaultIndex.class);
+      DefaultResourcePersister batchPersister = getComponentByType(DefaultResourcePersister.class);
+      Module moduleComponents = installChild(createProjectModule(module, true));
+      try {
+        moduleComponents.start();
+        synchronized (batchIndex) {
+          if (batchPersister != null) {
+            batchPersister.addProjectSnapshots(moduleComponents.getComponentByType(DefaultResourcePersister.class));
+          }
+          batchIndex.importModule(module, moduleComponents.getComponentByType(DefaultIndex.class));
+        }
+      } finally {
+        moduleComponents.stop();
+        uninstallChild(moduleComponents);
+        // the database session of the thread is not shared with the next modules
+        getComponentByType(DatabaseSessionFactory.class).clear();
+      }
+      return module;
     }
   }
 }
@@ -62,17 +62,33 @@ public abstract class Module {
 
   /**
    * Installs module into new scope - see http://picocontainer.org/scopes.html
+   * Several children can be installed concurrently, see {@link #uninstallChild(Module)}.
    *
    * @return installed module
    */
   public final Module installChild(Module child) {
-    ComponentContainer childContainer = container.createChild();
-    child.init(childContainer);
+    synchronized (container) {
+      ComponentContainer childContainer = container.createChild();
+      child.init(childContainer);
+    }
     return child;
   }
 
   public final void uninstallChild() {
-    container.removeChild();
+    synchronized (container) {
+      container.removeChild();
+    }
+  }
+
+  /**
+   * Uninstalls the given child, when several children are installed at the same time.
+   *
+   * @since 3.2
+   */
+  public final void uninstallChild(Module child) {
+    synchronized (container) {
+      container.removeChild(child.container);
+    }
   }
 
   /**
@@ -0,0 +1,76 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.batch.bootstrap;
+
+import org.sonar.batch.DefaultFileLinesContextFactory;
+import org.sonar.batch.DefaultResourceCreationLock;
+import org.sonar.batch.components.*;
+import org.sonar.batch.index.*;
+import org.sonar.core.metric.CacheMetricFinder;
+import org.sonar.core.rule.CacheRuleFinder;
+import org.sonar.jpa.dao.MeasuresDao;
+
+/**
+ * Index of resources and its persistence, plus the components that keep state read from database.
+ * It's installed in the batch container, and in the container of each module that is analysed concurrently
+ * with other modules (see {@link BatchModule#THREADS_PROPERTY}), so that these modules share nothing but the
+ * projects.
+ *
+ * @since 3.2
+ */
+public class PersistenceModule extends Module {
+
+  private final boolean dryRun;
+
+  public PersistenceModule(boolean dryRun) {
+    this.dryRun = dryRun;
+  }
+
+  @Override
+  protected void configure() {
+    addCoreSingleton(DefaultResourceCreationLock.class);
+    addCoreSingleton(DefaultIndex.class);
+    addCoreSingleton(ViolationStore.class);
+    addCoreSingleton(DefaultFileLinesContextFactory.class);
+
+    if (dryRun) {
+      addCoreSingleton(ReadOnlyPersistenceManager.class);
+    } else {
+      addCoreSingleton(DefaultPersistenceManager.class);
+      addCoreSingleton(DependencyPersister.class);
+      addCoreSingleton(EventPersister.class);
+      addCoreSingleton(LinkPersister.class);
+      addCoreSingleton(MeasurePersister.class);
+      addCoreSingleton(MemoryOptimizer.class);
+      addCoreSingleton(DefaultResourcePersister.class);
+      addCoreSingleton(SourcePersister.class);
+    }
+
+    addCoreSingleton(MeasuresDao.class);
+    addCoreSingleton(CacheRuleFinder.class);
+    addCoreSingleton(CacheMetricFinder.class);
+    addCoreSingleton(PastSnapshotFinderByDate.class);
+    addCoreSingleton(PastSnapshotFinderByDays.class);
+    addCoreSingleton(PastSnapshotFinderByPreviousAnalysis.class);
+    addCoreSingleton(PastSnapshotFinderByVersion.class);
+    addCoreSingleton(PastMeasuresLoader.class);
+    addCoreSingleton(PastSnapshotFinder.class);
+  }
+}
@@ -46,15 +46,28 @@ public class ProjectModule extends Module {
   private static final Logger LOG = LoggerFactory.getLogger(ProjectModule.class);
   private Project project;
   private boolean dryRun;
+  private boolean isolated;
 
   public ProjectModule(Project project, boolean dryRun) {
+    this(project, dryRun, false);
+  }
+
+  /**
+   * @param isolated true if the module is analysed concurrently with other modules. It has then its own index and persisters.
+   * @since 3.2
+   */
+  public ProjectModule(Project project, boolean dryRun, boolean isolated) {
     this.project = project;
     this.dryRun = dryRun;
+    this.isolated = isolated;
   }
 
   @Override
   protected void configure() {
     logSettings();
+    if (isolated) {
+      addIsolatedComponents();
+    }
     addCoreComponents();
     addProjectComponents();
     addProjectPluginExtensions();
@@ -94,6 +107,20 @@ public class ProjectModule extends Module {
     addAdapter(new ProfileProvider());
   }
 
+  /**
+   * The snapshots of projects, already saved by the batch, are shared.
+   */
+  private void addIsolatedComponents() {
+    DefaultIndex batchIndex = getComponentByType(DefaultIndex.class);
+    DefaultResourcePersister batchPersister = getComponentByType(DefaultResourcePersister.class);
+    install(new PersistenceModule(dryRun));
+    if (batchPersister != null) {
+      synchronized (batchIndex) {
+        getComponentByType(DefaultResourcePersister.class).addProjectSnapshots(batchPersister);
+      }
+    }
+  }
+
   private void addCoreComponents() {
     addCoreSingleton(EventBus.class);
     addCoreSingleton(Phases.class);
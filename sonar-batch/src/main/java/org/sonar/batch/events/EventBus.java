@@ -19,21 +19,49 @@
  */
 package org.sonar.batch.events;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import org.sonar.api.batch.events.EventHandler;
 
 import java.util.List;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Dispatches {@link BatchEvent}s. Eases decoupling by allowing objects to interact without having direct dependencies upon one another, and
  * without requiring event sources to deal with maintaining handler lists.
+ * <p/>
+ * Dispatch lists are computed once per type of handler, then cached until a new handler is registered.
  */
 public class EventBus {
 
-  private EventHandler[] registeredHandlers;
+  private volatile List<EventHandler> registeredHandlers;
+  private volatile ConcurrentMap<Class<? extends EventHandler>, List<EventHandler>> dispatchLists = new MapMaker().makeMap();
 
   public EventBus(EventHandler[] handlers) {
-    this.registeredHandlers = handlers;
+    this.registeredHandlers = ImmutableList.copyOf(handlers);
+  }
+
+  /**
+   * Registers a handler after the creation of the bus. Dispatch lists are reset.
+   *
+   * @since 3.2
+   */
+  public synchronized void register(EventHandler handler) {
+    List<EventHandler> handlers = Lists.newArrayList(registeredHandlers);
+    handlers.add(handler);
+    registeredHandlers = ImmutableList.copyOf(handlers);
+    // lists being computed concurrently are put in the previous map
+    dispatchLists = new MapMaker().makeMap();
+  }
+
+  /**
+   * Allows to not create events when nobody listens to them.
+   *
+   * @since 3.2
+   */
+  public boolean hasHandlers(Class<? extends EventHandler> handlerType) {
+    return !getDispatchList(handlerType).isEmpty();
   }
 
   /**
@@ -51,11 +79,17 @@ public class EventBus {
   }
 
   private List<EventHandler> getDispatchList(Class<? extends EventHandler> handlerType) {
-    List<EventHandler> result = Lists.newArrayList();
-    for (EventHandler handler : registeredHandlers) {
-      if (handlerType.isAssignableFrom(handler.getClass())) {
-        result.add(handler);
+    ConcurrentMap<Class<? extends EventHandler>, List<EventHandler>> lists = dispatchLists;
+    List<EventHandler> result = lists.get(handlerType);
+    if (result == null) {
+      List<EventHandler> handlers = Lists.newArrayList();
+      for (EventHandler handler : registeredHandlers) {
+        if (handlerType.isAssignableFrom(handler.getClass())) {
+          handlers.add(handler);
+        }
       }
+      result = ImmutableList.copyOf(handlers);
+      lists.put(handlerType, result);
     }
     return result;
   }
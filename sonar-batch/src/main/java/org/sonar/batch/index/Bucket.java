@@ -19,9 +19,8 @@
  */
 package org.sonar.batch.index;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.MeasuresFilter;
 import org.sonar.api.measures.MeasuresFilters;
@@ -32,13 +31,25 @@ import org.sonar.api.utils.SonarException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 public final class Bucket {
 
   private Resource resource;
-  private ListMultimap<String, Measure> measuresByMetric = ArrayListMultimap.create();
+  /**
+   * Values are either a single {@link Measure}, which is the most frequent case, or a list of measures when the metric
+   * has also rule, characteristic or person measures. It avoids to allocate a list per metric.
+   */
+  private Map<String, Object> measuresByMetric = Maps.newHashMap();
   private List<Violation> violations = Lists.newLinkedList();
 
+  /**
+   * When violations are stored on disk, the list of violations is loaded on demand from the positions of the records.
+   */
+  private ViolationStore violationStore;
+  private long[] violationPositions;
+  private int violationCount = 0;
+
   private Bucket parent;
   private List<Bucket> children;
 
@@ -80,36 +91,102 @@ public final class Bucket {
     return parent;
   }
 
+  public Bucket setViolationStore(ViolationStore violationStore) {
+    this.violationStore = violationStore;
+    unloadViolations();
+    return this;
+  }
+
   public void addViolation(Violation violation) {
-    violations.add(violation);
+    if (violations != null) {
+      violations.add(violation);
+    } else {
+      storeViolation(violation);
+    }
   }
 
   public List<Violation> getViolations() {
+    if (violations == null && violationStore != null) {
+      violations = Lists.newArrayListWithCapacity(violationCount);
+      for (int i = 0; i < violationCount; i++) {
+        violations.add(violationStore.read(violationPositions[i], resource));
+      }
+      violationPositions = null;
+      violationCount = 0;
+    }
     return violations;
   }
 
+  boolean isViolationStored() {
+    return violationStore != null;
+  }
+
+  /**
+   * Writes the violations to disk, including the changes done since they have been loaded.
+   */
+  void unloadViolations() {
+    if (violationStore != null && violations != null) {
+      List<Violation> loadedViolations = violations;
+      violations = null;
+      for (Violation violation : loadedViolations) {
+        storeViolation(violation);
+      }
+    }
+  }
+
+  private void storeViolation(Violation violation) {
+    if (violationPositions == null) {
+      violationPositions = new long[8];
+    } else if (violationCount == violationPositions.length) {
+      long[] positions = new long[violationCount * 2];
+      System.arraycopy(violationPositions, 0, positions, 0, violationCount);
+      violationPositions = positions;
+    }
+    violationPositions[violationCount] = violationStore.write(violation);
+    violationCount++;
+  }
+
   public void addMeasure(Measure measure) {
-    List<Measure> metricMeasures = measuresByMetric.get(measure.getMetric().getKey());
-
-    boolean add = true;
-    if (metricMeasures != null) {
-      int index = metricMeasures.indexOf(measure);
-      if (index > -1) {
-        if (metricMeasures.get(index) == measure) {
-          add = false;
-        } else {
-          throw new SonarException("Can not add twice the same measure on " + resource + ": " + measure);
-        }
+    String metricKey = measure.getMetric().getKey();
+    Object metricMeasures = measuresByMetric.get(metricKey);
+    if (metricMeasures == null) {
+      measuresByMetric.put(metricKey, measure);
+
+    } else if (metricMeasures instanceof Measure) {
+      if (!isAlreadyAdded((Measure) metricMeasures, measure)) {
+        List<Measure> list = Lists.newArrayListWithCapacity(2);
+        list.add((Measure) metricMeasures);
+        list.add(measure);
+        measuresByMetric.put(metricKey, list);
       }
+
+    } else {
+      List<Measure> list = (List<Measure>) metricMeasures;
+      int index = list.indexOf(measure);
+      if (index < 0 || !isAlreadyAdded(list.get(index), measure)) {
+        list.add(measure);
+      }
+    }
+  }
+
+  /**
+   * @return true if the measure is already registered
+   */
+  private boolean isAlreadyAdded(Measure existing, Measure measure) {
+    if (existing == measure) {
+      return true;
     }
-    if (add) {
-      measuresByMetric.put(measure.getMetric().getKey(), measure);
+    if (existing.equals(measure)) {
+      throw new SonarException("Can not add twice the same measure on " + resource + ": " + measure);
     }
+    return false;
   }
 
   public void clear() {
     measuresByMetric = null;
     violations = null;
+    violationStore = null;
+    violationPositions = null;
     children = null;
     if (parent != null) {
       parent.removeChild(this);
@@ -120,13 +197,26 @@ public final class Bucket {
   public <M> M getMeasures(final MeasuresFilter<M> filter) {
     Collection<Measure> unfiltered;
     if (filter instanceof MeasuresFilters.MetricFilter) {
-      unfiltered = measuresByMetric.get(((MeasuresFilters.MetricFilter) filter).filterOnMetricKey());
+      unfiltered = toCollection(measuresByMetric.get(((MeasuresFilters.MetricFilter) filter).filterOnMetricKey()));
     } else {
-      unfiltered = measuresByMetric.values();
+      unfiltered = Lists.newArrayList();
+      for (Object metricMeasures : measuresByMetric.values()) {
+        unfiltered.addAll(toCollection(metricMeasures));
+      }
     }
     return filter.filter(unfiltered);
   }
 
+  private static Collection<Measure> toCollection(Object metricMeasures) {
+    if (metricMeasures == null) {
+      return Collections.emptyList();
+    }
+    if (metricMeasures instanceof Measure) {
+      return Collections.singletonList((Measure) metricMeasures);
+    }
+    return (List<Measure>) metricMeasures;
+  }
+
   public boolean isExcluded() {
     return resource.isExcluded();
   }
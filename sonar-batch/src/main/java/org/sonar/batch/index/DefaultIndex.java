@@ -44,10 +44,19 @@ import org.sonar.batch.ViolationFilters;
 
 import java.util.*;
 
+/**
+ * Access to the index is synchronized on the index instance, so that sensors can be executed concurrently.
+ */
 public class DefaultIndex extends SonarIndex {
 
   private static final Logger LOG = LoggerFactory.getLogger(DefaultIndex.class);
 
+  // protection against the extensions that create a new instance of metric for each measure
+  private static final int MAX_RESOLVED_METRICS = 10000;
+
+  // resources are decorated one after the other, so their violations do not need to stay long in memory
+  private static final int MAX_BUCKETS_WITH_LOADED_VIOLATIONS = 100;
+
   private RulesProfile profile;
   private PersistenceManager persistence;
   private DefaultResourceCreationLock lock;
@@ -65,14 +74,34 @@ public class DefaultIndex extends SonarIndex {
   private Map<Resource, Map<Resource, Dependency>> incomingDependenciesByResource = Maps.newHashMap();
   private ProjectTree projectTree;
 
-  public DefaultIndex(PersistenceManager persistence, DefaultResourceCreationLock lock, ProjectTree projectTree, MetricFinder metricFinder) {
+  /**
+   * Metrics of measures are replaced by the metrics loaded from database. As measures are usually created with
+   * the same instances of metrics, for example the constants of CoreMetrics, the resolution is cached by instance.
+   */
+  private Map<Metric, Metric> resolvedMetrics = new IdentityHashMap<Metric, Metric>();
+
+  /**
+   * Optional storage of violations on disk. The buckets whose violations have been loaded in memory are kept in the
+   * order of access, so that the least recently used are written back to disk.
+   */
+  private ViolationStore violationStore;
+  private Map<Bucket, Boolean> bucketsWithLoadedViolations = new LinkedHashMap<Bucket, Boolean>(16, 0.75f, true);
+  private Set<Bucket> pinnedBuckets = Sets.newHashSet();
+
+  public DefaultIndex(PersistenceManager persistence, DefaultResourceCreationLock lock, ProjectTree projectTree, MetricFinder metricFinder,
+                      ViolationStore violationStore) {
     this.persistence = persistence;
     this.lock = lock;
     this.projectTree = projectTree;
     this.metricFinder = metricFinder;
+    this.violationStore = (violationStore != null && violationStore.isEnabled() ? violationStore : null);
   }
 
-  public void start() {
+  public DefaultIndex(PersistenceManager persistence, DefaultResourceCreationLock lock, ProjectTree projectTree, MetricFinder metricFinder) {
+    this(persistence, lock, projectTree, metricFinder, null);
+  }
+
+  public synchronized void start() {
     Project rootProject = projectTree.getRootProject();
     doStart(rootProject);
   }
@@ -96,11 +125,11 @@ public class DefaultIndex extends SonarIndex {
   }
 
   @Override
-  public Project getProject() {
+  public synchronized Project getProject() {
     return currentProject;
   }
 
-  public void setCurrentProject(Project project, ResourceFilters resourceFilters, ViolationFilters violationFilters, RulesProfile profile) {
+  public synchronized void setCurrentProject(Project project, ResourceFilters resourceFilters, ViolationFilters violationFilters, RulesProfile profile) {
     this.currentProject = project;
 
     // the following components depend on the current project, so they need to be reloaded.
@@ -109,10 +138,41 @@ public class DefaultIndex extends SonarIndex {
     this.profile = profile;
   }
 
+  /**
+   * Copies the results of a module analysed with its own index : the measures of the module and the dependencies
+   * between projects. They are already persisted.
+   *
+   * @since 3.2
+   */
+  public synchronized void importModule(Project module, DefaultIndex moduleIndex) {
+    Bucket bucket = buckets.get(module);
+    for (Measure measure : moduleIndex.getReloadedMeasures(module)) {
+      if (bucket.getMeasures(MeasuresFilters.measure(measure)) == null) {
+        bucket.addMeasure(measure);
+      }
+    }
+    for (Dependency dependency : moduleIndex.getDependenciesBetweenProjects()) {
+      if (getEdge(dependency.getFrom(), dependency.getTo()) == null) {
+        registerDependency(dependency);
+      }
+    }
+  }
+
+  private synchronized Collection<Measure> getReloadedMeasures(Resource resource) {
+    Collection<Measure> measures = getMeasures(resource, MeasuresFilters.all());
+    if (measures == null) {
+      return Collections.emptyList();
+    }
+    for (Measure measure : measures) {
+      persistence.reloadMeasure(measure);
+    }
+    return measures;
+  }
+
   /**
    * Keep only project stuff
    */
-  public void clear() {
+  public synchronized void clear() {
     Iterator<Map.Entry<Resource, Bucket>> it = buckets.entrySet().iterator();
     while (it.hasNext()) {
       Map.Entry<Resource, Bucket> entry = it.next();
@@ -132,11 +192,17 @@ public class DefaultIndex extends SonarIndex {
       registerDependency(projectDependency);
     }
 
+    bucketsWithLoadedViolations.clear();
+    pinnedBuckets.clear();
+    if (violationStore != null) {
+      violationStore.clear();
+    }
+
     lock.unlock();
   }
 
   @Override
-  public Measure getMeasure(Resource resource, Metric metric) {
+  public synchronized Measure getMeasure(Resource resource, Metric metric) {
     Bucket bucket = buckets.get(resource);
     if (bucket != null) {
       Measure measure = bucket.getMeasures(MeasuresFilters.metric(metric));
@@ -148,7 +214,7 @@ public class DefaultIndex extends SonarIndex {
   }
 
   @Override
-  public <M> M getMeasures(Resource resource, MeasuresFilter<M> filter) {
+  public synchronized <M> M getMeasures(Resource resource, MeasuresFilter<M> filter) {
     Bucket bucket = buckets.get(resource);
     if (bucket != null) {
       // TODO the data measures which are not kept in memory are not reloaded yet. Use getMeasure().
@@ -161,14 +227,10 @@ public class DefaultIndex extends SonarIndex {
    * the measure is updated if it's already registered.
    */
   @Override
-  public Measure addMeasure(Resource resource, Measure measure) {
+  public synchronized Measure addMeasure(Resource resource, Measure measure) {
     Bucket bucket = checkIndexed(resource);
     if (bucket != null && !bucket.isExcluded()) {
-      Metric metric = metricFinder.findByKey(measure.getMetricKey());
-      if (metric == null) {
-        throw new SonarException("Unknown metric: " + measure.getMetricKey());
-      }
-      measure.setMetric(metric);
+      measure.setMetric(resolveMetric(measure));
       bucket.addMeasure(measure);
 
       if (measure.getPersistenceMode().useDatabase()) {
@@ -178,6 +240,21 @@ public class DefaultIndex extends SonarIndex {
     return measure;
   }
 
+  private Metric resolveMetric(Measure measure) {
+    Metric source = measure.getMetric();
+    Metric metric = source != null ? resolvedMetrics.get(source) : null;
+    if (metric == null) {
+      metric = metricFinder.findByKey(measure.getMetricKey());
+      if (metric == null) {
+        throw new SonarException("Unknown metric: " + measure.getMetricKey());
+      }
+      if (source != null && resolvedMetrics.size() < MAX_RESOLVED_METRICS) {
+        resolvedMetrics.put(source, metric);
+      }
+    }
+    return metric;
+  }
+
   //
   //
   //
@@ -187,7 +264,7 @@ public class DefaultIndex extends SonarIndex {
   //
 
   @Override
-  public Dependency addDependency(Dependency dependency) {
+  public synchronized Dependency addDependency(Dependency dependency) {
     Dependency existingDep = getEdge(dependency.getFrom(), dependency.getTo());
     if (existingDep != null) {
       return existingDep;
@@ -236,11 +313,12 @@ public class DefaultIndex extends SonarIndex {
   }
 
   @Override
-  public Set<Dependency> getDependencies() {
-    return dependencies;
+  public synchronized Set<Dependency> getDependencies() {
+    // copy, as dependencies may be added concurrently while the result is iterated
+    return Sets.newHashSet(dependencies);
   }
 
-  public Dependency getEdge(Resource from, Resource to) {
+  public synchronized Dependency getEdge(Resource from, Resource to) {
     Map<Resource, Dependency> map = outgoingDependenciesByResource.get(from);
     if (map != null) {
       return map.get(to);
@@ -248,31 +326,31 @@ public class DefaultIndex extends SonarIndex {
     return null;
   }
 
-  public boolean hasEdge(Resource from, Resource to) {
+  public synchronized boolean hasEdge(Resource from, Resource to) {
     return getEdge(from, to) != null;
   }
 
-  public Set<Resource> getVertices() {
-    return buckets.keySet();
+  public synchronized Set<Resource> getVertices() {
+    return Sets.newHashSet(buckets.keySet());
   }
 
-  public Collection<Dependency> getOutgoingEdges(Resource from) {
+  public synchronized Collection<Dependency> getOutgoingEdges(Resource from) {
     Map<Resource, Dependency> deps = outgoingDependenciesByResource.get(from);
     if (deps != null) {
-      return deps.values();
+      return Lists.newArrayList(deps.values());
     }
     return Collections.emptyList();
   }
 
-  public Collection<Dependency> getIncomingEdges(Resource to) {
+  public synchronized Collection<Dependency> getIncomingEdges(Resource to) {
     Map<Resource, Dependency> deps = incomingDependenciesByResource.get(to);
     if (deps != null) {
-      return deps.values();
+      return Lists.newArrayList(deps.values());
     }
     return Collections.emptyList();
   }
 
-  Set<Dependency> getDependenciesBetweenProjects() {
+  synchronized Set<Dependency> getDependenciesBetweenProjects() {
     Set<Dependency> result = Sets.newLinkedHashSet();
     for (Dependency dependency : dependencies) {
       if (ResourceUtils.isSet(dependency.getFrom()) || ResourceUtils.isSet(dependency.getTo())) {
@@ -294,7 +372,7 @@ public class DefaultIndex extends SonarIndex {
    * {@inheritDoc}
    */
   @Override
-  public List<Violation> getViolations(ViolationQuery violationQuery) {
+  public synchronized List<Violation> getViolations(ViolationQuery violationQuery) {
     Resource resource = violationQuery.getResource();
     if (resource == null) {
       throw new IllegalArgumentException("A resource must be set on the ViolationQuery in order to search for violations.");
@@ -305,7 +383,7 @@ public class DefaultIndex extends SonarIndex {
     }
     List<Violation> filteredViolations = Lists.newArrayList();
     ViolationQuery.SwitchMode mode = violationQuery.getSwitchMode();
-    for (Violation violation : bucket.getViolations()) {
+    for (Violation violation : loadViolations(bucket)) {
       if (mode == ViolationQuery.SwitchMode.BOTH ||
           (mode == ViolationQuery.SwitchMode.OFF && violation.isSwitchedOff()) ||
           (mode == ViolationQuery.SwitchMode.ON && !violation.isSwitchedOff())) {
@@ -315,8 +393,46 @@ public class DefaultIndex extends SonarIndex {
     return filteredViolations;
   }
 
+  private List<Violation> loadViolations(Bucket bucket) {
+    if (bucket.isViolationStored()) {
+      bucketsWithLoadedViolations.put(bucket, Boolean.TRUE);
+      Iterator<Bucket> it = bucketsWithLoadedViolations.keySet().iterator();
+      while (bucketsWithLoadedViolations.size() > MAX_BUCKETS_WITH_LOADED_VIOLATIONS && it.hasNext()) {
+        Bucket eldest = it.next();
+        if (!pinnedBuckets.contains(eldest)) {
+          it.remove();
+          eldest.unloadViolations();
+        }
+      }
+    }
+    return bucket.getViolations();
+  }
+
+  /**
+   * Keeps the violations of the resource in memory until {@link #unpinViolations(Resource)} is called, so that
+   * the decorators of this resource always get the same instances of violations when they are stored on disk.
+   *
+   * @since 3.2
+   */
+  public synchronized void pinViolations(Resource resource) {
+    Bucket bucket = buckets.get(resource);
+    if (bucket != null && bucket.isViolationStored()) {
+      pinnedBuckets.add(bucket);
+    }
+  }
+
+  /**
+   * @since 3.2
+   */
+  public synchronized void unpinViolations(Resource resource) {
+    Bucket bucket = buckets.get(resource);
+    if (bucket != null) {
+      pinnedBuckets.remove(bucket);
+    }
+  }
+
   @Override
-  public void addViolation(Violation violation, boolean force) {
+  public synchronized void addViolation(Violation violation, boolean force) {
     Resource resource = violation.getResource();
     if (resource == null) {
       violation.setResource(currentProject);
@@ -371,12 +487,12 @@ public class DefaultIndex extends SonarIndex {
   //
 
   @Override
-  public void addLink(ProjectLink link) {
+  public synchronized void addLink(ProjectLink link) {
     persistence.saveLink(currentProject, link);
   }
 
   @Override
-  public void deleteLink(String key) {
+  public synchronized void deleteLink(String key) {
     persistence.deleteLink(currentProject, key);
   }
 
@@ -389,18 +505,18 @@ public class DefaultIndex extends SonarIndex {
   //
 
   @Override
-  public List<Event> getEvents(Resource resource) {
+  public synchronized List<Event> getEvents(Resource resource) {
     // currently events are not cached in memory
     return persistence.getEvents(resource);
   }
 
   @Override
-  public void deleteEvent(Event event) {
+  public synchronized void deleteEvent(Event event) {
     persistence.deleteEvent(event);
   }
 
   @Override
-  public Event addEvent(Resource resource, String name, String description, String category, Date date) {
+  public synchronized Event addEvent(Resource resource, String name, String description, String category, Date date) {
     Event event = new Event(name, description, category);
     event.setDate(date);
     event.setCreatedAt(new Date());
@@ -410,7 +526,7 @@ public class DefaultIndex extends SonarIndex {
   }
 
   @Override
-  public void setSource(Resource reference, String source) {
+  public synchronized void setSource(Resource reference, String source) {
     Bucket bucket = checkIndexed(reference);
     if (bucket != null && !bucket.isExcluded()) {
       persistence.setSource(reference, source);
@@ -418,7 +534,7 @@ public class DefaultIndex extends SonarIndex {
   }
 
   @Override
-  public String getSource(Resource resource) {
+  public synchronized String getSource(Resource resource) {
     return persistence.getSource(resource);
   }
 
@@ -426,13 +542,13 @@ public class DefaultIndex extends SonarIndex {
    * Does nothing if the resource is already registered.
    */
   @Override
-  public Resource addResource(Resource resource) {
+  public synchronized Resource addResource(Resource resource) {
     Bucket bucket = doIndex(resource);
     return bucket != null ? bucket.getResource() : null;
   }
 
   @Override
-  public <R extends Resource> R getResource(R reference) {
+  public synchronized <R extends Resource> R getResource(R reference) {
     Bucket bucket = buckets.get(reference);
     if (bucket != null) {
       return (R) bucket.getResource();
@@ -460,11 +576,11 @@ public class DefaultIndex extends SonarIndex {
   }
 
   @Override
-  public List<Resource> getChildren(Resource resource) {
+  public synchronized List<Resource> getChildren(Resource resource) {
     return getChildren(resource, false);
   }
 
-  public List<Resource> getChildren(Resource resource, boolean acceptExcluded) {
+  public synchronized List<Resource> getChildren(Resource resource, boolean acceptExcluded) {
     List<Resource> children = Lists.newLinkedList();
     Bucket bucket = getBucket(resource, acceptExcluded);
     if (bucket != null) {
@@ -478,7 +594,7 @@ public class DefaultIndex extends SonarIndex {
   }
 
   @Override
-  public Resource getParent(Resource resource) {
+  public synchronized Resource getParent(Resource resource) {
     Bucket bucket = getBucket(resource, false);
     if (bucket != null && bucket.getParent() != null) {
       return bucket.getParent().getResource();
@@ -487,7 +603,7 @@ public class DefaultIndex extends SonarIndex {
   }
 
   @Override
-  public boolean index(Resource resource) {
+  public synchronized boolean index(Resource resource) {
     Bucket bucket = doIndex(resource);
     return bucket != null && !bucket.isExcluded();
   }
@@ -500,7 +616,7 @@ public class DefaultIndex extends SonarIndex {
   }
 
   @Override
-  public boolean index(Resource resource, Resource parentReference) {
+  public synchronized boolean index(Resource resource, Resource parentReference) {
     Bucket bucket = doIndex(resource, parentReference);
     return bucket != null && !bucket.isExcluded();
   }
@@ -527,6 +643,9 @@ public class DefaultIndex extends SonarIndex {
 
     resource.setEffectiveKey(createUID(currentProject, resource));
     bucket = new Bucket(resource).setParent(parentBucket);
+    if (violationStore != null && !ResourceUtils.isSet(resource)) {
+      bucket.setViolationStore(violationStore);
+    }
     buckets.put(resource, bucket);
 
     boolean excluded = checkExclusion(resource, parentBucket);
@@ -563,13 +682,13 @@ public class DefaultIndex extends SonarIndex {
   }
 
   @Override
-  public boolean isExcluded(Resource reference) {
+  public synchronized boolean isExcluded(Resource reference) {
     Bucket bucket = getBucket(reference, true);
     return bucket != null && bucket.isExcluded();
   }
 
   @Override
-  public boolean isIndexed(Resource reference, boolean acceptExcluded) {
+  public synchronized boolean isIndexed(Resource reference, boolean acceptExcluded) {
     return getBucket(reference, acceptExcluded) != null;
   }
 
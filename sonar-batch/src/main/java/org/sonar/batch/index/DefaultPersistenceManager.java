@@ -60,6 +60,7 @@ public final class DefaultPersistenceManager implements PersistenceManager {
   }
 
   public void dump() {
+    sourcePersister.flush();
     measurePersister.dump();
   }
 
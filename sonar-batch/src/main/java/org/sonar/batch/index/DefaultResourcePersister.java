@@ -99,6 +99,20 @@ public final class DefaultResourcePersister implements ResourcePersister {
     return snapshot;
   }
 
+  /**
+   * Shares the snapshots of projects and libraries saved by another persister, for example the persister of the batch
+   * when a module is analysed with its own persister.
+   *
+   * @since 3.2
+   */
+  public void addProjectSnapshots(DefaultResourcePersister persister) {
+    for (Map.Entry<Resource, Snapshot> entry : persister.snapshotsByResource.entrySet()) {
+      if (ResourceUtils.isSet(entry.getKey()) && !snapshotsByResource.containsKey(entry.getKey())) {
+        addToCache(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
   /**
    * just for unit tests
    */
@@ -20,6 +20,7 @@
 package org.sonar.batch.index;
 
 import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.SetMultimap;
 import org.apache.commons.lang.math.NumberUtils;
 import org.slf4j.LoggerFactory;
@@ -34,8 +35,11 @@ import org.sonar.api.resources.ResourceUtils;
 import org.sonar.api.rules.Rule;
 import org.sonar.api.rules.RuleFinder;
 import org.sonar.api.utils.SonarException;
+import org.sonar.core.measure.MeasureDao;
+import org.sonar.core.measure.MeasureDto;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 public final class MeasurePersister {
@@ -46,13 +50,16 @@ public final class MeasurePersister {
   private ResourcePersister resourcePersister;
   private RuleFinder ruleFinder;
   private MemoryOptimizer memoryOptimizer;
+  private MeasureDao measureDao;
 
 
-  public MeasurePersister(DatabaseSession session, ResourcePersister resourcePersister, RuleFinder ruleFinder, MemoryOptimizer memoryOptimizer) {
+  public MeasurePersister(DatabaseSession session, ResourcePersister resourcePersister, RuleFinder ruleFinder, MemoryOptimizer memoryOptimizer,
+      MeasureDao measureDao) {
     this.session = session;
     this.resourcePersister = resourcePersister;
     this.ruleFinder = ruleFinder;
     this.memoryOptimizer = memoryOptimizer;
+    this.measureDao = measureDao;
   }
 
   public void setDelayedMode(boolean delayedMode) {
@@ -113,8 +120,13 @@ public final class MeasurePersister {
         (measure.getVariation5() == null || NumberUtils.compare(measure.getVariation5().doubleValue(), 0.0) == 0);
   }
 
+  /**
+   * Measures are inserted by JDBC batches, except those with large data which require the generated id
+   * to insert the row of MEASURE_DATA.
+   */
   public void dump() {
     LoggerFactory.getLogger(getClass()).debug("{} measures to dump", unsavedMeasuresByResource.size());
+    List<MeasureDto> dtos = Lists.newArrayList();
     Map<Resource, Collection<Measure>> map = unsavedMeasuresByResource.asMap();
     for (Map.Entry<Resource, Collection<Measure>> entry : map.entrySet()) {
       Resource resource = entry.getKey();
@@ -123,15 +135,42 @@ public final class MeasurePersister {
         if (shouldPersistMeasure(resource, measure)) {
           MeasureModel model = createModel(measure);
           model.setSnapshotId(snapshot.getId());
-          model.save(session);
+          if (model.getMeasureData() != null) {
+            model.save(session);
+          } else {
+            dtos.add(toDto(model));
+          }
         }
       }
     }
 
+    measureDao.insert(dtos);
     session.commit();
     unsavedMeasuresByResource.clear();
   }
 
+  static MeasureDto toDto(MeasureModel model) {
+    return new MeasureDto()
+        .setSnapshotId(model.getSnapshotId())
+        .setMetricId(model.getMetricId())
+        .setValue(model.getValue())
+        .setTextValue(model.getTextValue())
+        .setTendency(model.getTendency())
+        .setRuleId(model.getRuleId())
+        .setRulePriority(model.getRulePriority() != null ? model.getRulePriority().ordinal() : null)
+        .setAlertStatus(model.getAlertStatus() != null ? model.getAlertStatus().toString() : null)
+        .setAlertText(model.getAlertText())
+        .setUrl(model.getUrl())
+        .setDescription(model.getDescription())
+        .setCharacteristicId(model.getCharacteristic() != null ? model.getCharacteristic().getId() : null)
+        .setPersonId(model.getPersonId())
+        .setVariationValue1(model.getVariationValue1())
+        .setVariationValue2(model.getVariationValue2())
+        .setVariationValue3(model.getVariationValue3())
+        .setVariationValue4(model.getVariationValue4())
+        .setVariationValue5(model.getVariationValue5());
+  }
+
   MeasureModel createModel(Measure measure) {
     return mergeModel(measure, new MeasureModel());
   }
@@ -19,35 +19,69 @@
  */
 package org.sonar.batch.index;
 
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Maps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.events.DecoratorExecutionHandler;
 import org.sonar.api.batch.events.DecoratorsPhaseHandler;
 import org.sonar.api.batch.events.SensorExecutionHandler;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.DatabaseSession;
 import org.sonar.api.database.model.MeasureData;
 import org.sonar.api.database.model.MeasureModel;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.PersistenceMode;
 
+import javax.persistence.Query;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
+ * Evicted data are kept in a LRU cache bounded by {@link #CACHE_SIZE_PROPERTY}. When a data is not in cache, the data
+ * of the other evicted measures of the same metric are loaded by the same request, as decorators usually read
+ * a metric on all the files.
+ *
  * @since 2.7
  */
 public class MemoryOptimizer implements SensorExecutionHandler, DecoratorExecutionHandler, DecoratorsPhaseHandler {
 
   private static final Logger LOG = LoggerFactory.getLogger(MemoryOptimizer.class);
 
+  /**
+   * Maximum size in megabytes of the cache of evicted data
+   * @since 3.2
+   */
+  public static final String CACHE_SIZE_PROPERTY = "sonar.memoryOptimizer.cacheSizeInMb";
+  public static final int DEFAULT_CACHE_SIZE = 16;
+
+  /**
+   * Maximum number of data loaded by a single request. It must be lower than 1000 for Oracle.
+   */
+  static final int RELOAD_BATCH_SIZE = 500;
+
   private List<Measure> loadedMeasures = Lists.newArrayList();
   private Map<Long, Integer> dataIdByMeasureId = Maps.newHashMap();
+  private ListMultimap<String, Integer> dataIdsByMetric = ArrayListMultimap.create();
+  private Map<Integer, Integer> positionByDataId = Maps.newHashMap();
+  private DataCache cache;
   private DatabaseSession session;
+  private int runningSensors = 0;
+  private int runningDecorators = 0;
 
-  public MemoryOptimizer(DatabaseSession session) {
+  public MemoryOptimizer(DatabaseSession session, Settings settings) {
     this.session = session;
+    int cacheSize = settings.hasKey(CACHE_SIZE_PROPERTY) ? settings.getInt(CACHE_SIZE_PROPERTY) : DEFAULT_CACHE_SIZE;
+    this.cache = new DataCache(cacheSize * 1024L * 1024L);
+  }
+
+  public MemoryOptimizer(DatabaseSession session) {
+    this(session, new Settings());
   }
 
   /**
@@ -60,16 +94,40 @@ public class MemoryOptimizer implements SensorExecutionHandler, DecoratorExecuti
         if (LOG.isDebugEnabled()) {
           LOG.debug("Remove data measure from memory: " + measure.getMetricKey() + ", id=" + measure.getId());
         }
+        cache.put(data.getId(), measure.getData());
         measure.unsetData();
-        dataIdByMeasureId.put(measure.getId(), data.getId());
+        trackDataId(measure, data.getId());
       }
     }
   }
 
+  /**
+   * An updated measure gets a new data id, which replaces the previous one at the same position.
+   */
+  private void trackDataId(Measure measure, Integer dataId) {
+    Integer previousDataId = dataIdByMeasureId.put(measure.getId(), dataId);
+    if (dataId.equals(previousDataId)) {
+      return;
+    }
+    List<Integer> metricDataIds = dataIdsByMetric.get(measure.getMetricKey());
+    Integer position = previousDataId == null ? null : positionByDataId.remove(previousDataId);
+    if (position == null) {
+      positionByDataId.put(dataId, metricDataIds.size());
+      metricDataIds.add(dataId);
+    } else {
+      cache.remove(previousDataId);
+      positionByDataId.put(dataId, position);
+      metricDataIds.set(position, dataId);
+    }
+  }
+
   public Measure reloadMeasure(Measure measure) {
     if (measure.getId() != null && dataIdByMeasureId.containsKey(measure.getId()) && !measure.hasData()) {
       Integer dataId = dataIdByMeasureId.get(measure.getId());
-      MeasureData data = session.getSingleResult(MeasureData.class, "id", dataId);
+      String data = cache.get(dataId);
+      if (data == null) {
+        data = loadData(measure.getMetricKey(), dataId);
+      }
       if (data == null) {
         LoggerFactory.getLogger(getClass()).error("The MEASURE_DATA row with id " + dataId + " is lost");
 
@@ -77,13 +135,51 @@ public class MemoryOptimizer implements SensorExecutionHandler, DecoratorExecuti
         if (LOG.isDebugEnabled()) {
           LOG.debug("Reload the data measure: " + measure.getMetricKey() + ", id=" + measure.getId());
         }
-        measure.setData(data.getText());
+        measure.setData(data);
         loadedMeasures.add(measure);
       }
     }
     return measure;
   }
 
+  /**
+   * Loads the requested data and the data of the next evicted measures of the same metric, which are not in cache.
+   * At most {@link #RELOAD_BATCH_SIZE} cached data are skipped, so that the cost does not depend on the number of measures.
+   */
+  @SuppressWarnings("unchecked")
+  private String loadData(String metricKey, Integer dataId) {
+    List<Integer> ids = Lists.newArrayList(dataId);
+    List<Integer> metricDataIds = dataIdsByMetric.get(metricKey);
+    Integer position = positionByDataId.get(dataId);
+    // without position, only the requested data is loaded
+    int count = position == null ? 0 : metricDataIds.size();
+    int index = position == null ? 0 : position;
+    int skipped = 0;
+    for (int i = 1; i < count && ids.size() < RELOAD_BATCH_SIZE && skipped < RELOAD_BATCH_SIZE; i++) {
+      Integer id = metricDataIds.get((index + i) % metricDataIds.size());
+      if (cache.contains(id)) {
+        skipped++;
+      } else {
+        ids.add(id);
+      }
+    }
+
+    Query query = session.createQuery("FROM " + MeasureData.class.getSimpleName() + " d WHERE d.id IN (:ids)");
+    query.setParameter("ids", ids);
+    String result = null;
+    for (MeasureData data : (List<MeasureData>) query.getResultList()) {
+      String text = data.getText();
+      if (dataId.equals(data.getId())) {
+        result = text;
+      }
+      cache.put(data.getId(), text);
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Load " + ids.size() + " data measures of metric " + metricKey);
+    }
+    return result;
+  }
+
   public void flushMemory() {
     if (LOG.isDebugEnabled() && !loadedMeasures.isEmpty()) {
       LOG.debug("Flush " + loadedMeasures.size() + " data measures from memory: ");
@@ -98,16 +194,31 @@ public class MemoryOptimizer implements SensorExecutionHandler, DecoratorExecuti
     return dataIdByMeasureId.get(measureId) != null;
   }
 
+  /**
+   * When sensors or decorators are executed concurrently, the reloaded data must be kept until all of them are done.
+   */
   public void onSensorExecution(SensorExecutionEvent event) {
-    if (event.isEnd()) {
-      flushMemory();
-      session.commit();
+    if (event.isStart()) {
+      runningSensors++;
+    } else {
+      runningSensors--;
+      if (runningSensors <= 0) {
+        runningSensors = 0;
+        flushMemory();
+        session.commit();
+      }
     }
   }
 
   public void onDecoratorExecution(DecoratorExecutionEvent event) {
-    if (event.isEnd()) {
-      flushMemory();
+    if (event.isStart()) {
+      runningDecorators++;
+    } else {
+      runningDecorators--;
+      if (runningDecorators <= 0) {
+        runningDecorators = 0;
+        flushMemory();
+      }
     }
   }
 
@@ -117,4 +228,47 @@ public class MemoryOptimizer implements SensorExecutionHandler, DecoratorExecuti
     }
   }
 
+  /**
+   * Data by id, the least recently used being removed when the total size exceeds the limit.
+   */
+  private static final class DataCache {
+    private final long maxSize;
+    private long size = 0L;
+    private final LinkedHashMap<Integer, String> dataById = new LinkedHashMap<Integer, String>(16, 0.75f, true);
+
+    DataCache(long maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    String get(Integer id) {
+      return dataById.get(id);
+    }
+
+    boolean contains(Integer id) {
+      return dataById.containsKey(id);
+    }
+
+    void remove(Integer id) {
+      size -= sizeOf(dataById.remove(id));
+    }
+
+    void put(Integer id, String data) {
+      long dataSize = sizeOf(data);
+      if (dataSize == 0L || dataSize > maxSize) {
+        return;
+      }
+      String previous = dataById.put(id, data);
+      size += dataSize - sizeOf(previous);
+      Iterator<String> it = dataById.values().iterator();
+      while (size > maxSize && it.hasNext()) {
+        size -= sizeOf(it.next());
+        it.remove();
+      }
+    }
+
+    private static long sizeOf(String data) {
+      // two bytes per char
+      return data == null ? 0L : data.length() * 2L;
+    }
+  }
 }
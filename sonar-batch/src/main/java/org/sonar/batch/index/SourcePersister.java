@@ -19,24 +19,59 @@
  */
 package org.sonar.batch.index;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.DatabaseSession;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.api.database.model.SnapshotSource;
 import org.sonar.api.resources.DuplicatedSourceException;
 import org.sonar.api.resources.Resource;
+import org.sonar.api.utils.SonarException;
+import org.sonar.core.source.SnapshotSourceDao;
+import org.sonar.core.source.SnapshotSourceDto;
+import org.sonar.core.source.SourceCompression;
 
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Set;
 
+/**
+ * Sources are not inserted one by one but by batches of {@link #BATCH_SIZE_PROPERTY} files, optionally compressed
+ * (see {@link #COMPRESSION_PROPERTY}).
+ */
 public final class SourcePersister {
 
+  public static final String BATCH_SIZE_PROPERTY = "sonar.sources.batchSize";
+  public static final int DEFAULT_BATCH_SIZE = 100;
+
+  /**
+   * Values are "none" (default), "gzip" or "deflate". See {@link SourceCompression}.
+   */
+  public static final String COMPRESSION_PROPERTY = "sonar.sources.compression";
+  private static final Set<String> SUPPORTED_COMPRESSIONS = Sets.newLinkedHashSet(Arrays.asList(
+      SourceCompression.NONE, SourceCompression.GZIP, SourceCompression.DEFLATE));
+
   private DatabaseSession session;
   private Set<Integer> savedSnapshotIds = Sets.newHashSet();
   private ResourcePersister resourcePersister;
+  private SnapshotSourceDao sourceDao;
+  private int batchSize;
+  private String compression;
+  private Map<Integer, SnapshotSourceDto> unsavedSourcesBySnapshotId = Maps.newLinkedHashMap();
 
-  public SourcePersister(DatabaseSession session, ResourcePersister resourcePersister) {
+  public SourcePersister(DatabaseSession session, ResourcePersister resourcePersister, SnapshotSourceDao sourceDao, Settings settings) {
     this.session = session;
     this.resourcePersister = resourcePersister;
+    this.sourceDao = sourceDao;
+    int size = settings.getInt(BATCH_SIZE_PROPERTY);
+    this.batchSize = size > 0 ? size : DEFAULT_BATCH_SIZE;
+    this.compression = settings.hasKey(COMPRESSION_PROPERTY) ? settings.getString(COMPRESSION_PROPERTY) : SourceCompression.NONE;
+    if (!SUPPORTED_COMPRESSIONS.contains(compression)) {
+      throw new SonarException("Unknown value of the property " + COMPRESSION_PROPERTY + ": '" + compression
+          + "'. Supported values are " + SUPPORTED_COMPRESSIONS + ".");
+    }
   }
 
   public void saveSource(Resource resource, String source) {
@@ -44,18 +79,38 @@ public final class SourcePersister {
     if (isCached(snapshot)) {
       throw new DuplicatedSourceException(resource);
     }
-    session.save(new SnapshotSource(snapshot.getId(), source));
-    session.commit();
+    unsavedSourcesBySnapshotId.put(snapshot.getId(), new SnapshotSourceDto()
+        .setSnapshotId(snapshot.getId())
+        .setData(SourceCompression.compress(source, compression)));
     addToCache(snapshot);
+    if (unsavedSourcesBySnapshotId.size() >= batchSize) {
+      flush();
+    }
   }
 
   public String getSource(Resource resource) {
-    SnapshotSource source = null;
+    String data = null;
     Snapshot snapshot = resourcePersister.getSnapshot(resource);
     if (snapshot!=null && snapshot.getId()!=null) {
-      source = session.getSingleResult(SnapshotSource.class, "snapshotId", snapshot.getId());
+      SnapshotSourceDto unsavedSource = unsavedSourcesBySnapshotId.get(snapshot.getId());
+      if (unsavedSource != null) {
+        data = unsavedSource.getData();
+      } else {
+        SnapshotSource source = session.getSingleResult(SnapshotSource.class, "snapshotId", snapshot.getId());
+        data = source!=null ? source.getData() : null;
+      }
+    }
+    return SourceCompression.decompress(data);
+  }
+
+  /**
+   * Insert the pending sources
+   */
+  public void flush() {
+    if (!unsavedSourcesBySnapshotId.isEmpty()) {
+      sourceDao.insert(Lists.newArrayList(unsavedSourcesBySnapshotId.values()));
+      unsavedSourcesBySnapshotId.clear();
     }
-    return source!=null ? source.getData() : null;
   }
 
   private boolean isCached(Snapshot snapshot) {
@@ -67,6 +122,7 @@ public final class SourcePersister {
   }
 
   public void clear() {
+    flush();
     savedSnapshotIds.clear();
   }
 }
@@ -0,0 +1,245 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.batch.index;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.io.IOUtils;
+import org.sonar.api.BatchComponent;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.rules.Rule;
+import org.sonar.api.rules.RulePriority;
+import org.sonar.api.rules.Violation;
+import org.sonar.api.utils.SonarException;
+import org.sonar.batch.bootstrap.TempDirectories;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only temporary file of violations, used to not keep all the violations of a module in memory.
+ * Records are read back by their position in the file. Rules are not serialized but referenced by index,
+ * so that the same instances are returned.
+ *
+ * @since 3.2
+ */
+public class ViolationStore implements BatchComponent {
+
+  public static final String ENABLED_PROPERTY = "sonar.violations.storeOnDisk";
+
+  private static final int SWITCHED_OFF = 1;
+  private static final int NEW = 2;
+  private static final int MANUAL = 4;
+  private static final int HAS_LINE = 8;
+  private static final int HAS_COST = 16;
+  private static final int HAS_CREATED_AT = 32;
+  private static final int HAS_PERMANENT_ID = 64;
+  private static final int HAS_PERSON_ID = 128;
+
+  private final boolean enabled;
+  private final TempDirectories tempDirectories;
+  private RandomAccessFile file;
+  private final List<Rule> rules = Lists.newArrayList();
+  private final Map<Rule, Integer> ruleIndexes = new IdentityHashMap<Rule, Integer>();
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+  public ViolationStore(TempDirectories tempDirectories, Settings settings) {
+    this.tempDirectories = tempDirectories;
+    this.enabled = settings.getBoolean(ENABLED_PROPERTY);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return the position of the record
+   */
+  public long write(Violation violation) {
+    try {
+      buffer.reset();
+      DataOutputStream output = new DataOutputStream(buffer);
+      output.writeInt(0);
+      output.writeInt(ruleIndex(violation.getRule()));
+      output.writeByte(flags(violation));
+      output.writeByte(violation.getSeverity() != null ? violation.getSeverity().ordinal() : -1);
+      writeString(output, violation.getMessage());
+      writeString(output, violation.getChecksum());
+      if (violation.getLineId() != null) {
+        output.writeInt(violation.getLineId());
+      }
+      if (violation.getCost() != null) {
+        output.writeDouble(violation.getCost());
+      }
+      if (violation.getCreatedAt() != null) {
+        output.writeLong(violation.getCreatedAt().getTime());
+      }
+      if (violation.getPermanentId() != null) {
+        output.writeInt(violation.getPermanentId());
+      }
+      if (violation.getPersonId() != null) {
+        output.writeInt(violation.getPersonId());
+      }
+      output.flush();
+
+      byte[] record = buffer.toByteArray();
+      int length = record.length - 4;
+      record[0] = (byte) (length >>> 24);
+      record[1] = (byte) (length >>> 16);
+      record[2] = (byte) (length >>> 8);
+      record[3] = (byte) length;
+
+      RandomAccessFile raf = getFile();
+      long position = raf.length();
+      raf.seek(position);
+      raf.write(record);
+      return position;
+
+    } catch (IOException e) {
+      throw new SonarException("Fail to store violation: " + violation, e);
+    }
+  }
+
+  public Violation read(long position, Resource resource) {
+    try {
+      RandomAccessFile raf = getFile();
+      raf.seek(position);
+      byte[] record = new byte[raf.readInt()];
+      raf.readFully(record);
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+
+      Violation violation = Violation.create(rules.get(input.readInt()), resource);
+      int flags = input.readUnsignedByte();
+      byte severity = input.readByte();
+      if (severity >= 0) {
+        violation.setSeverity(RulePriority.values()[severity]);
+      }
+      violation.setMessage(readString(input));
+      violation.setChecksum(readString(input));
+      if ((flags & HAS_LINE) != 0) {
+        violation.setLineId(input.readInt());
+      }
+      if ((flags & HAS_COST) != 0) {
+        violation.setCost(input.readDouble());
+      }
+      if ((flags & HAS_CREATED_AT) != 0) {
+        violation.setCreatedAt(new Date(input.readLong()));
+      }
+      if ((flags & HAS_PERMANENT_ID) != 0) {
+        violation.setPermanentId(input.readInt());
+      }
+      if ((flags & HAS_PERSON_ID) != 0) {
+        violation.setPersonId(input.readInt());
+      }
+      violation.setSwitchedOff((flags & SWITCHED_OFF) != 0);
+      violation.setNew((flags & NEW) != 0);
+      violation.setManual((flags & MANUAL) != 0);
+      return violation;
+
+    } catch (IOException e) {
+      throw new SonarException("Fail to read violation at position " + position, e);
+    }
+  }
+
+  /**
+   * Removes all the records. Executed at the end of each module.
+   */
+  public void clear() {
+    if (file != null) {
+      try {
+        file.setLength(0L);
+      } catch (IOException e) {
+        throw new SonarException("Fail to clear the violations file", e);
+      }
+    }
+    rules.clear();
+    ruleIndexes.clear();
+  }
+
+  /**
+   * This method is executed by picocontainer during shutdown.
+   */
+  public void stop() {
+    IOUtils.closeQuietly(file);
+    file = null;
+  }
+
+  private RandomAccessFile getFile() throws IOException {
+    if (file == null) {
+      // one file per store, as modules analysed concurrently have their own store
+      File target = File.createTempFile("violations", ".dat", tempDirectories.getDir("violations"));
+      file = new RandomAccessFile(target, "rw");
+      file.setLength(0L);
+    }
+    return file;
+  }
+
+  private int ruleIndex(Rule rule) {
+    Integer index = ruleIndexes.get(rule);
+    if (index == null) {
+      index = rules.size();
+      rules.add(rule);
+      ruleIndexes.put(rule, index);
+    }
+    return index;
+  }
+
+  private static int flags(Violation violation) {
+    int flags = 0;
+    flags |= violation.isSwitchedOff() ? SWITCHED_OFF : 0;
+    flags |= violation.isNew() ? NEW : 0;
+    flags |= violation.isManual() ? MANUAL : 0;
+    flags |= violation.getLineId() != null ? HAS_LINE : 0;
+    flags |= violation.getCost() != null ? HAS_COST : 0;
+    flags |= violation.getCreatedAt() != null ? HAS_CREATED_AT : 0;
+    flags |= violation.getPermanentId() != null ? HAS_PERMANENT_ID : 0;
+    flags |= violation.getPersonId() != null ? HAS_PERSON_ID : 0;
+    return flags;
+  }
+
+  private static void writeString(DataOutputStream output, String s) throws IOException {
+    if (s == null) {
+      output.writeInt(-1);
+    } else {
+      byte[] bytes = s.getBytes("UTF-8");
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+  }
+
+  private static String readString(DataInputStream input) throws IOException {
+    int length = input.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return new String(bytes, "UTF-8");
+  }
+}
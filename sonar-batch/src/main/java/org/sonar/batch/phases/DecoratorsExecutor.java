@@ -20,39 +20,77 @@
 package org.sonar.batch.phases;
 
 import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchComponent;
 import org.sonar.api.batch.BatchExtensionDictionnary;
 import org.sonar.api.batch.Decorator;
 import org.sonar.api.batch.DecoratorContext;
 import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.batch.ThreadSafe;
+import org.sonar.api.batch.events.DecoratorExecutionHandler;
+import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
+import org.sonar.api.utils.AnnotationUtils;
 import org.sonar.api.utils.SonarException;
 import org.sonar.batch.DecoratorsSelector;
 import org.sonar.batch.DefaultDecoratorContext;
+import org.sonar.batch.events.BatchEvent;
 import org.sonar.batch.events.EventBus;
+import org.sonar.batch.index.DefaultIndex;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class DecoratorsExecutor implements BatchComponent {
 
+  private static final Logger LOG = LoggerFactory.getLogger(DecoratorsExecutor.class);
+
+  /**
+   * Maximum number of resources decorated concurrently. Resources are decorated one after another when this value is
+   * lower than 2. Otherwise sibling subtrees are decorated in parallel and a resource is decorated as soon as all its
+   * children are done. Only decorators annotated with {@link ThreadSafe} are executed concurrently on several
+   * resources, the other ones are executed on one resource at a time, while holding the lock of the index.
+   *
+   * @since 3.2
+   */
+  public static final String THREADS_PROPERTY = "sonar.decorators.threads";
+
   private DecoratorsSelector decoratorsSelector;
   private SonarIndex index;
   private EventBus eventBus;
   private Project project;
+  private Settings settings;
 
-  public DecoratorsExecutor(BatchExtensionDictionnary extensionDictionnary, Project project, SonarIndex index, EventBus eventBus) {
+  public DecoratorsExecutor(BatchExtensionDictionnary extensionDictionnary, Project project, SonarIndex index, EventBus eventBus, Settings settings) {
     this.decoratorsSelector = new DecoratorsSelector(extensionDictionnary);
     this.index = index;
     this.eventBus = eventBus;
     this.project = project;
+    this.settings = settings;
+  }
+
+  public DecoratorsExecutor(BatchExtensionDictionnary extensionDictionnary, Project project, SonarIndex index, EventBus eventBus) {
+    this(extensionDictionnary, project, index, eventBus, new Settings());
   }
 
   public void execute() {
     Collection<Decorator> decorators = decoratorsSelector.select(project);
     eventBus.fireEvent(new DecoratorsPhaseEvent(Lists.newArrayList(decorators), true));
-    decorateResource(project, decorators, true);
+    int threads = settings.getInt(THREADS_PROPERTY);
+    if (threads > 1) {
+      decorateResourceConcurrently(project, decorators, threads);
+    } else {
+      decorateResource(project, decorators, true);
+    }
     eventBus.fireEvent(new DecoratorsPhaseEvent(Lists.newArrayList(decorators), false));
   }
 
@@ -66,23 +104,252 @@ public class DecoratorsExecutor implements BatchComponent {
 
     DefaultDecoratorContext context = new DefaultDecoratorContext(resource, index, childrenContexts);
     if (executeDecorators) {
-      for (Decorator decorator : decorators) {
-        executeDecorator(decorator, context, resource);
+      pinViolations(resource);
+      try {
+        for (Decorator decorator : decorators) {
+          executeDecorator(decorator, context, resource);
+        }
+      } finally {
+        unpinViolations(resource);
       }
     }
     return context;
   }
 
+  /**
+   * Leaves are decorated first. The last child to be done schedules the decoration of its parent, so that no task
+   * ever waits for another one.
+   */
+  DecoratorContext decorateResourceConcurrently(Resource resource, Collection<Decorator> decorators, int threads) {
+    List<ResourceNode> leaves = Lists.newArrayList();
+    ResourceNode root = createTree(resource, leaves);
+    DecoratorsPlan plan = new DecoratorsPlan(decorators);
+
+    LOG.info("Decorate resources on {} threads", threads);
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    DecorationTracker tracker = new DecorationTracker();
+    try {
+      for (ResourceNode leaf : leaves) {
+        executorService.execute(new DecorationTask(leaf, plan, executorService, tracker));
+      }
+      tracker.await();
+    } finally {
+      executorService.shutdownNow();
+    }
+    return root.context;
+  }
+
+  private ResourceNode createTree(Resource resource, List<ResourceNode> leaves) {
+    ResourceNode root = new ResourceNode(null, 0, resource, true);
+    LinkedList<ResourceNode> stack = Lists.newLinkedList(Arrays.asList(root));
+    while (!stack.isEmpty()) {
+      ResourceNode node = stack.removeFirst();
+      Collection<Resource> children = index.getChildren(node.resource);
+      node.setChildrenCount(children.size());
+      if (children.isEmpty()) {
+        leaves.add(node);
+      }
+      int position = 0;
+      for (Resource child : children) {
+        stack.addFirst(new ResourceNode(node, position, child, !(child instanceof Project)));
+        position++;
+      }
+    }
+    return root;
+  }
+
   void executeDecorator(Decorator decorator, DefaultDecoratorContext context, Resource resource) {
+    // this method is executed for each resource, so events are not created when nobody listens to them
+    boolean fireEvents = eventBus.hasHandlers(DecoratorExecutionHandler.class);
     try {
-      eventBus.fireEvent(new DecoratorExecutionEvent(decorator, true));
+      if (fireEvents) {
+        fireEvent(new DecoratorExecutionEvent(decorator, true));
+      }
       decorator.decorate(resource, context);
-      eventBus.fireEvent(new DecoratorExecutionEvent(decorator, false));
-      
+      if (fireEvents) {
+        fireEvent(new DecoratorExecutionEvent(decorator, false));
+      }
+
     } catch (Exception e) {
       // SONAR-2278 the resource should not be lost in exception stacktrace.
       throw new SonarException("Fail to decorate '" + resource + "'", e);
     }
   }
 
+  /**
+   * Decorators can keep violations of the resource between their executions, for example to map them by identity,
+   * so they must not be written back to disk by the index while the resource is decorated.
+   */
+  private void pinViolations(Resource resource) {
+    if (index instanceof DefaultIndex) {
+      ((DefaultIndex) index).pinViolations(resource);
+    }
+  }
+
+  private void unpinViolations(Resource resource) {
+    if (index instanceof DefaultIndex) {
+      ((DefaultIndex) index).unpinViolations(resource);
+    }
+  }
+
+  /**
+   * Handlers can use the database session, which is shared with the index.
+   */
+  private void fireEvent(BatchEvent event) {
+    synchronized (index) {
+      eventBus.fireEvent(event);
+    }
+  }
+
+  /**
+   * Decorators which are not thread-safe can share state between resources (for example the violations tracked by a
+   * decorator and persisted by another one), so all the decorators from the first to the last one which is not
+   * thread-safe are executed while holding the lock of the index.
+   */
+  private static final class DecoratorsPlan {
+    private final List<Decorator> before = Lists.newArrayList();
+    private final List<Decorator> locked = Lists.newArrayList();
+    private final List<Decorator> after = Lists.newArrayList();
+
+    private DecoratorsPlan(Collection<Decorator> decorators) {
+      List<Decorator> list = Lists.newArrayList(decorators);
+      int first = list.size();
+      int last = -1;
+      for (int i = 0; i < list.size(); i++) {
+        if (AnnotationUtils.getAnnotation(list.get(i), ThreadSafe.class) == null) {
+          first = Math.min(first, i);
+          last = i;
+        }
+      }
+      for (int i = 0; i < list.size(); i++) {
+        if (i < first) {
+          before.add(list.get(i));
+        } else if (i <= last) {
+          locked.add(list.get(i));
+        } else {
+          after.add(list.get(i));
+        }
+      }
+    }
+  }
+
+  private static final class ResourceNode {
+    private final ResourceNode parent;
+    private final int position;
+    private final Resource resource;
+    private final boolean executeDecorators;
+    private DecoratorContext[] childrenContexts;
+    private AtomicInteger pendingChildren;
+    private DefaultDecoratorContext context;
+
+    private ResourceNode(ResourceNode parent, int position, Resource resource, boolean executeDecorators) {
+      this.parent = parent;
+      this.position = position;
+      this.resource = resource;
+      this.executeDecorators = executeDecorators;
+    }
+
+    private void setChildrenCount(int count) {
+      childrenContexts = new DecoratorContext[count];
+      pendingChildren = new AtomicInteger(count);
+    }
+
+    /**
+     * @return true if this child was the last one to be done
+     */
+    private boolean childDone(ResourceNode child) {
+      childrenContexts[child.position] = child.context;
+      return pendingChildren.decrementAndGet() == 0;
+    }
+  }
+
+  private static final class DecorationTracker {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+    private void success() {
+      done.countDown();
+    }
+
+    private void fail(Throwable e) {
+      failure.compareAndSet(null, e);
+      done.countDown();
+    }
+
+    private boolean hasFailed() {
+      return failure.get() != null;
+    }
+
+    private void await() {
+      try {
+        done.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SonarException("Interrupted while decorating resources", e);
+      }
+      Throwable e = failure.get();
+      if (e instanceof Error) {
+        throw (Error) e;
+      }
+      if (e != null) {
+        throw (RuntimeException) e;
+      }
+    }
+  }
+
+  private final class DecorationTask implements Runnable {
+    private final ResourceNode node;
+    private final DecoratorsPlan plan;
+    private final ExecutorService executorService;
+    private final DecorationTracker tracker;
+
+    private DecorationTask(ResourceNode node, DecoratorsPlan plan, ExecutorService executorService, DecorationTracker tracker) {
+      this.node = node;
+      this.plan = plan;
+      this.executorService = executorService;
+      this.tracker = tracker;
+    }
+
+    public void run() {
+      if (tracker.hasFailed()) {
+        return;
+      }
+      try {
+        DefaultDecoratorContext context = new DefaultDecoratorContext(node.resource, index, Arrays.asList(node.childrenContexts));
+        if (node.executeDecorators) {
+          pinViolations(node.resource);
+          try {
+            executeDecorators(plan.before, context);
+            if (!plan.locked.isEmpty()) {
+              synchronized (index) {
+                executeDecorators(plan.locked, context);
+              }
+            }
+            executeDecorators(plan.after, context);
+          } finally {
+            unpinViolations(node.resource);
+          }
+        }
+        if (node.parent == null) {
+          node.context = context;
+          tracker.success();
+        } else {
+          node.context = context.setReadOnly(true);
+          if (node.parent.childDone(node)) {
+            executorService.execute(new DecorationTask(node.parent, plan, executorService, tracker));
+          }
+        }
+      } catch (RuntimeException e) {
+        tracker.fail(e);
+      } catch (Error e) {
+        tracker.fail(e);
+      }
+    }
+
+    private void executeDecorators(List<Decorator> decorators, DefaultDecoratorContext context) {
+      for (Decorator decorator : decorators) {
+        executeDecorator(decorator, context, node.resource);
+      }
+    }
+  }
 }
@@ -20,52 +20,169 @@
 package org.sonar.batch.phases;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchComponent;
 import org.sonar.api.batch.BatchExtensionDictionnary;
 import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.ThreadSafe;
 import org.sonar.api.batch.bootstrap.ProjectDefinition;
 import org.sonar.api.batch.maven.DependsUponMavenPlugin;
 import org.sonar.api.batch.maven.MavenPluginHandler;
+import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
+import org.sonar.api.utils.AnnotationUtils;
+import org.sonar.api.utils.SonarException;
 import org.sonar.api.utils.TimeProfiler;
 import org.sonar.batch.MavenPluginExecutor;
 import org.sonar.batch.events.EventBus;
+import org.sonar.batch.index.DefaultIndex;
 
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class SensorsExecutor implements BatchComponent {
   private static final Logger LOG = LoggerFactory.getLogger(SensorsExecutor.class);
 
+  /**
+   * Maximum number of sensors executed concurrently. Sensors are executed one after another when this
+   * value is lower than 2. Sensors that have no dependency relation ({@link org.sonar.api.batch.DependsUpon},
+   * {@link org.sonar.api.batch.DependedUpon}, {@link org.sonar.api.batch.Phase}) are then executed in parallel
+   * when they are annotated with {@link ThreadSafe}. Other sensors are executed in the current thread, while holding
+   * the lock of the index, as they may use the database session directly.
+   *
+   * @since 3.2
+   */
+  public static final String THREADS_PROPERTY = "sonar.sensors.threads";
+
   private MavenPluginExecutor mavenExecutor;
   private EventBus eventBus;
   private Project project;
   private ProjectDefinition projectDefinition;
   private BatchExtensionDictionnary selector;
+  private DefaultIndex index;
+  private Settings settings;
 
-  public SensorsExecutor(BatchExtensionDictionnary selector, Project project, ProjectDefinition projectDefinition, MavenPluginExecutor mavenExecutor, EventBus eventBus) {
+  public SensorsExecutor(BatchExtensionDictionnary selector, Project project, ProjectDefinition projectDefinition, MavenPluginExecutor mavenExecutor,
+      EventBus eventBus, DefaultIndex index, Settings settings) {
     this.selector = selector;
     this.mavenExecutor = mavenExecutor;
     this.eventBus = eventBus;
     this.project = project;
     this.projectDefinition = projectDefinition;
+    this.index = index;
+    this.settings = settings;
   }
 
   public void execute(SensorContext context) {
     Collection<Sensor> sensors = selector.select(Sensor.class, project, true);
     eventBus.fireEvent(new SensorsPhaseEvent(Lists.newArrayList(sensors), true));
 
-    for (Sensor sensor : sensors) {
-      executeMavenPlugin(sensor);
+    int threads = settings.getInt(THREADS_PROPERTY);
+    if (threads > 1 && sensors.size() > 1) {
+      executeConcurrently(sensors, context, threads);
+    } else {
+      for (Sensor sensor : sensors) {
+        executeMavenPlugin(sensor);
+
+        eventBus.fireEvent(new SensorExecutionEvent(sensor, true));
+        sensor.analyse(project, context);
+        eventBus.fireEvent(new SensorExecutionEvent(sensor, false));
+      }
+    }
+
+    eventBus.fireEvent(new SensorsPhaseEvent(Lists.newArrayList(sensors), false));
+  }
+
+  /**
+   * Sensors are started as soon as all their predecessors are done. Maven plugins and events are executed in the
+   * current thread, events while holding the lock of the index so that handlers can safely use the database session.
+   * Only sensors annotated with {@link ThreadSafe} are submitted to the pool.
+   */
+  private void executeConcurrently(Collection<Sensor> sensors, SensorContext context, int threads) {
+    Map<Sensor, Set<Sensor>> predecessors = selector.getPredecessors(sensors);
+    List<Sensor> pendingSensors = Lists.newLinkedList(sensors);
+    Set<Sensor> doneSensors = Sets.newHashSet();
+    int runningSensors = 0;
+
+    int poolSize = Math.min(threads, sensors.size());
+    LOG.info("Execute sensors on {} threads", poolSize);
+    ExecutorService executorService = Executors.newFixedThreadPool(poolSize);
+    CompletionService<Sensor> completionService = new ExecutorCompletionService<Sensor>(executorService);
+    try {
+      while (!pendingSensors.isEmpty() || runningSensors > 0) {
+        Iterator<Sensor> it = pendingSensors.iterator();
+        while (runningSensors < poolSize && it.hasNext()) {
+          Sensor sensor = it.next();
+          if (doneSensors.containsAll(predecessors.get(sensor))) {
+            it.remove();
+            executeMavenPlugin(sensor);
+            if (isThreadSafe(sensor)) {
+              fireSensorExecutionEvent(sensor, true);
+              completionService.submit(new SensorTask(sensor, context));
+              runningSensors++;
+            } else {
+              executeInCurrentThread(sensor, context);
+              doneSensors.add(sensor);
+              // successors of this sensor may now be ready
+              it = pendingSensors.iterator();
+            }
+          }
+        }
+
+        if (runningSensors > 0) {
+          Sensor doneSensor = waitForSensor(completionService);
+          runningSensors--;
+          fireSensorExecutionEvent(doneSensor, false);
+          doneSensors.add(doneSensor);
+        }
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  private static boolean isThreadSafe(Sensor sensor) {
+    return AnnotationUtils.getAnnotation(sensor, ThreadSafe.class) != null;
+  }
 
+  private void executeInCurrentThread(Sensor sensor, SensorContext context) {
+    synchronized (index) {
       eventBus.fireEvent(new SensorExecutionEvent(sensor, true));
       sensor.analyse(project, context);
       eventBus.fireEvent(new SensorExecutionEvent(sensor, false));
     }
+  }
 
-    eventBus.fireEvent(new SensorsPhaseEvent(Lists.newArrayList(sensors), false));
+  private void fireSensorExecutionEvent(Sensor sensor, boolean start) {
+    synchronized (index) {
+      eventBus.fireEvent(new SensorExecutionEvent(sensor, start));
+    }
+  }
+
+  private static Sensor waitForSensor(CompletionService<Sensor> completionService) {
+    try {
+      return completionService.take().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SonarException("Interrupted while executing sensors", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new SonarException("Fail to execute sensor", e.getCause());
+    }
   }
 
   private void executeMavenPlugin(Sensor sensor) {
@@ -78,4 +195,19 @@ public class SensorsExecutor implements BatchComponent {
       }
     }
   }
+
+  private class SensorTask implements Callable<Sensor> {
+    private final Sensor sensor;
+    private final SensorContext context;
+
+    SensorTask(Sensor sensor, SensorContext context) {
+      this.sensor = sensor;
+      this.context = context;
+    }
+
+    public Sensor call() {
+      sensor.analyse(project, context);
+      return sensor;
+    }
+  }
 }
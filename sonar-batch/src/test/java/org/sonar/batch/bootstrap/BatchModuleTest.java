@@ -0,0 +1,179 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.batch.bootstrap;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.batch.ResourceFilter;
+import org.sonar.api.config.Settings;
+import org.sonar.api.database.DatabaseSession;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.MeasuresFilters;
+import org.sonar.api.measures.MetricFinder;
+import org.sonar.api.profiles.RulesProfile;
+import org.sonar.api.resources.Project;
+import org.sonar.batch.DefaultResourceCreationLock;
+import org.sonar.batch.ProjectTree;
+import org.sonar.batch.ResourceFilters;
+import org.sonar.batch.ViolationFilters;
+import org.sonar.batch.index.DefaultIndex;
+import org.sonar.batch.index.DefaultResourcePersister;
+import org.sonar.batch.index.PersistenceManager;
+import org.sonar.jpa.session.DatabaseSessionFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BatchModuleTest {
+
+  private Project root = new Project("root");
+  private Project first = new Project("first").setParent(root);
+  private Project second = new Project("second").setParent(root);
+  private List<Project> analyzedProjects = Collections.synchronizedList(Lists.<Project>newArrayList());
+  private CountDownLatch latch = new CountDownLatch(2);
+  private boolean concurrent = true;
+  private DatabaseSessionFactory sessionFactory = mock(DatabaseSessionFactory.class);
+
+  @Test
+  public void shouldAnalyzeLeafModulesConcurrently() {
+    Module batch = new FakeBatchModule(new Settings().setProperty(BatchModule.THREADS_PROPERTY, 4)).init();
+    batch.start();
+
+    assertThat(concurrent, is(true));
+    assertThat(analyzedProjects.size(), is(3));
+    assertThat(analyzedProjects.get(2), is(root));
+
+    // results of the modules are imported into the index of the batch
+    DefaultIndex index = batch.getComponentByType(DefaultIndex.class);
+    assertThat(index.getMeasures(first, MeasuresFilters.metric(CoreMetrics.NCLOC)).getIntValue(), is(5));
+    assertThat(index.getMeasures(second, MeasuresFilters.metric(CoreMetrics.NCLOC)).getIntValue(), is(6));
+    assertThat(index.getMeasures(root, MeasuresFilters.metric(CoreMetrics.NCLOC)).getIntValue(), is(4));
+    // snapshots of the modules are shared with the batch
+    DefaultResourcePersister persister = batch.getComponentByType(DefaultResourcePersister.class);
+    assertThat(persister.getSnapshot(first), notNullValue());
+    assertThat(persister.getSnapshot(second), notNullValue());
+    verify(sessionFactory, times(2)).clear();
+  }
+
+  @Test
+  public void shouldAnalyzeModulesSequentiallyByDefault() {
+    Module batch = new FakeBatchModule(new Settings()).init();
+    batch.start();
+
+    assertThat(analyzedProjects, is(Arrays.asList(first, second, root)));
+    verify(sessionFactory, never()).clear();
+  }
+
+  private static DatabaseSession newDatabaseSession() {
+    DatabaseSession session = mock(DatabaseSession.class);
+    when(session.save(any())).thenAnswer(new Answer<Object>() {
+      public Object answer(InvocationOnMock invocation) {
+        return invocation.getArguments()[0];
+      }
+    });
+    return session;
+  }
+
+  private class FakeBatchModule extends BatchModule {
+    private final Settings settings;
+
+    FakeBatchModule(Settings settings) {
+      super(false);
+      this.settings = settings;
+    }
+
+    @Override
+    protected void configure() {
+      ProjectTree projectTree = mock(ProjectTree.class);
+      when(projectTree.getRootProject()).thenReturn(root);
+      when(projectTree.getProjects()).thenReturn(Arrays.asList(root, first, second));
+      MetricFinder metricFinder = mock(MetricFinder.class);
+      when(metricFinder.findByKey(CoreMetrics.NCLOC_KEY)).thenReturn(CoreMetrics.NCLOC);
+
+      addCoreSingleton(settings);
+      addCoreSingleton(projectTree);
+      addCoreSingleton(metricFinder);
+      addCoreSingleton(mock(PersistenceManager.class));
+      addCoreSingleton(DefaultResourceCreationLock.class);
+      addCoreSingleton(DefaultIndex.class);
+      addCoreSingleton(newDatabaseSession());
+      addCoreSingleton(DefaultResourcePersister.class);
+      addCoreSingleton(sessionFactory);
+    }
+
+    @Override
+    Module createProjectModule(Project project, boolean isolated) {
+      return new FakeProjectModule(project, isolated);
+    }
+  }
+
+  private class FakeProjectModule extends Module {
+    private final Project project;
+    private final boolean isolated;
+
+    FakeProjectModule(Project project, boolean isolated) {
+      this.project = project;
+      this.isolated = isolated;
+    }
+
+    @Override
+    protected void configure() {
+      if (isolated) {
+        addCoreSingleton(DefaultIndex.class);
+        addCoreSingleton(DefaultResourcePersister.class);
+      }
+    }
+
+    @Override
+    protected void doStart() {
+      if (isolated) {
+        latch.countDown();
+        try {
+          concurrent &= latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+      if (isolated) {
+        getComponentByType(DefaultResourcePersister.class).saveProject(project, null);
+      }
+      DefaultIndex index = getComponentByType(DefaultIndex.class);
+      index.setCurrentProject(project, new ResourceFilters(new ResourceFilter[0]), new ViolationFilters(), RulesProfile.create());
+      index.addMeasure(project, new Measure(CoreMetrics.NCLOC, (double) project.getKey().length()));
+      analyzedProjects.add(project);
+    }
+  }
+}
@@ -91,6 +91,27 @@ public class ModuleTest {
     assertThat(child.getComponentByType(ChildService.class).started, is(false));
   }
 
+  @Test
+  public void shouldInstallSeveralChildModules() {
+    Module parent = new FakeModule(FakeService.class).init();
+    parent.start();
+
+    Module first = parent.installChild(new FakeModule(ChildService.class));
+    Module second = parent.installChild(new FakeModule(ChildService.class));
+    first.start();
+    second.start();
+    assertThat(first.getComponentByType(ChildService.class) != second.getComponentByType(ChildService.class), is(true));
+    assertThat(first.getComponentByType(FakeService.class) == second.getComponentByType(FakeService.class), is(true));
+
+    first.stop();
+    parent.uninstallChild(first);
+    assertThat(parent.container.getChild() == second.container, is(true));
+
+    second.stop();
+    parent.uninstallChild(second);
+    assertThat(parent.container.getChild(), nullValue());
+  }
+
   public static class FakeModule extends Module {
     private Class[] components;
 
@@ -21,6 +21,8 @@ package org.sonar.batch.events;
 
 import org.sonar.api.batch.events.EventHandler;
 
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
@@ -43,6 +45,30 @@ public class EventBusTest {
     verify(secondHandler).onEvent(secondEvent);
   }
 
+  @Test
+  public void shouldNotifyHandlerRegisteredLater() {
+    FirstHandler firstHandler = mock(FirstHandler.class);
+    EventBus eventBus = new EventBus(new EventHandler[] { firstHandler });
+    eventBus.fireEvent(new SecondEvent());
+    assertThat(eventBus.hasHandlers(SecondHandler.class), is(false));
+
+    SecondHandler secondHandler = mock(SecondHandler.class);
+    eventBus.register(secondHandler);
+    SecondEvent secondEvent = new SecondEvent();
+    eventBus.fireEvent(secondEvent);
+
+    assertThat(eventBus.hasHandlers(SecondHandler.class), is(true));
+    verify(secondHandler).onEvent(secondEvent);
+  }
+
+  @Test
+  public void shouldCheckIfHandlers() {
+    EventBus eventBus = new EventBus(new EventHandler[] { mock(FirstHandler.class) });
+
+    assertThat(eventBus.hasHandlers(FirstHandler.class), is(true));
+    assertThat(eventBus.hasHandlers(SecondHandler.class), is(false));
+  }
+
   interface FirstHandler extends EventHandler {
     void onEvent(FirstEvent event);
   }
@@ -23,6 +23,7 @@ import org.junit.Test;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.MeasuresFilters;
 import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.RuleMeasure;
 import org.sonar.api.resources.JavaFile;
 import org.sonar.api.resources.JavaPackage;
 import org.sonar.api.rules.Rule;
@@ -31,6 +32,7 @@ import org.sonar.api.utils.SonarException;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.*;
 import static org.junit.internal.matchers.IsCollectionContaining.hasItem;
 
@@ -96,6 +98,36 @@ public class BucketTest {
     fileBucket.addMeasure(measure);
   }
 
+  @Test
+  public void shouldAddMeasuresOfSameMetric() {
+    Bucket fileBucket = new Bucket(javaFile);
+    Rule rule1 = Rule.create("checkstyle", "rule1", "Rule one");
+    Rule rule2 = Rule.create("checkstyle", "rule2", "Rule two");
+    Measure measure = new Measure(ncloc).setValue(1200.0);
+    RuleMeasure ruleMeasure1 = RuleMeasure.createForRule(ncloc, rule1, 3.0);
+    RuleMeasure ruleMeasure2 = RuleMeasure.createForRule(ncloc, rule2, 5.0);
+    fileBucket.addMeasure(ruleMeasure1);
+    fileBucket.addMeasure(measure);
+    fileBucket.addMeasure(ruleMeasure2);
+    fileBucket.addMeasure(ruleMeasure2);
+
+    assertThat(fileBucket.getMeasures(MeasuresFilters.all()).size(), is(3));
+    assertThat(fileBucket.getMeasures(MeasuresFilters.metric(ncloc)), is(measure));
+    assertThat(fileBucket.getMeasures(MeasuresFilters.rule(ncloc, rule2)), is(ruleMeasure2));
+    assertThat(fileBucket.getMeasures(MeasuresFilters.rules(ncloc)).size(), is(2));
+    assertThat(fileBucket.getMeasures(MeasuresFilters.metric("unknown")), nullValue());
+  }
+
+  @Test(expected = SonarException.class)
+  public void shouldFailIfAddingSameRuleMeasures() {
+    Bucket fileBucket = new Bucket(javaFile);
+    Rule rule = Rule.create("checkstyle", "rule1", "Rule one");
+    fileBucket.addMeasure(new Measure(ncloc).setValue(1200.0));
+    fileBucket.addMeasure(RuleMeasure.createForRule(ncloc, rule, 3.0));
+
+    fileBucket.addMeasure(RuleMeasure.createForRule(ncloc, rule, 4.0));
+  }
+
   @Test
   public void shouldBeEquals() {
     assertEquals(new Bucket(javaPackage), new Bucket(javaPackage));
@@ -19,16 +19,22 @@
  */
 package org.sonar.batch.index;
 
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.apache.commons.lang.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.api.batch.ResourceFilter;
+import org.sonar.api.config.Settings;
+import org.sonar.api.design.Dependency;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.MeasuresFilters;
@@ -49,19 +55,24 @@ import org.sonar.api.utils.SonarException;
 import org.sonar.api.violations.ViolationQuery;
 import org.sonar.batch.DefaultResourceCreationLock;
 import org.sonar.batch.ProjectTree;
+import org.sonar.batch.bootstrap.TempDirectories;
 import org.sonar.batch.ResourceFilters;
 import org.sonar.batch.ViolationFilters;
 
+import java.io.IOException;
+import java.util.Collection;
+
 public class DefaultIndexTest {
 
   private DefaultIndex index = null;
   private DefaultResourceCreationLock lock;
   private Rule rule;
+  private MetricFinder metricFinder;
 
   @Before
   public void createIndex() {
     lock = new DefaultResourceCreationLock();
-    MetricFinder metricFinder = mock(MetricFinder.class);
+    metricFinder = mock(MetricFinder.class);
     when(metricFinder.findByKey("ncloc")).thenReturn(CoreMetrics.NCLOC);
 
     index = new DefaultIndex(mock(PersistenceManager.class), lock, mock(ProjectTree.class), metricFinder);
@@ -188,6 +199,56 @@ public class DefaultIndexTest {
     assertThat(index.getMeasures(dir, MeasuresFilters.metric("ncloc")).getIntValue(), is(50));
   }
 
+  @Test
+  public void shouldResolveMetricOnlyOnceByInstance() {
+    index.addMeasure(new Directory("org/foo"), new Measure(CoreMetrics.NCLOC, 50.0));
+    index.addMeasure(new Directory("org/bar"), new Measure(CoreMetrics.NCLOC, 30.0));
+
+    verify(metricFinder, times(1)).findByKey("ncloc");
+  }
+
+  @Test
+  public void shouldImportResultsOfModuleAnalysedWithOwnIndex() {
+    Project project = index.getProject();
+    DefaultIndex moduleIndex = new DefaultIndex(mock(PersistenceManager.class), new DefaultResourceCreationLock(), mock(ProjectTree.class), metricFinder);
+    moduleIndex.setCurrentProject(project, new ResourceFilters(new ResourceFilter[0]), new ViolationFilters(), RulesProfile.create());
+    moduleIndex.doStart(project);
+    moduleIndex.addMeasure(project, new Measure(CoreMetrics.NCLOC, 50.0));
+    moduleIndex.addMeasure(new Directory("org/foo"), new Measure(CoreMetrics.NCLOC, 30.0));
+    Library library = new Library("junit:junit", "4.7");
+    moduleIndex.addDependency(new Dependency(project, library));
+
+    index.importModule(project, moduleIndex);
+    index.importModule(project, moduleIndex);
+
+    assertThat(index.getMeasures(project, MeasuresFilters.metric(CoreMetrics.NCLOC)).getIntValue(), is(50));
+    assertThat(index.isIndexed(new Directory("org/foo"), true), is(false));
+    assertThat(index.hasEdge(project, library), is(true));
+  }
+
+  @Test
+  public void shouldReturnCopiesOfDependencies() {
+    Project project = index.getProject();
+    index.addDependency(new Dependency(project, new Library("junit:junit", "4.7")));
+    Collection<Dependency> dependencies = index.getDependencies();
+    Collection<Dependency> outgoingEdges = index.getOutgoingEdges(project);
+    Collection<Resource> vertices = index.getVertices();
+
+    Library library = new Library("commons-lang:commons-lang", "2.6");
+    index.addResource(library);
+    index.addDependency(new Dependency(project, library));
+
+    assertThat(dependencies.size(), is(1));
+    assertThat(outgoingEdges.size(), is(1));
+    assertThat(vertices.contains(library), is(false));
+    assertThat(index.getOutgoingEdges(project).size(), is(2));
+  }
+
+  @Test(expected = SonarException.class)
+  public void shouldFailIfUnknownMetric() {
+    index.addMeasure(new Directory("org/foo"), new Measure(CoreMetrics.COVERAGE, 50.0));
+  }
+
   /**
    * See http://jira.codehaus.org/browse/SONAR-2107
    */
@@ -230,6 +291,43 @@ public class DefaultIndexTest {
     assertThat(index.getViolations(ViolationQuery.create().forResource(file).setSwitchedOff(true)).size(), is(2));
   }
 
+  @Test
+  public void shouldKeepPinnedViolationsInMemory() throws IOException {
+    TempDirectories tempDirectories = new TempDirectories();
+    ViolationStore store = new ViolationStore(tempDirectories, new Settings().setProperty(ViolationStore.ENABLED_PROPERTY, true));
+    try {
+      DefaultIndex storingIndex = new DefaultIndex(mock(PersistenceManager.class), new DefaultResourceCreationLock(), mock(ProjectTree.class), metricFinder, store);
+      Project project = new Project("project");
+      RulesProfile rulesProfile = RulesProfile.create();
+      rulesProfile.activateRule(rule, null);
+      storingIndex.setCurrentProject(project, new ResourceFilters(new ResourceFilter[0]), new ViolationFilters(), rulesProfile);
+      storingIndex.doStart(project);
+
+      File file = new File("org/foo/Bar.java");
+      storingIndex.addViolation(Violation.create(rule, file));
+      storingIndex.pinViolations(file);
+      Violation violation = storingIndex.getViolations(file).get(0);
+      loadViolationsOfOtherFiles(storingIndex, "first");
+      assertThat(storingIndex.getViolations(file).get(0), sameInstance(violation));
+
+      storingIndex.unpinViolations(file);
+      loadViolationsOfOtherFiles(storingIndex, "second");
+      assertThat(storingIndex.getViolations(file).get(0), not(sameInstance(violation)));
+
+    } finally {
+      store.stop();
+      tempDirectories.stop();
+    }
+  }
+
+  private void loadViolationsOfOtherFiles(DefaultIndex storingIndex, String prefix) {
+    for (int i = 0; i < 150; i++) {
+      File other = new File("org/foo/" + prefix + i + ".java");
+      storingIndex.addViolation(Violation.create(rule, other));
+      storingIndex.getViolations(other);
+    }
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void testGetViolationsWithQueryWithNoResource() {
     index.getViolations(ViolationQuery.create());
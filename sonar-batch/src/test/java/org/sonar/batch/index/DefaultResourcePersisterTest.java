@@ -124,6 +124,23 @@ public class DefaultResourcePersisterTest extends AbstractDbUnitTestCase {
     assertThat(persister.getSnapshotsByResource().get(moduleA), notNullValue());
   }
 
+  @Test
+  public void shouldShareSnapshotsOfProjects() {
+    setupData("shared");
+
+    DefaultResourcePersister persister = new DefaultResourcePersister(getSession());
+    persister.saveProject(multiModuleProject, null);
+    persister.saveProject(moduleA, multiModuleProject);
+    persister.saveResource(moduleA, new JavaPackage("org.foo").setEffectiveKey("a:org.foo"));
+
+    DefaultResourcePersister modulePersister = new DefaultResourcePersister(getSession());
+    modulePersister.addProjectSnapshots(persister);
+
+    assertThat(modulePersister.getSnapshotsByResource().size(), is(2));
+    assertThat(modulePersister.getSnapshot(moduleA) == persister.getSnapshot(moduleA), is(true));
+    assertThat(modulePersister.saveProject(moduleA, multiModuleProject) == persister.getSnapshot(moduleA), is(true));
+  }
+
   @Test
   public void shouldUpdateExistingResource() {
     setupData("shouldUpdateExistingResource");
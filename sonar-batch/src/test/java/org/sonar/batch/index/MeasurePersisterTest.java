@@ -19,8 +19,12 @@
  */
 package org.sonar.batch.index;
 
+import com.google.common.collect.Lists;
+import org.apache.commons.lang.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.model.MeasureModel;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.api.measures.CoreMetrics;
@@ -30,9 +34,12 @@ import org.sonar.api.measures.PersistenceMode;
 import org.sonar.api.resources.JavaFile;
 import org.sonar.api.resources.JavaPackage;
 import org.sonar.api.resources.Project;
+import org.sonar.core.measure.MeasureDao;
+import org.sonar.core.measure.MeasureDto;
 import org.sonar.core.rule.DefaultRuleFinder;
 import org.sonar.jpa.test.AbstractDbUnitTestCase;
 
+import java.util.Collection;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -56,6 +63,7 @@ public class MeasurePersisterTest extends AbstractDbUnitTestCase {
   private Snapshot projectSnapshot, packageSnapshot, fileSnapshot;
   private Metric ncloc, coverage;
   private MemoryOptimizer memoryOptimizer;
+  private MeasureDao measureDao;
 
   @Before
   public void mockResourcePersister() {
@@ -73,7 +81,9 @@ public class MeasurePersisterTest extends AbstractDbUnitTestCase {
     when(resourcePersister.getSnapshot(aPackage)).thenReturn(packageSnapshot);
     when(resourcePersister.getSnapshot(aFile)).thenReturn(fileSnapshot);
     memoryOptimizer = mock(MemoryOptimizer.class);
-    measurePersister = new MeasurePersister(getSession(), resourcePersister, new DefaultRuleFinder(getSessionFactory()), memoryOptimizer);
+    measureDao = mock(MeasureDao.class);
+    measurePersister = new MeasurePersister(getSession(), resourcePersister, new DefaultRuleFinder(getSessionFactory()), memoryOptimizer,
+        measureDao);
   }
 
   @Test
@@ -105,6 +115,24 @@ public class MeasurePersisterTest extends AbstractDbUnitTestCase {
     checkTables("shouldUpdateMeasure", "project_measures");
   }
 
+  @Test
+  public void shouldReloadUpdatedDataMeasure() {
+    Settings settings = new Settings().setProperty(MemoryOptimizer.CACHE_SIZE_PROPERTY, 0);
+    measurePersister = new MeasurePersister(getSession(), resourcePersister, new DefaultRuleFinder(getSessionFactory()),
+        new MemoryOptimizer(getSession(), settings), measureDao);
+    String initialData = StringUtils.repeat("a", MeasureModel.TEXT_VALUE_LENGTH + 1);
+    String updatedData = StringUtils.repeat("b", MeasureModel.TEXT_VALUE_LENGTH + 1);
+    Measure measure = new Measure(ncloc).setData(initialData).setPersistenceMode(PersistenceMode.DATABASE);
+    measurePersister.saveMeasure(project, measure);
+
+    measure.setData(updatedData);
+    measurePersister.saveMeasure(project, measure);
+    assertThat(measure.hasData(), is(false));
+
+    measurePersister.reloadMeasure(measure);
+    assertThat(measure.getData(), is(updatedData));
+  }
+
   @Test
   public void shouldAddDelayedMeasureSeveralTimes() {
     measurePersister.setDelayedMode(true);
@@ -116,9 +144,11 @@ public class MeasurePersisterTest extends AbstractDbUnitTestCase {
 
     measurePersister.dump();
 
-    List<MeasureModel> coverageMeasures = getSession().getResults(MeasureModel.class, "snapshotId", PROJECT_SNAPSHOT_ID, "metricId", 1);
-    assertThat(coverageMeasures.size(), is(1));
-    assertThat(coverageMeasures.get(0).getValue(), is(300.0));
+    List<MeasureDto> dtos = getDumpedMeasures();
+    assertThat(dtos.size(), is(1));
+    assertThat(dtos.get(0).getSnapshotId(), is(PROJECT_SNAPSHOT_ID));
+    assertThat(dtos.get(0).getMetricId(), is(1));
+    assertThat(dtos.get(0).getValue(), is(300.0));
   }
 
   @Test
@@ -131,7 +161,13 @@ public class MeasurePersisterTest extends AbstractDbUnitTestCase {
     assertThat(getSession().getResults(MeasureModel.class, "metricId", 1).size(), is(0));
 
     measurePersister.dump();
-    checkTables("shouldDelaySaving", "project_measures");
+
+    List<MeasureDto> dtos = getDumpedMeasures();
+    assertThat(dtos.size(), is(2));
+    assertThat(dtos.get(0).getSnapshotId(), is(PROJECT_SNAPSHOT_ID));
+    assertThat(dtos.get(0).getValue(), is(1234.0));
+    assertThat(dtos.get(1).getSnapshotId(), is(PACKAGE_SNAPSHOT_ID));
+    assertThat(dtos.get(1).getValue(), is(50.0));
   }
 
   @Test
@@ -171,7 +207,7 @@ public class MeasurePersisterTest extends AbstractDbUnitTestCase {
     measurePersister.dump();
 
     // not saved because it's a best value measure
-    assertThat(getSession().getResults(MeasureModel.class, "metricId", COVERAGE_METRIC_ID, "snapshotId", FILE_SNAPSHOT_ID).size(), is(0));
+    assertThat(getDumpedMeasures().size(), is(0));
   }
 
 
@@ -212,4 +248,11 @@ public class MeasurePersisterTest extends AbstractDbUnitTestCase {
     Measure measure = new Measure(CoreMetrics.NEW_VIOLATIONS_KEY);
     assertThat(MeasurePersister.isBestValueMeasure(measure, CoreMetrics.NEW_VIOLATIONS), is(true));
   }
+
+  @SuppressWarnings("unchecked")
+  private List<MeasureDto> getDumpedMeasures() {
+    ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+    verify(measureDao).insert(captor.capture());
+    return Lists.newArrayList((Collection<MeasureDto>) captor.getValue());
+  }
 }
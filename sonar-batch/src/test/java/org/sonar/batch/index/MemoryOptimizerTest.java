@@ -20,6 +20,7 @@
 package org.sonar.batch.index;
 
 import org.junit.Test;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.model.MeasureData;
 import org.sonar.api.database.model.MeasureModel;
 import org.sonar.api.measures.CoreMetrics;
@@ -83,11 +84,50 @@ public class MemoryOptimizerTest extends AbstractDbUnitTestCase {
     assertThat(measure.getData(), nullValue());
   }
 
+  @Test
+  public void shouldReloadEvictedMeasureFromDatabaseIfNotCached() {
+    setupData("shouldLoadDataOfOtherMeasuresOfSameMetric");
+    Settings settings = new Settings().setProperty(MemoryOptimizer.CACHE_SIZE_PROPERTY, 0);
+    MemoryOptimizer optimizer = new MemoryOptimizer(getSession(), settings);
+    Measure measure = new Measure(CoreMetrics.CONDITIONS_BY_LINE)
+        .setData("initial")
+        .setPersistenceMode(PersistenceMode.DATABASE)
+        .setId(12345L);
+
+    optimizer.evictDataMeasure(measure, newPersistedModel());
+    optimizer.reloadMeasure(measure);
+
+    assertThat(measure.getData(), is("first"));
+  }
+
+  @Test
+  public void shouldLoadDataOfOtherMeasuresOfSameMetric() {
+    setupData("shouldLoadDataOfOtherMeasuresOfSameMetric");
+    MemoryOptimizer optimizer = new MemoryOptimizer(getSession());
+    Measure first = new Measure(CoreMetrics.CONDITIONS_BY_LINE).setPersistenceMode(PersistenceMode.DATABASE).setId(12345L);
+    Measure second = new Measure(CoreMetrics.CONDITIONS_BY_LINE).setPersistenceMode(PersistenceMode.DATABASE).setId(12346L);
+    optimizer.evictDataMeasure(first, newPersistedModel());
+    optimizer.evictDataMeasure(second, newPersistedModel(12346L, 501));
+
+    optimizer.reloadMeasure(first);
+    assertThat(first.getData(), is("first"));
+
+    // the data of the second measure has been loaded by the same request
+    getSession().remove(getSession().getSingleResult(MeasureData.class, "id", 501));
+    getSession().commit();
+    optimizer.reloadMeasure(second);
+    assertThat(second.getData(), is("second"));
+  }
+
   private MeasureModel newPersistedModel() {
+    return newPersistedModel(12345L, 500);
+  }
+
+  private MeasureModel newPersistedModel(long measureId, int dataId) {
     MeasureModel model = new MeasureModel();
-    model.setId(12345L);
+    model.setId(measureId);
     MeasureData measureData = new MeasureData();
-    measureData.setId(500);
+    measureData.setId(dataId);
     model.setMeasureData(measureData);
     return model;
   }
@@ -19,35 +19,61 @@
  */
 package org.sonar.batch.index;
 
+import com.google.common.collect.Lists;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.api.resources.DuplicatedSourceException;
 import org.sonar.api.resources.JavaFile;
 import org.sonar.api.resources.Resource;
+import org.sonar.api.utils.SonarException;
+import org.sonar.core.source.SnapshotSourceDao;
+import org.sonar.core.source.SnapshotSourceDto;
+import org.sonar.core.source.SourceCompression;
 import org.sonar.jpa.test.AbstractDbUnitTestCase;
 
+import java.util.Collection;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Matchers.anyObject;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 public class SourcePersisterTest extends AbstractDbUnitTestCase {
 
   private SourcePersister sourcePersister;
+  private ResourcePersister resourcePersister;
+  private SnapshotSourceDao sourceDao;
+  private Settings settings;
 
   @Before
   public void before() {
     setupData("shared");
     Snapshot snapshot = getSession().getSingleResult(Snapshot.class, "id", 1000);
-    ResourcePersister resourcePersister = mock(ResourcePersister.class);
+    resourcePersister = mock(ResourcePersister.class);
     when(resourcePersister.getSnapshotOrFail((Resource) anyObject())).thenReturn(snapshot);
-    sourcePersister = new SourcePersister(getSession(), resourcePersister);
+    when(resourcePersister.getSnapshot((Resource) anyObject())).thenReturn(snapshot);
+    sourceDao = mock(SnapshotSourceDao.class);
+    settings = new Settings();
+    sourcePersister = new SourcePersister(getSession(), resourcePersister, sourceDao, settings);
   }
 
   @Test
   public void shouldSaveSource() {
     sourcePersister.saveSource(new JavaFile("org.foo.Bar"), "this is the file content");
-    checkTables("shouldSaveSource", "snapshot_sources");
+    verify(sourceDao, never()).insert(anyCollection());
+
+    sourcePersister.flush();
+
+    List<SnapshotSourceDto> sources = getInsertedSources();
+    assertThat(sources.size(), is(1));
+    assertThat(sources.get(0).getSnapshotId(), is(1000));
+    assertThat(sources.get(0).getData(), is("this is the file content"));
   }
 
   @Test(expected = DuplicatedSourceException.class)
@@ -56,4 +82,54 @@ public class SourcePersisterTest extends AbstractDbUnitTestCase {
     sourcePersister.saveSource(file, "this is the file content");
     sourcePersister.saveSource(file, "new content"); // fail
   }
+
+  @Test
+  public void shouldInsertByBatches() {
+    settings.setProperty(SourcePersister.BATCH_SIZE_PROPERTY, 2);
+    sourcePersister = new SourcePersister(getSession(), resourcePersister, sourceDao, settings);
+    when(resourcePersister.getSnapshotOrFail((Resource) anyObject())).thenReturn(snapshot(1), snapshot(2), snapshot(3));
+
+    sourcePersister.saveSource(new JavaFile("org.foo.One"), "one");
+    sourcePersister.saveSource(new JavaFile("org.foo.Two"), "two");
+    sourcePersister.saveSource(new JavaFile("org.foo.Three"), "three");
+
+    verify(sourceDao, times(1)).insert(anyCollection());
+
+    sourcePersister.clear();
+    verify(sourceDao, times(2)).insert(anyCollection());
+  }
+
+  @Test
+  public void shouldCompressSources() {
+    settings.setProperty(SourcePersister.COMPRESSION_PROPERTY, SourceCompression.GZIP);
+    sourcePersister = new SourcePersister(getSession(), resourcePersister, sourceDao, settings);
+    JavaFile file = new JavaFile("org.foo.Bar");
+
+    sourcePersister.saveSource(file, "this is the file content");
+    assertThat(sourcePersister.getSource(file), is("this is the file content"));
+
+    sourcePersister.flush();
+    String data = getInsertedSources().get(0).getData();
+    assertThat(data, not("this is the file content"));
+    assertThat(SourceCompression.decompress(data), is("this is the file content"));
+  }
+
+  @Test(expected = SonarException.class)
+  public void shouldFailIfUnknownCompression() {
+    settings.setProperty(SourcePersister.COMPRESSION_PROPERTY, "zip");
+    new SourcePersister(getSession(), resourcePersister, sourceDao, settings);
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<SnapshotSourceDto> getInsertedSources() {
+    ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+    verify(sourceDao).insert(captor.capture());
+    return Lists.newArrayList((Collection<SnapshotSourceDto>) captor.getValue());
+  }
+
+  private static Snapshot snapshot(int id) {
+    Snapshot snapshot = new Snapshot();
+    snapshot.setId(id);
+    return snapshot;
+  }
 }
@@ -0,0 +1,119 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.batch.index;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.JavaFile;
+import org.sonar.api.rules.Rule;
+import org.sonar.api.rules.RulePriority;
+import org.sonar.api.rules.Violation;
+import org.sonar.batch.bootstrap.TempDirectories;
+
+import java.io.IOException;
+import java.util.Date;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class ViolationStoreTest {
+
+  private TempDirectories tempDirectories;
+  private ViolationStore store;
+  private JavaFile file = new JavaFile("org.foo.Bar");
+  private Rule rule = Rule.create("checkstyle", "rule1", "Rule one");
+
+  @Before
+  public void before() throws IOException {
+    tempDirectories = new TempDirectories();
+    store = new ViolationStore(tempDirectories, new Settings().setProperty(ViolationStore.ENABLED_PROPERTY, true));
+  }
+
+  @After
+  public void after() {
+    store.stop();
+    tempDirectories.stop();
+  }
+
+  @Test
+  public void shouldBeDisabledByDefault() {
+    assertThat(new ViolationStore(tempDirectories, new Settings()).isEnabled(), is(false));
+    assertThat(store.isEnabled(), is(true));
+  }
+
+  @Test
+  public void shouldWriteAndReadViolations() {
+    Date createdAt = new Date();
+    Violation full = Violation.create(rule, file).setMessage("message with accents: é").setSeverity(RulePriority.MAJOR)
+        .setLineId(12).setCost(3.5).setCreatedAt(createdAt).setChecksum("abc").setPermanentId(15).setPersonId(3)
+        .setSwitchedOff(true).setNew(true).setManual(true);
+    Violation minimal = Violation.create(Rule.create("pmd", "rule2", "Rule two"), file);
+
+    long fullPosition = store.write(full);
+    long minimalPosition = store.write(minimal);
+
+    Violation violation = store.read(fullPosition, file);
+    assertThat(violation.getRule(), sameInstance(rule));
+    assertThat(violation.getResource(), is((Object) file));
+    assertThat(violation.getMessage(), is("message with accents: é"));
+    assertThat(violation.getSeverity(), is(RulePriority.MAJOR));
+    assertThat(violation.getLineId(), is(12));
+    assertThat(violation.getCost(), is(3.5));
+    assertThat(violation.getCreatedAt(), is(createdAt));
+    assertThat(violation.getChecksum(), is("abc"));
+    assertThat(violation.getPermanentId(), is(15));
+    assertThat(violation.getPersonId(), is(3));
+    assertThat(violation.isSwitchedOff(), is(true));
+    assertThat(violation.isNew(), is(true));
+    assertThat(violation.isManual(), is(true));
+
+    violation = store.read(minimalPosition, file);
+    assertThat(violation.getRule().getKey(), is("rule2"));
+    assertThat(violation.getMessage(), nullValue());
+    assertThat(violation.getSeverity(), nullValue());
+    assertThat(violation.getLineId(), nullValue());
+    assertThat(violation.getCost(), nullValue());
+    assertThat(violation.getCreatedAt(), nullValue());
+    assertThat(violation.isSwitchedOff(), is(false));
+  }
+
+  @Test
+  public void shouldSpillViolationsOfBucket() {
+    Bucket bucket = new Bucket(file).setViolationStore(store);
+    Violation violation = Violation.create(rule, file).setMessage("first");
+    bucket.addViolation(violation);
+
+    assertThat(bucket.getViolations().size(), is(1));
+    bucket.getViolations().get(0).setSwitchedOff(true);
+
+    // changes are kept when violations are written back to disk
+    bucket.unloadViolations();
+    bucket.addViolation(Violation.create(rule, file).setMessage("second"));
+
+    assertThat(bucket.getViolations().size(), is(2));
+    assertThat(bucket.getViolations().get(0).getMessage(), is("first"));
+    assertThat(bucket.getViolations().get(0).isSwitchedOff(), is(true));
+    assertThat(bucket.getViolations().get(1).getMessage(), is("second"));
+  }
+}
@@ -19,11 +19,14 @@
  */
 package org.sonar.batch.phases;
 
+import com.google.common.collect.Lists;
 import org.junit.Test;
 import org.sonar.api.batch.BatchExtensionDictionnary;
 import org.sonar.api.batch.Decorator;
 import org.sonar.api.batch.DecoratorContext;
 import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.batch.ThreadSafe;
+import org.sonar.api.resources.Directory;
 import org.sonar.api.resources.File;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
@@ -31,15 +34,23 @@ import org.sonar.api.utils.SonarException;
 import org.sonar.batch.DefaultDecoratorContext;
 import org.sonar.batch.events.EventBus;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.number.OrderingComparisons.greaterThanOrEqualTo;
 import static org.hamcrest.number.OrderingComparisons.lessThan;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.junit.matchers.JUnitMatchers.containsString;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class DecoratorsExecutorTest {
 
@@ -76,6 +87,88 @@ public class DecoratorsExecutorTest {
     }
   }
 
+  @Test
+  public void shouldDecorateChildrenBeforeParentsConcurrently() {
+    Directory dir1 = new Directory("dir1");
+    Directory dir2 = new Directory("dir2");
+    File file1 = new File("dir1/File1.java");
+    File file2 = new File("dir1/File2.java");
+    File file3 = new File("dir2/File3.java");
+    Project project = new Project("key");
+    SonarIndex index = mock(SonarIndex.class);
+    when(index.getChildren(any(Resource.class))).thenReturn(Collections.<Resource>emptyList());
+    when(index.getChildren(project)).thenReturn(Lists.<Resource>newArrayList(dir1, dir2));
+    when(index.getChildren(dir1)).thenReturn(Lists.<Resource>newArrayList(file1, file2));
+    when(index.getChildren(dir2)).thenReturn(Lists.<Resource>newArrayList(file3));
+
+    final List<Resource> decorated = Collections.synchronizedList(Lists.<Resource>newArrayList());
+    Decorator decorator = new Decorator1() {
+      @Override
+      public void decorate(Resource resource, DecoratorContext context) {
+        decorated.add(resource);
+      }
+    };
+
+    DecoratorsExecutor executor = new DecoratorsExecutor(mock(BatchExtensionDictionnary.class), project, index, mock(EventBus.class));
+    DecoratorContext context = executor.decorateResourceConcurrently(project, Arrays.asList(decorator), 4);
+
+    assertThat(decorated.size(), is(6));
+    assertThat(decorated.indexOf(file1), lessThan(decorated.indexOf(dir1)));
+    assertThat(decorated.indexOf(file2), lessThan(decorated.indexOf(dir1)));
+    assertThat(decorated.indexOf(file3), lessThan(decorated.indexOf(dir2)));
+    assertThat(decorated.get(5), is((Resource) project));
+    assertThat(context.getResource(), is((Resource) project));
+    assertThat(context.getChildren().size(), is(2));
+    assertThat(context.getChildren().get(0).getResource(), is((Resource) dir1));
+    assertThat(context.getChildren().get(1).getResource(), is((Resource) dir2));
+  }
+
+  @Test
+  public void shouldNotDecorateConcurrentlyWithDecoratorsWhichAreNotThreadSafe() {
+    Project project = new Project("key");
+    Directory dir = new Directory("dir");
+    List<Resource> files = Lists.newArrayList();
+    for (int i = 0; i < 50; i++) {
+      files.add(new File("dir/File" + i + ".java"));
+    }
+    SonarIndex index = mock(SonarIndex.class);
+    when(index.getChildren(any(Resource.class))).thenReturn(Collections.<Resource>emptyList());
+    when(index.getChildren(project)).thenReturn(Lists.<Resource>newArrayList(dir));
+    when(index.getChildren(dir)).thenReturn(files);
+
+    // same pattern as the violation tracking and persister decorators, which share the tracked violations
+    TrackingDecorator tracking = new TrackingDecorator();
+    PersisterDecorator persister = new PersisterDecorator(tracking);
+    CountingDecorator counting = new CountingDecorator();
+
+    DecoratorsExecutor executor = new DecoratorsExecutor(mock(BatchExtensionDictionnary.class), project, index, mock(EventBus.class));
+    executor.decorateResourceConcurrently(project, Arrays.<Decorator>asList(counting, tracking, persister, counting), 4);
+
+    assertThat(persister.persisted.size(), is(52));
+    assertThat(persister.mismatches.get(), is(0));
+    assertThat(counting.count.get(), is(104));
+  }
+
+  @Test
+  public void concurrentExceptionShouldIncludeResource() {
+    Project project = new Project("key");
+    File file = new File("org/foo/Bar.java");
+    SonarIndex index = mock(SonarIndex.class);
+    when(index.getChildren(any(Resource.class))).thenReturn(Collections.<Resource>emptyList());
+    when(index.getChildren(project)).thenReturn(Lists.<Resource>newArrayList(file));
+    Decorator decorator = mock(Decorator.class);
+    doThrow(new SonarException()).when(decorator).decorate(eq(file), any(DecoratorContext.class));
+
+    DecoratorsExecutor executor = new DecoratorsExecutor(mock(BatchExtensionDictionnary.class), project, index, mock(EventBus.class));
+    try {
+      executor.decorateResourceConcurrently(project, Arrays.asList(decorator), 2);
+      fail("Exception has not been thrown");
+
+    } catch (SonarException e) {
+      assertThat(e.getMessage(), containsString("org/foo/Bar.java"));
+    }
+  }
+
   static class Decorator1 implements Decorator {
     public void decorate(Resource resource, DecoratorContext context) {
     }
@@ -93,4 +186,42 @@ public class DecoratorsExecutorTest {
       return true;
     }
   }
+
+  static class TrackingDecorator extends Decorator1 {
+    private Resource tracked;
+
+    @Override
+    public void decorate(Resource resource, DecoratorContext context) {
+      tracked = resource;
+      Thread.yield();
+    }
+  }
+
+  static class PersisterDecorator extends Decorator1 {
+    private final TrackingDecorator tracking;
+    private final List<Resource> persisted = Collections.synchronizedList(Lists.<Resource>newArrayList());
+    private final AtomicInteger mismatches = new AtomicInteger();
+
+    PersisterDecorator(TrackingDecorator tracking) {
+      this.tracking = tracking;
+    }
+
+    @Override
+    public void decorate(Resource resource, DecoratorContext context) {
+      if (tracking.tracked != resource) {
+        mismatches.incrementAndGet();
+      }
+      persisted.add(resource);
+    }
+  }
+
+  @ThreadSafe
+  static class CountingDecorator extends Decorator1 {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public void decorate(Resource resource, DecoratorContext context) {
+      count.incrementAndGet();
+    }
+  }
 }
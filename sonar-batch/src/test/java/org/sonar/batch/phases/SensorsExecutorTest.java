@@ -0,0 +1,186 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.batch.phases;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import org.sonar.api.batch.BatchExtensionDictionnary;
+import org.sonar.api.batch.DependedUpon;
+import org.sonar.api.batch.DependsUpon;
+import org.sonar.api.batch.Sensor;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.ThreadSafe;
+import org.sonar.api.batch.bootstrap.ProjectDefinition;
+import org.sonar.api.batch.events.EventHandler;
+import org.sonar.api.config.Settings;
+import org.sonar.api.platform.ComponentContainer;
+import org.sonar.api.resources.Project;
+import org.sonar.api.utils.SonarException;
+import org.sonar.batch.MavenPluginExecutor;
+import org.sonar.batch.events.EventBus;
+import org.sonar.batch.index.DefaultIndex;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class SensorsExecutorTest {
+
+  private List<String> executions = Collections.synchronizedList(Lists.<String>newArrayList());
+
+  @Test
+  public void shouldExecuteSensorsSequentiallyByDefault() {
+    CountDownLatch latch = new CountDownLatch(2);
+    Generator a = new Generator("a", latch);
+    Generator b = new Generator("b", latch);
+    SensorsExecutor executor = newExecutor(new Settings(), a, b, new Consumer("c"));
+
+    executor.execute(mock(SensorContext.class));
+
+    // the first sensor is done before the second one starts
+    assertThat(a.waitedForOther || b.waitedForOther, is(true));
+    assertThat(a.waitedForOther && b.waitedForOther, is(false));
+    assertThat(executions.size(), is(3));
+    assertThat(executions.get(2), is("c"));
+  }
+
+  @Test
+  public void shouldExecuteIndependentSensorsConcurrently() {
+    CountDownLatch latch = new CountDownLatch(2);
+    Generator a = new ThreadSafeGenerator("a", latch);
+    Generator b = new ThreadSafeGenerator("b", latch);
+    SensorsExecutor executor = newExecutor(new Settings().setProperty(SensorsExecutor.THREADS_PROPERTY, 4), a, b, new Consumer("c"));
+
+    executor.execute(mock(SensorContext.class));
+
+    assertThat(a.waitedForOther, is(true));
+    assertThat(b.waitedForOther, is(true));
+    assertThat(executions.size(), is(3));
+    assertThat(executions.get(2), is("c"));
+  }
+
+  @Test
+  public void shouldNotExecuteConcurrentlySensorsWhichAreNotThreadSafe() {
+    CountDownLatch latch = new CountDownLatch(2);
+    Generator a = new Generator("a", latch);
+    Generator b = new Generator("b", latch);
+    SensorsExecutor executor = newExecutor(new Settings().setProperty(SensorsExecutor.THREADS_PROPERTY, 4), a, b, new Consumer("c"));
+
+    executor.execute(mock(SensorContext.class));
+
+    assertThat(a.waitedForOther && b.waitedForOther, is(false));
+    assertThat(executions.size(), is(3));
+    assertThat(executions.get(2), is("c"));
+  }
+
+  @Test(expected = SonarException.class)
+  public void shouldPropagateFailureOfConcurrentSensor() {
+    Sensor failing = new ThreadSafeConsumer("failing") {
+      @Override
+      public void analyse(Project project, SensorContext context) {
+        throw new SonarException("fail");
+      }
+    };
+    SensorsExecutor executor = newExecutor(new Settings().setProperty(SensorsExecutor.THREADS_PROPERTY, 4), failing, new Consumer("c"));
+
+    executor.execute(mock(SensorContext.class));
+  }
+
+  private SensorsExecutor newExecutor(Settings settings, Sensor... sensors) {
+    ComponentContainer container = new ComponentContainer();
+    for (Sensor sensor : sensors) {
+      container.addSingleton(sensor);
+    }
+    return new SensorsExecutor(new BatchExtensionDictionnary(container), new Project("key"), ProjectDefinition.create(),
+        mock(MavenPluginExecutor.class), new EventBus(new EventHandler[0]), mock(DefaultIndex.class), settings);
+  }
+
+  @DependedUpon("measures")
+  class Generator implements Sensor {
+    private final String name;
+    private final CountDownLatch latch;
+    private boolean waitedForOther = false;
+
+    Generator(String name, CountDownLatch latch) {
+      this.name = name;
+      this.latch = latch;
+    }
+
+    public void analyse(Project project, SensorContext context) {
+      latch.countDown();
+      try {
+        waitedForOther = latch.await(1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      executions.add(name);
+    }
+
+    public boolean shouldExecuteOnProject(Project project) {
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  @ThreadSafe
+  class ThreadSafeGenerator extends Generator {
+    ThreadSafeGenerator(String name, CountDownLatch latch) {
+      super(name, latch);
+    }
+  }
+
+  @DependsUpon("measures")
+  class Consumer implements Sensor {
+    private final String name;
+
+    Consumer(String name) {
+      this.name = name;
+    }
+
+    public void analyse(Project project, SensorContext context) {
+      executions.add(name);
+    }
+
+    public boolean shouldExecuteOnProject(Project project) {
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  @ThreadSafe
+  class ThreadSafeConsumer extends Consumer {
+    ThreadSafeConsumer(String name) {
+      super(name);
+    }
+  }
+}
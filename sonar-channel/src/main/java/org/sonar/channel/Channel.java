@@ -32,4 +32,18 @@ public abstract class Channel<OUTPUT> {
    * @return false if the Channel doesn't want to consume the character stream, true otherwise.
    */
   public abstract boolean consume(CodeReader code, OUTPUT output);
+
+  /**
+   * Tells whether the Channel might consume the character stream when its next character is the given one. The
+   * {@link org.sonar.channel.ChannelDispatcher} only calls the Channel for the characters it accepts, so that overriding this method
+   * avoids useless calls. The answer must not change over time. By default all characters are accepted.
+   * 
+   * @param character
+   *          the next character of the stream
+   * @return false if the Channel never consumes the character stream starting with this character, true otherwise.
+   * @since 3.2
+   */
+  public boolean acceptsFirstCharacter(int character) {
+    return true;
+  }
 }
@@ -31,10 +31,17 @@ public class ChannelDispatcher<OUTPUT> extends Channel<OUTPUT> {
 
   private static final Logger LOG = LoggerFactory.getLogger(ChannelDispatcher.class);
   private final boolean failIfNoChannelToConsumeOneCharacter;
+  private static final int ASCII_SIZE = 128;
 
   @SuppressWarnings("rawtypes")
   private final Channel[] channels;
 
+  /**
+   * Channels to call for each ASCII character, in the same order as {@link #channels}. Other characters are handed to all channels.
+   */
+  @SuppressWarnings("rawtypes")
+  private final Channel[][] channelsByFirstCharacter;
+
   /**
    * @deprecated in version 2.9. Please use the builder() method
    */
@@ -60,20 +67,39 @@ public class ChannelDispatcher<OUTPUT> extends Channel<OUTPUT> {
   @Deprecated
   public ChannelDispatcher(List<Channel> channels, boolean failIfNoChannelToConsumeOneCharacter) {
     this.channels = channels.toArray(new Channel[channels.size()]);
+    this.channelsByFirstCharacter = indexChannelsByFirstCharacter(this.channels);
     this.failIfNoChannelToConsumeOneCharacter = failIfNoChannelToConsumeOneCharacter;
   }
 
   private ChannelDispatcher(Builder builder) {
     this.channels = builder.channels.toArray(new Channel[builder.channels.size()]);
+    this.channelsByFirstCharacter = indexChannelsByFirstCharacter(this.channels);
     this.failIfNoChannelToConsumeOneCharacter = builder.failIfNoChannelToConsumeOneCharacter;
   }
 
+  @SuppressWarnings("rawtypes")
+  private static Channel[][] indexChannelsByFirstCharacter(Channel[] channels) {
+    Channel[][] channelsByFirstCharacter = new Channel[ASCII_SIZE][];
+    List<Channel> candidates = new ArrayList<Channel>();
+    for (int character = 0; character < ASCII_SIZE; character++) {
+      candidates.clear();
+      for (Channel channel : channels) {
+        if (channel.acceptsFirstCharacter(character)) {
+          candidates.add(channel);
+        }
+      }
+      channelsByFirstCharacter[character] = candidates.toArray(new Channel[candidates.size()]);
+    }
+    return channelsByFirstCharacter;
+  }
+
   @Override
   public boolean consume(CodeReader code, OUTPUT output) {
     int nextChar = code.peek();
     while (nextChar != -1) {
       boolean characterConsumed = false;
-      for (Channel<OUTPUT> channel : channels) {
+      Channel[] candidates = nextChar < ASCII_SIZE ? channelsByFirstCharacter[nextChar] : channels;
+      for (Channel<OUTPUT> channel : candidates) {
         if (channel.consume(code, output)) {
           characterConsumed = true;
           break;
@@ -0,0 +1,57 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.channel;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The FirstCharacters object computes the ASCII characters that can start a match of a regular expression, in order to implement
+ * {@link Channel#acceptsFirstCharacter(int)} for regex-based channels. Other characters are always accepted.
+ * 
+ * @since 3.2
+ */
+public final class FirstCharacters {
+
+  private static final int ASCII_SIZE = 128;
+
+  private final boolean[] asciiCharacters = new boolean[ASCII_SIZE];
+
+  private FirstCharacters() {
+  }
+
+  /**
+   * Channels match regular expressions against the character stream starting at the current position, so testing the regular expression on
+   * a single character tells whether it can start a match : either it matches, or it requires more characters.
+   */
+  public static FirstCharacters of(Pattern pattern) {
+    FirstCharacters firstCharacters = new FirstCharacters();
+    Matcher matcher = pattern.matcher("");
+    for (int character = 0; character < ASCII_SIZE; character++) {
+      matcher.reset(String.valueOf((char) character));
+      firstCharacters.asciiCharacters[character] = matcher.lookingAt() || matcher.hitEnd();
+    }
+    return firstCharacters;
+  }
+
+  public boolean contains(int character) {
+    return character < 0 || character >= ASCII_SIZE || asciiCharacters[character];
+  }
+}
@@ -30,6 +30,7 @@ public abstract class RegexChannel<OUTPUT> extends Channel<OUTPUT> {
   private final StringBuilder tmpBuilder = new StringBuilder();
   private final Matcher matcher;
   private final String regex;
+  private final FirstCharacters firstCharacters;
 
   /**
    * Create a RegexChannel object with the required regular expression
@@ -38,10 +39,17 @@ public abstract class RegexChannel<OUTPUT> extends Channel<OUTPUT> {
    *          regular expression to be used to try matching the next characters in the stream
    */
   public RegexChannel(String regex) {
-    matcher = Pattern.compile(regex).matcher("");
+    Pattern pattern = Pattern.compile(regex);
+    matcher = pattern.matcher("");
+    firstCharacters = FirstCharacters.of(pattern);
     this.regex = regex;
   }
 
+  @Override
+  public boolean acceptsFirstCharacter(int character) {
+    return firstCharacters.contains(character);
+  }
+
   @Override
   public final boolean consume(CodeReader code, OUTPUT output) {
     try {
@@ -48,6 +48,35 @@ public class ChannelDispatcherTest {
     dispatcher.consume(new CodeReader("two words"), new StringBuilder());
   }
 
+  @Test
+  public void shouldOnlyCallChannelsAcceptingNextCharacter() {
+    DigitChannel digitChannel = new DigitChannel();
+    ChannelDispatcher<StringBuilder> dispatcher = ChannelDispatcher.builder().addChannels(digitChannel, new SpaceDeletionChannel()).build();
+    StringBuilder output = new StringBuilder();
+    dispatcher.consume(new CodeReader("a1 b\u00e92"), output);
+    assertThat(output.toString(), is("a<1>b\u00e9<2>"));
+    assertThat(digitChannel.calls, is(3));
+  }
+
+  private static class DigitChannel extends Channel<StringBuilder> {
+    private int calls = 0;
+
+    @Override
+    public boolean consume(CodeReader code, StringBuilder output) {
+      calls++;
+      if (Character.isDigit(code.peek())) {
+        output.append('<').append((char) code.pop()).append('>');
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public boolean acceptsFirstCharacter(int character) {
+      return character >= '0' && character <= '9';
+    }
+  }
+
   private static class SpaceDeletionChannel extends Channel<StringBuilder> {
     @Override
     public boolean consume(CodeReader code, StringBuilder output) {
@@ -50,6 +50,19 @@ public class RegexChannelTest {
     assertThat(output.toString(), is("<literal>\">" + veryLongLiteral + "<\"</literal>"));
   }
 
+  @Test
+  public void shouldAcceptFirstCharactersOfMatches() {
+    MyLiteralChannel literalChannel = new MyLiteralChannel();
+    assertThat(literalChannel.acceptsFirstCharacter('"'), is(true));
+    assertThat(literalChannel.acceptsFirstCharacter('a'), is(false));
+    assertThat(literalChannel.acceptsFirstCharacter('\u00e9'), is(true));
+
+    MyWordChannel wordChannel = new MyWordChannel();
+    assertThat(wordChannel.acceptsFirstCharacter('a'), is(true));
+    assertThat(wordChannel.acceptsFirstCharacter('_'), is(true));
+    assertThat(wordChannel.acceptsFirstCharacter(' '), is(false));
+  }
+
   private static class MyLiteralChannel extends RegexChannel<StringBuilder> {
 
     public MyLiteralChannel() {
@@ -100,4 +100,9 @@ public class HtmlDecorator extends Tokenizer {
       IOUtils.closeQuietly(input);
     }
   }
+
+  @Override
+  public boolean acceptsFirstCharacter(int character) {
+    return character == LF || character == CR;
+  }
 }
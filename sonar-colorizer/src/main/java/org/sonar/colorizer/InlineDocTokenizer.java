@@ -55,4 +55,8 @@ public abstract class InlineDocTokenizer extends Tokenizer {
     }
   };
 
+  @Override
+  public boolean acceptsFirstCharacter(int character) {
+    return character == startToken[0];
+  }
 }
@@ -50,4 +50,8 @@ public class JavaAnnotationTokenizer extends Tokenizer {
     }
   }
 
+  @Override
+  public boolean acceptsFirstCharacter(int character) {
+    return character == '@';
+  }
 }
@@ -77,4 +77,8 @@ public class JavaConstantTokenizer extends Tokenizer {
     }
   };
 
+  @Override
+  public boolean acceptsFirstCharacter(int character) {
+    return isJavaConstantStart(character);
+  }
 }
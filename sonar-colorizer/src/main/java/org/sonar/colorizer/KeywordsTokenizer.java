@@ -20,6 +20,7 @@
 package org.sonar.colorizer;
 
 import org.sonar.channel.CodeReader;
+import org.sonar.channel.FirstCharacters;
 
 import java.util.Collections;
 import java.util.HashSet;
@@ -36,6 +37,7 @@ public class KeywordsTokenizer extends NotThreadSafeTokenizer {
   private final String tagAfter;
   private boolean caseInsensitive = false;
   private Matcher matcher;
+  private final FirstCharacters firstCharacters;
   private final StringBuilder tmpBuilder = new StringBuilder();
   private static final String DEFAULT_REGEX = "[a-zA-Z_][a-zA-Z0-9_]*+";
 
@@ -50,6 +52,7 @@ public class KeywordsTokenizer extends NotThreadSafeTokenizer {
     this.tagAfter = tagAfter;
     this.keywords = keywords;
     this.matcher = Pattern.compile(regex).matcher("");
+    this.firstCharacters = FirstCharacters.of(matcher.pattern());
   }
 
   public KeywordsTokenizer(String tagBefore, String tagAfter, String... keywords) {
@@ -57,6 +60,19 @@ public class KeywordsTokenizer extends NotThreadSafeTokenizer {
     this.tagAfter = tagAfter;
     Collections.addAll(this.keywords, keywords);
     this.matcher = Pattern.compile(DEFAULT_REGEX).matcher("");
+    this.firstCharacters = FirstCharacters.of(matcher.pattern());
+  }
+
+  /**
+   * Used by {@link #clone()}, so that the first characters are not computed again for each colorized source.
+   */
+  private KeywordsTokenizer(KeywordsTokenizer tokenizer) {
+    this.tagBefore = tokenizer.tagBefore;
+    this.tagAfter = tokenizer.tagAfter;
+    this.keywords = tokenizer.keywords;
+    this.caseInsensitive = tokenizer.caseInsensitive;
+    this.matcher = tokenizer.matcher.pattern().matcher("");
+    this.firstCharacters = tokenizer.firstCharacters;
   }
 
   @Override
@@ -75,6 +91,11 @@ public class KeywordsTokenizer extends NotThreadSafeTokenizer {
     return false;
   }
 
+  @Override
+  public boolean acceptsFirstCharacter(int character) {
+    return firstCharacters.contains(character);
+  }
+
   private boolean isKeyword(String word) {
     if ( !caseInsensitive && keywords.contains(word)) {
       return true;
@@ -90,8 +111,6 @@ public class KeywordsTokenizer extends NotThreadSafeTokenizer {
 
   @Override
   public KeywordsTokenizer clone() {
-    KeywordsTokenizer clone = new KeywordsTokenizer(tagBefore, tagAfter, keywords, matcher.pattern().pattern());
-    clone.caseInsensitive = caseInsensitive;
-    return clone;
+    return new KeywordsTokenizer(this);
   }
 }
@@ -49,6 +49,11 @@ public class LiteralTokenizer extends Tokenizer {
     }
   }
 
+  @Override
+  public boolean acceptsFirstCharacter(int character) {
+    return character == '\'' || character == '\"';
+  }
+
   private static class EndCommentMatcher implements EndMatcher {
 
     private final int firstChar;
@@ -23,12 +23,14 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.sonar.channel.CodeReader;
+import org.sonar.channel.FirstCharacters;
 
 public class RegexpTokenizer extends NotThreadSafeTokenizer{
 
   private final String tagBefore;
   private final String tagAfter;
   private final Matcher matcher;
+  private final FirstCharacters firstCharacters;
   private final StringBuilder tmpBuilder = new StringBuilder();
 
   /**
@@ -43,6 +45,22 @@ public class RegexpTokenizer extends NotThreadSafeTokenizer{
     this.tagBefore = tagBefore;
     this.tagAfter = tagAfter;
     this.matcher = Pattern.compile(regexp).matcher("");
+    this.firstCharacters = FirstCharacters.of(matcher.pattern());
+  }
+
+  /**
+   * Used by {@link #clone()}, so that the first characters are not computed again for each colorized source.
+   */
+  private RegexpTokenizer(RegexpTokenizer tokenizer) {
+    this.tagBefore = tokenizer.tagBefore;
+    this.tagAfter = tokenizer.tagAfter;
+    this.matcher = tokenizer.matcher.pattern().matcher("");
+    this.firstCharacters = tokenizer.firstCharacters;
+  }
+
+  @Override
+  public boolean acceptsFirstCharacter(int character) {
+    return firstCharacters.contains(character);
   }
 
   @Override
@@ -59,6 +77,6 @@ public class RegexpTokenizer extends NotThreadSafeTokenizer{
 
   @Override
   public RegexpTokenizer clone() {
-    return new RegexpTokenizer(tagBefore, tagAfter, matcher.pattern().pattern());
+    return new RegexpTokenizer(this);
   }
 }
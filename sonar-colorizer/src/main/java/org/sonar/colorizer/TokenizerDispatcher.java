@@ -22,18 +22,54 @@ package org.sonar.colorizer;
 import org.sonar.channel.Channel;
 import org.sonar.channel.CodeReader;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class TokenizerDispatcher {
 
+  private static final int ASCII_SIZE = 128;
+
   private Channel<HtmlCodeBuilder>[] tokenizers;
 
+  /**
+   * Positions in {@link #tokenizers} of the tokenizers accepting each ASCII character, in priority order. Tokenizers are replaced by
+   * their clones before each colorization, so they are referenced by position.
+   */
+  private final int[][] tokenizersByFirstCharacter;
+
+  /**
+   * Positions of all tokenizers, tried for other characters.
+   */
+  private final int[] allTokenizers;
+
   public TokenizerDispatcher(Channel<HtmlCodeBuilder>... tokenizers) {
     this.tokenizers = tokenizers;
+    this.allTokenizers = new int[tokenizers.length];
+    this.tokenizersByFirstCharacter = new int[ASCII_SIZE][];
+    indexTokenizersByFirstCharacter();
   }
 
   public TokenizerDispatcher(List<Channel<HtmlCodeBuilder>> tokenizersArray) {
-    this.tokenizers = tokenizersArray.toArray(new Channel[tokenizersArray.size()]);
+    this(tokenizersArray.toArray(new Channel[tokenizersArray.size()]));
+  }
+
+  private void indexTokenizersByFirstCharacter() {
+    for (int i = 0; i < tokenizers.length; i++) {
+      allTokenizers[i] = i;
+    }
+    List<Integer> candidates = new ArrayList<Integer>();
+    for (int character = 0; character < ASCII_SIZE; character++) {
+      candidates.clear();
+      for (int i = 0; i < tokenizers.length; i++) {
+        if (tokenizers[i].acceptsFirstCharacter(character)) {
+          candidates.add(i);
+        }
+      }
+      tokenizersByFirstCharacter[character] = new int[candidates.size()];
+      for (int i = 0; i < candidates.size(); i++) {
+        tokenizersByFirstCharacter[character][i] = candidates.get(i);
+      }
+    }
   }
 
   public final String colorize(String code) {
@@ -46,8 +82,9 @@ public class TokenizerDispatcher {
     cloneNotThreadSafeTokenizers();
     nextChar:
     while (code.peek() != -1) {
-      for (Channel<HtmlCodeBuilder> codeTokenizer : tokenizers) {
-        if (codeTokenizer.consume(code, colorizedCode)) {
+      int nextChar = code.peek();
+      for (int position : nextChar < ASCII_SIZE ? tokenizersByFirstCharacter[nextChar] : allTokenizers) {
+        if (tokenizers[position].consume(code, colorizedCode)) {
           continue nextChar;
         }
       }
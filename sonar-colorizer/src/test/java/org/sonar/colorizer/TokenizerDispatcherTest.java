@@ -56,6 +56,29 @@ public class TokenizerDispatcherTest {
     assertThat(colorization.colorize("assert(\"message\"); //comment"), is("<k>assert</k>(<s>\"message\"</s>); <c>//comment</c>"));
   }
 
+  @Test
+  public void testOnlyCallTokenizersAcceptingNextCharacter() {
+    Tokenizer digitTokenizer = new Tokenizer() {
+
+      @Override
+      public boolean consume(CodeReader code, HtmlCodeBuilder output) {
+        if (code.peek() == '(') {
+          throw new IllegalStateException("The tokenizer must not be called on a character it does not accept.");
+        }
+        output.appendWithoutTransforming("<d>" + (char) code.pop() + "</d>");
+        return true;
+      }
+
+      @Override
+      public boolean acceptsFirstCharacter(int character) {
+        return Character.isDigit(character);
+      }
+    };
+    TokenizerDispatcher colorization = newColorizer(new LiteralTokenizer("<s>", "</s>"), digitTokenizer,
+        new KeywordsTokenizer("<k>", "</k>", JavaKeywords.get()));
+    assertThat(colorization.colorize("return (1+\"2\");"), is("<k>return</k> (<d>1</d>+<s>\"2\"</s>);"));
+  }
+
   @Test(expected = IllegalStateException.class)
   public void testCloneNotThreadSafeTokenizers() {
     NotThreadSafeTokenizer tokenizer = new NotThreadSafeTokenizer() {
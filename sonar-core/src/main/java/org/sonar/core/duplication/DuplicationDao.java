@@ -19,16 +19,28 @@
  */
 package org.sonar.core.duplication;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
 import org.sonar.api.BatchComponent;
 import org.sonar.api.ServerComponent;
 import org.sonar.core.persistence.MyBatis;
 
+import javax.annotation.Nullable;
+
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public class DuplicationDao implements BatchComponent, ServerComponent {
 
+  /**
+   * Some databases limit the number of values in the clause IN - for example Oracle allows up to 1000.
+   */
+  private static final int MAX_HASHES_PER_QUERY = 1000;
+
   private final MyBatis mybatis;
 
   public DuplicationDao(MyBatis mybatis) {
@@ -45,6 +57,45 @@ public class DuplicationDao implements BatchComponent, ServerComponent {
     }
   }
 
+  /**
+   * Streams the candidates for all the given hashes, instead of executing {@link #selectCandidates(int, Integer, String)} for each file.
+   * Hashes are requested by chunks. No more chunks are requested once the handler stops the {@link ResultContext}.
+   *
+   * @since 3.2
+   */
+  public void selectCandidates(Collection<Long> hashes, @Nullable Integer lastSnapshotId, String language, ResultHandler handler) {
+    SqlSession session = mybatis.openSession();
+    try {
+      StoppableResultHandler stoppableHandler = new StoppableResultHandler(handler);
+      for (List<Long> chunk : Lists.partition(Lists.newArrayList(hashes), MAX_HASHES_PER_QUERY)) {
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("hashes", chunk);
+        params.put("last_project_snapshot_id", lastSnapshotId);
+        params.put("language", language);
+        session.select("org.sonar.core.duplication.DuplicationMapper.selectCandidatesByHashes", params, stoppableHandler);
+        if (stoppableHandler.stopped) {
+          break;
+        }
+      }
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  private static final class StoppableResultHandler implements ResultHandler {
+    private final ResultHandler handler;
+    private boolean stopped = false;
+
+    StoppableResultHandler(ResultHandler handler) {
+      this.handler = handler;
+    }
+
+    public void handleResult(ResultContext context) {
+      handler.handleResult(context);
+      stopped = context.isStopped();
+    }
+  }
+
   /**
    * Insert rows in the table DUPLICATIONS_INDEX.
    * Note that generated ids are not returned.
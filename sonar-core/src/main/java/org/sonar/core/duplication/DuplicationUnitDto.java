@@ -27,7 +27,7 @@ public final class DuplicationUnitDto {
   private Integer snapshotId;
   private Integer projectSnapshotId;
 
-  private String hash;
+  private long hash;
   private int indexInFile;
   private int startLine;
   private int endLine;
@@ -37,7 +37,7 @@ public final class DuplicationUnitDto {
   public DuplicationUnitDto() {
   }
 
-  public DuplicationUnitDto(Integer projectSnapshotId, Integer snapshotId, String hash, Integer indexInFile, Integer startLine, Integer endLine) {
+  public DuplicationUnitDto(Integer projectSnapshotId, Integer snapshotId, long hash, Integer indexInFile, Integer startLine, Integer endLine) {
     this.projectSnapshotId = projectSnapshotId;
     this.snapshotId = snapshotId;
     this.hash = hash;
@@ -62,11 +62,11 @@ public final class DuplicationUnitDto {
     this.projectSnapshotId = projectSnapshotId;
   }
 
-  public String getHash() {
+  public long getHash() {
     return hash;
   }
 
-  public void setHash(String hash) {
+  public void setHash(long hash) {
     this.hash = hash;
   }
 
@@ -0,0 +1,187 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.core.duplication;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.utils.SonarException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encoding of the measure DUPLICATIONS_DATA. Previous versions stored an XML document, which repeats names of
+ * elements and keys of resources for each block. The compact format is prefixed by a marker and a version:
+ * <pre>
+ * MARKER d1
+ * key of resource 0
+ * key of resource 1
+ *
+ * resource,startLine,lines;resource,startLine,lines (one line per group of duplicated blocks)
+ * </pre>
+ * XML is generated only for consumers of the legacy format, see {@link #toXml(String)}.
+ *
+ * @since 3.2
+ */
+public final class DuplicationsData {
+
+  private static final char MARKER = '\u0001';
+  private static final String VERSION_1 = MARKER + "d1";
+  private static final char LINE_SEPARATOR = '\n';
+  private static final char BLOCK_SEPARATOR = ';';
+  private static final char FIELD_SEPARATOR = ',';
+
+  private final List<List<Block>> groups = Lists.newArrayList();
+
+  public static final class Block {
+    private final String resourceKey;
+    private final int startLine;
+    private final int lines;
+
+    Block(String resourceKey, int startLine, int lines) {
+      this.resourceKey = resourceKey;
+      this.startLine = startLine;
+      this.lines = lines;
+    }
+
+    public String getResourceKey() {
+      return resourceKey;
+    }
+
+    public int getStartLine() {
+      return startLine;
+    }
+
+    public int getLines() {
+      return lines;
+    }
+  }
+
+  /**
+   * Starts a new group of duplicated blocks.
+   */
+  public DuplicationsData addGroup() {
+    groups.add(Lists.<Block>newArrayList());
+    return this;
+  }
+
+  /**
+   * Adds a block to the last group.
+   */
+  public DuplicationsData addBlock(String resourceKey, int startLine, int lines) {
+    if (groups.isEmpty()) {
+      throw new IllegalStateException("A group must be added before blocks");
+    }
+    groups.get(groups.size() - 1).add(new Block(resourceKey, startLine, lines));
+    return this;
+  }
+
+  public List<List<Block>> getGroups() {
+    return Collections.unmodifiableList(groups);
+  }
+
+  public String encode() {
+    Map<String, Integer> resourceIndexes = Maps.newLinkedHashMap();
+    StringBuilder body = new StringBuilder();
+    for (List<Block> group : groups) {
+      for (int i = 0; i < group.size(); i++) {
+        Block block = group.get(i);
+        Integer resourceIndex = resourceIndexes.get(block.resourceKey);
+        if (resourceIndex == null) {
+          resourceIndex = resourceIndexes.size();
+          resourceIndexes.put(block.resourceKey, resourceIndex);
+        }
+        if (i > 0) {
+          body.append(BLOCK_SEPARATOR);
+        }
+        body.append(resourceIndex).append(FIELD_SEPARATOR).append(block.startLine).append(FIELD_SEPARATOR).append(block.lines);
+      }
+      body.append(LINE_SEPARATOR);
+    }
+
+    StringBuilder result = new StringBuilder(VERSION_1).append(LINE_SEPARATOR);
+    for (String resourceKey : resourceIndexes.keySet()) {
+      result.append(resourceKey).append(LINE_SEPARATOR);
+    }
+    return result.append(LINE_SEPARATOR).append(body).toString();
+  }
+
+  public String toXml() {
+    StringBuilder xml = new StringBuilder();
+    xml.append("<duplications>");
+    for (List<Block> group : groups) {
+      xml.append("<g>");
+      for (Block block : group) {
+        xml.append("<b s=\"").append(block.startLine)
+            .append("\" l=\"").append(block.lines)
+            .append("\" r=\"").append(block.resourceKey)
+            .append("\"/>");
+      }
+      xml.append("</g>");
+    }
+    xml.append("</duplications>");
+    return xml.toString();
+  }
+
+  public static boolean isCompact(String data) {
+    return StringUtils.startsWith(data, VERSION_1);
+  }
+
+  /**
+   * @throws SonarException if the data is not in the compact format
+   */
+  public static DuplicationsData decode(String data) {
+    if (!isCompact(data)) {
+      throw new SonarException("Duplications are not in the compact format");
+    }
+    String[] lines = StringUtils.splitPreserveAllTokens(data, LINE_SEPARATOR);
+    List<String> resourceKeys = Lists.newArrayList();
+    int index = 1;
+    while (index < lines.length && lines[index].length() > 0) {
+      resourceKeys.add(lines[index]);
+      index++;
+    }
+
+    DuplicationsData result = new DuplicationsData();
+    for (index++; index < lines.length; index++) {
+      if (lines[index].length() == 0) {
+        continue;
+      }
+      result.addGroup();
+      for (String block : StringUtils.split(lines[index], BLOCK_SEPARATOR)) {
+        String[] fields = StringUtils.split(block, FIELD_SEPARATOR);
+        result.addBlock(resourceKeys.get(Integer.parseInt(fields[0])), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Converts data to the legacy XML format. Data already in this format is returned unchanged.
+   */
+  public static String toXml(String data) {
+    if (isCompact(data)) {
+      return decode(data).toXml();
+    }
+    return data;
+  }
+}
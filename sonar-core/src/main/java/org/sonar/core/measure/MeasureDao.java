@@ -0,0 +1,59 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.core.measure;
+
+import org.apache.ibatis.session.SqlSession;
+import org.sonar.api.BatchComponent;
+import org.sonar.api.ServerComponent;
+import org.sonar.core.persistence.MyBatis;
+
+import java.util.Collection;
+
+/**
+ * @since 3.2
+ */
+public class MeasureDao implements BatchComponent, ServerComponent {
+
+  private final MyBatis mybatis;
+
+  public MeasureDao(MyBatis mybatis) {
+    this.mybatis = mybatis;
+  }
+
+  /**
+   * Insert rows in the table PROJECT_MEASURES. Statements are sent by JDBC batches, which are
+   * flushed and committed every {@link org.sonar.core.persistence.BatchSession#MAX_BATCH_SIZE} rows.
+   * Note that generated ids are not returned.
+   */
+  public void insert(Collection<MeasureDto> measures) {
+    SqlSession session = mybatis.openBatchSession();
+    try {
+      MeasureMapper mapper = session.getMapper(MeasureMapper.class);
+      for (MeasureDto measure : measures) {
+        mapper.batchInsert(measure);
+      }
+      session.commit();
+
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+}
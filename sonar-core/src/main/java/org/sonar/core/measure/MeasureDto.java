@@ -0,0 +1,210 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.core.measure;
+
+/**
+ * A simple DTO (Data Transfer Object) class that provides the mapping of data to the table PROJECT_MEASURES.
+ * Data that does not fit into the column TEXT_VALUE are stored in the table MEASURE_DATA and are not supported.
+ *
+ * @since 3.2
+ */
+public final class MeasureDto {
+
+  private Integer snapshotId;
+  private Integer metricId;
+  private Double value;
+  private String textValue;
+  private Integer tendency;
+  private Integer ruleId;
+  private Integer rulePriority;
+  private String alertStatus;
+  private String alertText;
+  private String url;
+  private String description;
+  private Integer characteristicId;
+  private Integer personId;
+  private Double variationValue1;
+  private Double variationValue2;
+  private Double variationValue3;
+  private Double variationValue4;
+  private Double variationValue5;
+
+  public Integer getSnapshotId() {
+    return snapshotId;
+  }
+
+  public MeasureDto setSnapshotId(Integer snapshotId) {
+    this.snapshotId = snapshotId;
+    return this;
+  }
+
+  public Integer getMetricId() {
+    return metricId;
+  }
+
+  public MeasureDto setMetricId(Integer metricId) {
+    this.metricId = metricId;
+    return this;
+  }
+
+  public Double getValue() {
+    return value;
+  }
+
+  public MeasureDto setValue(Double value) {
+    this.value = value;
+    return this;
+  }
+
+  public String getTextValue() {
+    return textValue;
+  }
+
+  public MeasureDto setTextValue(String textValue) {
+    this.textValue = textValue;
+    return this;
+  }
+
+  public Integer getTendency() {
+    return tendency;
+  }
+
+  public MeasureDto setTendency(Integer tendency) {
+    this.tendency = tendency;
+    return this;
+  }
+
+  public Integer getRuleId() {
+    return ruleId;
+  }
+
+  public MeasureDto setRuleId(Integer ruleId) {
+    this.ruleId = ruleId;
+    return this;
+  }
+
+  public Integer getRulePriority() {
+    return rulePriority;
+  }
+
+  public MeasureDto setRulePriority(Integer rulePriority) {
+    this.rulePriority = rulePriority;
+    return this;
+  }
+
+  public String getAlertStatus() {
+    return alertStatus;
+  }
+
+  public MeasureDto setAlertStatus(String alertStatus) {
+    this.alertStatus = alertStatus;
+    return this;
+  }
+
+  public String getAlertText() {
+    return alertText;
+  }
+
+  public MeasureDto setAlertText(String alertText) {
+    this.alertText = alertText;
+    return this;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public MeasureDto setUrl(String url) {
+    this.url = url;
+    return this;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  public MeasureDto setDescription(String description) {
+    this.description = description;
+    return this;
+  }
+
+  public Integer getCharacteristicId() {
+    return characteristicId;
+  }
+
+  public MeasureDto setCharacteristicId(Integer characteristicId) {
+    this.characteristicId = characteristicId;
+    return this;
+  }
+
+  public Integer getPersonId() {
+    return personId;
+  }
+
+  public MeasureDto setPersonId(Integer personId) {
+    this.personId = personId;
+    return this;
+  }
+
+  public Double getVariationValue1() {
+    return variationValue1;
+  }
+
+  public MeasureDto setVariationValue1(Double variationValue1) {
+    this.variationValue1 = variationValue1;
+    return this;
+  }
+
+  public Double getVariationValue2() {
+    return variationValue2;
+  }
+
+  public MeasureDto setVariationValue2(Double variationValue2) {
+    this.variationValue2 = variationValue2;
+    return this;
+  }
+
+  public Double getVariationValue3() {
+    return variationValue3;
+  }
+
+  public MeasureDto setVariationValue3(Double variationValue3) {
+    this.variationValue3 = variationValue3;
+    return this;
+  }
+
+  public Double getVariationValue4() {
+    return variationValue4;
+  }
+
+  public MeasureDto setVariationValue4(Double variationValue4) {
+    this.variationValue4 = variationValue4;
+    return this;
+  }
+
+  public Double getVariationValue5() {
+    return variationValue5;
+  }
+
+  public MeasureDto setVariationValue5(Double variationValue5) {
+    this.variationValue5 = variationValue5;
+    return this;
+  }
+}
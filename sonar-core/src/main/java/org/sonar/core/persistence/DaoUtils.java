@@ -24,6 +24,7 @@ import org.sonar.core.dashboard.ActiveDashboardDao;
 import org.sonar.core.dashboard.DashboardDao;
 import org.sonar.core.duplication.DuplicationDao;
 import org.sonar.core.filter.FilterDao;
+import org.sonar.core.measure.MeasureDao;
 import org.sonar.core.properties.PropertiesDao;
 import org.sonar.core.purge.PurgeDao;
 import org.sonar.core.resource.ResourceDao;
@@ -31,6 +32,7 @@ import org.sonar.core.resource.ResourceIndexerDao;
 import org.sonar.core.review.ReviewCommentDao;
 import org.sonar.core.review.ReviewDao;
 import org.sonar.core.rule.RuleDao;
+import org.sonar.core.source.SnapshotSourceDao;
 import org.sonar.core.template.LoadedTemplateDao;
 import org.sonar.core.user.AuthorDao;
 
@@ -50,12 +52,14 @@ public final class DaoUtils {
         DashboardDao.class,
         DuplicationDao.class,
         LoadedTemplateDao.class,
+        MeasureDao.class,
         PropertiesDao.class,
         PurgeDao.class,
         ResourceIndexerDao.class,
         ResourceDao.class,
         ReviewCommentDao.class,
         ReviewDao.class,
-        RuleDao.class);
+        RuleDao.class,
+        SnapshotSourceDao.class);
   }
 }
@@ -51,6 +51,8 @@ import org.sonar.core.filter.FilterColumnDto;
 import org.sonar.core.filter.FilterColumnMapper;
 import org.sonar.core.filter.FilterDto;
 import org.sonar.core.filter.FilterMapper;
+import org.sonar.core.measure.MeasureDto;
+import org.sonar.core.measure.MeasureMapper;
 import org.sonar.core.properties.PropertiesMapper;
 import org.sonar.core.properties.PropertyDto;
 import org.sonar.core.purge.PurgeMapper;
@@ -67,6 +69,8 @@ import org.sonar.core.review.ReviewDto;
 import org.sonar.core.review.ReviewMapper;
 import org.sonar.core.rule.RuleDto;
 import org.sonar.core.rule.RuleMapper;
+import org.sonar.core.source.SnapshotSourceDto;
+import org.sonar.core.source.SnapshotSourceMapper;
 import org.sonar.core.template.LoadedTemplateDto;
 import org.sonar.core.template.LoadedTemplateMapper;
 import org.sonar.core.user.AuthorDto;
@@ -101,6 +105,7 @@ public class MyBatis implements BatchComponent, ServerComponent {
     loadAlias(conf, "Dependency", DependencyDto.class);
     loadAlias(conf, "DuplicationUnit", DuplicationUnitDto.class);
     loadAlias(conf, "LoadedTemplate", LoadedTemplateDto.class);
+    loadAlias(conf, "Measure", MeasureDto.class);
     loadAlias(conf, "Property", PropertyDto.class);
     loadAlias(conf, "PurgeableSnapshot", PurgeableSnapshotDto.class);
     loadAlias(conf, "Review", ReviewDto.class);
@@ -110,6 +115,7 @@ public class MyBatis implements BatchComponent, ServerComponent {
     loadAlias(conf, "Rule", RuleDto.class);
     loadAlias(conf, "Snapshot", SnapshotDto.class);
     loadAlias(conf, "SchemaMigration", SchemaMigrationDto.class);
+    loadAlias(conf, "SnapshotSource", SnapshotSourceDto.class);
     loadAlias(conf, "Widget", WidgetDto.class);
     loadAlias(conf, "WidgetProperty", WidgetPropertyDto.class);
 
@@ -122,6 +128,7 @@ public class MyBatis implements BatchComponent, ServerComponent {
     loadMapper(conf, DependencyMapper.class);
     loadMapper(conf, DuplicationMapper.class);
     loadMapper(conf, LoadedTemplateMapper.class);
+    loadMapper(conf, MeasureMapper.class);
     loadMapper(conf, PropertiesMapper.class);
     loadMapper(conf, PurgeMapper.class);
     loadMapper(conf, PurgeVendorMapper.class);
@@ -131,6 +138,7 @@ public class MyBatis implements BatchComponent, ServerComponent {
     loadMapper(conf, ResourceIndexerMapper.class);
     loadMapper(conf, RuleMapper.class);
     loadMapper(conf, SchemaMigrationMapper.class);
+    loadMapper(conf, SnapshotSourceMapper.class);
     loadMapper(conf, WidgetMapper.class);
     loadMapper(conf, WidgetPropertyMapper.class);
 
@@ -0,0 +1,58 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.core.source;
+
+import org.apache.ibatis.session.SqlSession;
+import org.sonar.api.BatchComponent;
+import org.sonar.api.ServerComponent;
+import org.sonar.core.persistence.MyBatis;
+
+import java.util.Collection;
+
+/**
+ * @since 3.2
+ */
+public class SnapshotSourceDao implements BatchComponent, ServerComponent {
+
+  private final MyBatis mybatis;
+
+  public SnapshotSourceDao(MyBatis mybatis) {
+    this.mybatis = mybatis;
+  }
+
+  /**
+   * Insert rows in the table SNAPSHOT_SOURCES within a single transaction. Data are expected to be already
+   * encoded by {@link SourceCompression}.
+   */
+  public void insert(Collection<SnapshotSourceDto> sources) {
+    SqlSession session = mybatis.openBatchSession();
+    try {
+      SnapshotSourceMapper mapper = session.getMapper(SnapshotSourceMapper.class);
+      for (SnapshotSourceDto source : sources) {
+        mapper.batchInsert(source);
+      }
+      session.commit();
+
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+}
@@ -17,33 +17,31 @@
  * License along with Sonar; if not, write to the Free Software
  * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
  */
-package org.sonar.duplications.detector.suffixtree;
+package org.sonar.core.source;
 
-import java.util.ArrayList;
-import java.util.List;
-
-public abstract class AbstractText implements Text {
+/**
+ * @since 3.2
+ */
+public final class SnapshotSourceDto {
 
-  protected final List<Object> symbols;
+  private Integer snapshotId;
+  private String data;
 
-  public AbstractText(int size) {
-    this.symbols = new ArrayList<Object>(size);
+  public Integer getSnapshotId() {
+    return snapshotId;
   }
 
-  public AbstractText(List<Object> symbols) {
-    this.symbols = symbols;
+  public SnapshotSourceDto setSnapshotId(Integer snapshotId) {
+    this.snapshotId = snapshotId;
+    return this;
   }
 
-  public int length() {
-    return symbols.size();
+  public String getData() {
+    return data;
   }
 
-  public Object symbolAt(int index) {
-    return symbols.get(index);
+  public SnapshotSourceDto setData(String data) {
+    this.data = data;
+    return this;
   }
-
-  public List<Object> sequence(int fromIndex, int toIndex) {
-    return symbols.subList(fromIndex, toIndex);
-  }
-
 }
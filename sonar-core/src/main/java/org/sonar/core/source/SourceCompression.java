@@ -0,0 +1,119 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.core.source;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.utils.SonarException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encoding of the column SNAPSHOT_SOURCES.DATA. Compressed sources are stored in Base64 and prefixed by a marker
+ * which identifies the algorithm, so that rows stored as plain text by previous versions are still readable.
+ *
+ * @since 3.2
+ */
+public final class SourceCompression {
+
+  public static final String NONE = "none";
+  public static final String GZIP = "gzip";
+  public static final String DEFLATE = "deflate";
+
+  private static final char MARKER = '\u0001';
+  private static final String GZIP_PREFIX = MARKER + GZIP + ":";
+  private static final String DEFLATE_PREFIX = MARKER + DEFLATE + ":";
+  private static final String ENCODING = "UTF-8";
+
+  private SourceCompression() {
+    // only static methods
+  }
+
+  /**
+   * @param format one of {@link #NONE}, {@link #GZIP} or {@link #DEFLATE}
+   */
+  public static String compress(String source, String format) {
+    if (source == null) {
+      return null;
+    }
+    if (GZIP.equals(format)) {
+      return GZIP_PREFIX + encode(source, true);
+    }
+    if (DEFLATE.equals(format) || (NONE.equals(format) && isCompressed(source))) {
+      // a plain source must not be confused with a compressed one
+      return DEFLATE_PREFIX + encode(source, false);
+    }
+    if (NONE.equals(format)) {
+      return source;
+    }
+    throw new IllegalArgumentException("Unknown compression format: " + format);
+  }
+
+  public static String decompress(String data) {
+    if (StringUtils.startsWith(data, GZIP_PREFIX)) {
+      return decode(data.substring(GZIP_PREFIX.length()), true);
+    }
+    if (StringUtils.startsWith(data, DEFLATE_PREFIX)) {
+      return decode(data.substring(DEFLATE_PREFIX.length()), false);
+    }
+    return data;
+  }
+
+  public static boolean isCompressed(String data) {
+    return StringUtils.startsWith(data, GZIP_PREFIX) || StringUtils.startsWith(data, DEFLATE_PREFIX);
+  }
+
+  private static String encode(String source, boolean gzip) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      OutputStream output = gzip ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes);
+      output.write(source.getBytes(ENCODING));
+      output.close();
+      return new String(Base64.encodeBase64(bytes.toByteArray()), "US-ASCII");
+
+    } catch (IOException e) {
+      throw new SonarException("Fail to compress source", e);
+    }
+  }
+
+  private static String decode(String data, boolean gzip) {
+    InputStream input = null;
+    try {
+      ByteArrayInputStream bytes = new ByteArrayInputStream(Base64.decodeBase64(data.getBytes("US-ASCII")));
+      input = gzip ? new GZIPInputStream(bytes) : new InflaterInputStream(bytes);
+      return IOUtils.toString(input, ENCODING);
+
+    } catch (IOException e) {
+      throw new SonarException("Fail to decompress source", e);
+
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+}
@@ -19,6 +19,9 @@
  */
 package org.sonar.core.duplication;
 
+import com.google.common.collect.Lists;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.core.persistence.DaoTestCase;
@@ -47,7 +50,7 @@ public class DuplicationDaoTest extends DaoTestCase {
 
     DuplicationUnitDto block = blocks.get(0);
     assertThat("block resourceId", block.getResourceKey(), is("bar-last"));
-    assertThat("block hash", block.getHash(), is("aa"));
+    assertThat("block hash", block.getHash(), is(0xaaL));
     assertThat("block index in file", block.getIndexInFile(), is(0));
     assertThat("block start line", block.getStartLine(), is(1));
     assertThat("block end line", block.getEndLine(), is(2));
@@ -57,11 +60,53 @@ public class DuplicationDaoTest extends DaoTestCase {
     assertThat(blocks.size(), is(2));
   }
 
+  @Test
+  public void shouldStreamCandidatesByHashes() throws Exception {
+    setupData("shouldGetByHash");
+
+    CollectingHandler handler = new CollectingHandler(false);
+    dao.selectCandidates(Arrays.asList(0xaaL, 0xbbL, 0xccL), 7, "java", handler);
+    assertThat(handler.units.size(), is(1));
+
+    DuplicationUnitDto block = handler.units.get(0);
+    assertThat("block resourceId", block.getResourceKey(), is("bar-last"));
+    assertThat("block hash", block.getHash(), is(0xaaL));
+    assertThat("block index in file", block.getIndexInFile(), is(0));
+    assertThat("block start line", block.getStartLine(), is(1));
+    assertThat("block end line", block.getEndLine(), is(2));
+
+    // check null for lastSnapshotId
+    handler = new CollectingHandler(false);
+    dao.selectCandidates(Arrays.asList(0xaaL, 0xbbL), null, "java", handler);
+    assertThat(handler.units.size(), is(2));
+
+    // check that no more results are requested when stopped
+    handler = new CollectingHandler(true);
+    dao.selectCandidates(Arrays.asList(0xaaL, 0xbbL), null, "java", handler);
+    assertThat(handler.units.size(), is(1));
+  }
+
+  private static class CollectingHandler implements ResultHandler {
+    private final boolean stop;
+    private final List<DuplicationUnitDto> units = Lists.newArrayList();
+
+    CollectingHandler(boolean stop) {
+      this.stop = stop;
+    }
+
+    public void handleResult(ResultContext context) {
+      units.add((DuplicationUnitDto) context.getResultObject());
+      if (stop) {
+        context.stop();
+      }
+    }
+  }
+
   @Test
   public void shouldInsert() throws Exception {
     setupData("shouldInsert");
 
-    dao.insert(Arrays.asList(new DuplicationUnitDto(1, 2, "bb", 0, 1, 2)));
+    dao.insert(Arrays.asList(new DuplicationUnitDto(1, 2, 0xbbL, 0, 1, 2)));
 
     checkTables("shouldInsert", "duplications_index");
   }
@@ -0,0 +1,87 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.core.duplication;
+
+import org.junit.Test;
+import org.sonar.api.utils.SonarException;
+
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DuplicationsDataTest {
+
+  private static final String XML = "<duplications>"
+    + "<g><b s=\"5\" l=\"200\" r=\"foo:Bar\"/><b s=\"15\" l=\"200\" r=\"foo:Baz\"/></g>"
+    + "<g><b s=\"215\" l=\"10\" r=\"foo:Bar\"/><b s=\"300\" l=\"10\" r=\"foo:Bar\"/></g>"
+    + "</duplications>";
+
+  private DuplicationsData createData() {
+    return new DuplicationsData()
+      .addGroup().addBlock("foo:Bar", 5, 200).addBlock("foo:Baz", 15, 200)
+      .addGroup().addBlock("foo:Bar", 215, 10).addBlock("foo:Bar", 300, 10);
+  }
+
+  @Test
+  public void shouldEncodeAndDecode() {
+    String data = createData().encode();
+
+    assertThat(DuplicationsData.isCompact(data)).isTrue();
+    List<List<DuplicationsData.Block>> groups = DuplicationsData.decode(data).getGroups();
+    assertThat(groups).hasSize(2);
+    assertThat(groups.get(0)).hasSize(2);
+    DuplicationsData.Block block = groups.get(0).get(1);
+    assertThat(block.getResourceKey()).isEqualTo("foo:Baz");
+    assertThat(block.getStartLine()).isEqualTo(15);
+    assertThat(block.getLines()).isEqualTo(200);
+    assertThat(groups.get(1).get(1).getResourceKey()).isEqualTo("foo:Bar");
+  }
+
+  @Test
+  public void shouldStoreKeysOfResourcesOnce() {
+    String data = createData().encode();
+
+    assertThat(data).isEqualTo("\u0001d1\nfoo:Bar\nfoo:Baz\n\n0,5,200;1,15,200\n0,215,10;0,300,10\n");
+    assertThat(data.length()).isLessThan(XML.length() / 2);
+  }
+
+  @Test
+  public void shouldConvertToLegacyXml() {
+    assertThat(createData().toXml()).isEqualTo(XML);
+    assertThat(DuplicationsData.toXml(createData().encode())).isEqualTo(XML);
+  }
+
+  @Test
+  public void shouldNotConvertLegacyXml() {
+    assertThat(DuplicationsData.isCompact(XML)).isFalse();
+    assertThat(DuplicationsData.toXml(XML)).isEqualTo(XML);
+    assertThat(DuplicationsData.toXml(null)).isNull();
+  }
+
+  @Test
+  public void shouldEncodeNoGroups() {
+    assertThat(DuplicationsData.decode(new DuplicationsData().encode()).getGroups()).isEmpty();
+  }
+
+  @Test(expected = SonarException.class)
+  public void shouldFailToDecodeLegacyXml() {
+    DuplicationsData.decode(XML);
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.core.measure;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.core.persistence.DaoTestCase;
+
+import java.util.Arrays;
+
+public class MeasureDaoTest extends DaoTestCase {
+
+  private MeasureDao dao;
+
+  @Before
+  public void createDao() {
+    dao = new MeasureDao(getMyBatis());
+  }
+
+  @Test
+  public void shouldInsert() {
+    setupData("shouldInsert");
+
+    dao.insert(Arrays.asList(
+        new MeasureDto().setSnapshotId(2).setMetricId(1).setValue(12.5).setVariationValue1(-3.0),
+        new MeasureDto().setSnapshotId(2).setMetricId(2).setTextValue("OK").setAlertStatus("OK").setAlertText("text"),
+        new MeasureDto().setSnapshotId(2).setMetricId(3).setValue(5.0).setRuleId(30).setRulePriority(2)));
+
+    checkTables("shouldInsert", new String[]{"id"}, "project_measures");
+  }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.core.source;
+
+import org.junit.Test;
+import org.sonar.core.persistence.DaoTestCase;
+
+import java.util.Arrays;
+
+public class SnapshotSourceDaoTest extends DaoTestCase {
+
+  @Test
+  public void shouldInsert() {
+    setupData("shouldInsert");
+    SnapshotSourceDao dao = new SnapshotSourceDao(getMyBatis());
+
+    dao.insert(Arrays.asList(
+        new SnapshotSourceDto().setSnapshotId(2).setData("class Foo {}"),
+        new SnapshotSourceDto().setSnapshotId(3).setData("class Bar {}")));
+
+    checkTables("shouldInsert", new String[]{"id"}, "snapshot_sources");
+  }
+
+}
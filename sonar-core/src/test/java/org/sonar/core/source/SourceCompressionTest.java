@@ -0,0 +1,73 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.core.source;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SourceCompressionTest {
+
+  private static final String SOURCE = "package foo;\n\npublic class Foo {\n  // café\n}\n";
+
+  @Test
+  public void shouldNotCompress() {
+    assertThat(SourceCompression.compress(SOURCE, SourceCompression.NONE)).isEqualTo(SOURCE);
+    assertThat(SourceCompression.compress(null, SourceCompression.GZIP)).isNull();
+  }
+
+  @Test
+  public void shouldCompressWithGzip() {
+    String data = SourceCompression.compress(SOURCE, SourceCompression.GZIP);
+
+    assertThat(SourceCompression.isCompressed(data)).isTrue();
+    assertThat(SourceCompression.decompress(data)).isEqualTo(SOURCE);
+  }
+
+  @Test
+  public void shouldCompressWithDeflate() {
+    String data = SourceCompression.compress(SOURCE, SourceCompression.DEFLATE);
+
+    assertThat(SourceCompression.isCompressed(data)).isTrue();
+    assertThat(SourceCompression.decompress(data)).isEqualTo(SOURCE);
+  }
+
+  @Test
+  public void shouldReadPlainSources() {
+    assertThat(SourceCompression.isCompressed(SOURCE)).isFalse();
+    assertThat(SourceCompression.decompress(SOURCE)).isEqualTo(SOURCE);
+    assertThat(SourceCompression.decompress(null)).isNull();
+  }
+
+  @Test
+  public void shouldNotConfuseSourceStartingWithMarker() {
+    String source = SourceCompression.compress(SOURCE, SourceCompression.GZIP);
+
+    String data = SourceCompression.compress(source, SourceCompression.NONE);
+
+    assertThat(data).isNotEqualTo(source);
+    assertThat(SourceCompression.decompress(data)).isEqualTo(source);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldFailIfUnknownFormat() {
+    SourceCompression.compress(SOURCE, "zip");
+  }
+}
@@ -30,16 +30,19 @@ import java.util.List;
  * Hash value computed using
  * <a href="http://en.wikipedia.org/wiki/Rolling_hash#Rabin-Karp_rolling_hash">Rabin-Karp rolling hash</a> :
  * <blockquote><pre>
- * s[0]*31^(blockSize-1) + s[1]*31^(blockSize-2) + ... + s[blockSize-1]
+ * s[0]*B^(blockSize-1) + s[1]*B^(blockSize-2) + ... + s[blockSize-1]
  * </pre></blockquote>
- * using <code>long</code> arithmetic, where <code>s[i]</code>
- * is the hash code of <code>String</code> (which is cached) for statement with number i.
+ * using <code>long</code> arithmetic, where <code>B</code> is a large odd constant and <code>s[i]</code>
+ * is the {@link Statement#getValueHash() 64-bits hash} (computed once at creation of statement) for statement with number i.
  * Thus running time - O(N), where N - number of statements.
  * Implementation fully thread-safe.
  */
 public class BlockChunker {
 
-  private static final long PRIME_BASE = 31;
+  /**
+   * Odd constant with well-distributed bits (fractional part of the golden ratio), so that all bits of statement hashes are mixed.
+   */
+  private static final long BASE = 0x9e3779b97f4a7c15L;
 
   private final int blockSize;
   private final long power;
@@ -49,7 +52,7 @@ public class BlockChunker {
 
     long pow = 1;
     for (int i = 0; i < blockSize - 1; i++) {
-      pow = pow * PRIME_BASE;
+      pow = pow * BASE;
     }
     this.power = pow;
   }
@@ -64,14 +67,14 @@ public class BlockChunker {
     int first = 0;
     int last = 0;
     for (; last < blockSize - 1; last++) {
-      hash = hash * PRIME_BASE + statementsArr[last].getValue().hashCode();
+      hash = hash * BASE + statementsArr[last].getValueHash();
     }
     Block.Builder blockBuilder = Block.builder().setResourceId(resourceId);
     for (; last < statementsArr.length; last++, first++) {
       Statement firstStatement = statementsArr[first];
       Statement lastStatement = statementsArr[last];
       // add last statement to hash
-      hash = hash * PRIME_BASE + lastStatement.getValue().hashCode();
+      hash = hash * BASE + lastStatement.getValueHash();
       // create block
       Block block = blockBuilder.setBlockHash(new ByteArray(hash))
           .setIndexInFile(first)
@@ -79,7 +82,7 @@ public class BlockChunker {
           .build();
       blocks.add(block);
       // remove first statement from hash
-      hash -= power * firstStatement.getValue().hashCode();
+      hash -= power * firstStatement.getValueHash();
     }
     return blocks;
   }
@@ -90,6 +90,22 @@ public final class ByteArray {
     return result;
   }
 
+  /**
+   * Reverse of {@link #ByteArray(long)}.
+   *
+   * @throws IllegalStateException if size of this array is not 8 bytes
+   */
+  public long toLong() {
+    if (bytes.length != 8) {
+      throw new IllegalStateException("Expected 8 bytes, but got " + bytes.length);
+    }
+    long result = 0;
+    for (byte b : bytes) {
+      result = (result << 8) | (b & 0xFF);
+    }
+    return result;
+  }
+
   private static final String HEXES = "0123456789abcdef";
 
   public String toHexString() {
@@ -41,7 +41,12 @@ public class DuplicationsCollector extends Search.Collector {
 
   private int length;
   private int count;
-  private int[][] blockNumbers;
+
+  /**
+   * Numbers of first and last blocks of parts, reused between groups.
+   */
+  private int[] firstBlockNumbers = new int[0];
+  private int[] lastBlockNumbers = new int[0];
 
   public DuplicationsCollector(TextSet text) {
     this.text = text;
@@ -57,7 +62,10 @@ public class DuplicationsCollector extends Search.Collector {
 
   @Override
   public void startOfGroup(int size, int length) {
-    this.blockNumbers = new int[size][2];
+    if (firstBlockNumbers.length < size) {
+      firstBlockNumbers = new int[size];
+      lastBlockNumbers = new int[size];
+    }
     this.length = length;
   }
 
@@ -70,8 +78,8 @@ public class DuplicationsCollector extends Search.Collector {
    */
   @Override
   public void part(int start, int end) {
-    blockNumbers[count][0] = start;
-    blockNumbers[count][1] = end - 1;
+    firstBlockNumbers[count] = start;
+    lastBlockNumbers[count] = end - 1;
     count++;
   }
 
@@ -85,9 +93,9 @@ public class DuplicationsCollector extends Search.Collector {
     CloneGroup.Builder builder = CloneGroup.builder().setLength(length);
 
     List<ClonePart> parts = Lists.newArrayListWithCapacity(count);
-    for (int[] b : blockNumbers) {
-      Block firstBlock = text.getBlock(b[0]);
-      Block lastBlock = text.getBlock(b[1]);
+    for (int i = 0; i < count; i++) {
+      Block firstBlock = text.getBlock(firstBlockNumbers[i]);
+      Block lastBlock = text.getBlock(lastBlockNumbers[i]);
       ClonePart part = new ClonePart(
           firstBlock.getResourceId(),
           firstBlock.getIndexInFile(),
@@ -120,7 +128,6 @@ public class DuplicationsCollector extends Search.Collector {
    * Prepare for processing of next duplication.
    */
   private void reset() {
-    blockNumbers = null;
     count = 0;
   }
 
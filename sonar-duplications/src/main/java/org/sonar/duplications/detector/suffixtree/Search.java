@@ -19,78 +19,149 @@
  */
 package org.sonar.duplications.detector.suffixtree;
 
-import com.google.common.collect.Lists;
-
-import java.util.*;
+import java.util.Arrays;
 
+/**
+ * Visits inner nodes of suffix tree in descending order of depth.
+ * <p>
+ * Suffix tree and work arrays are kept by each thread and reused for next texts, so that search does not allocate objects per node.
+ * </p>
+ */
 public final class Search {
 
-  private final SuffixTree tree;
-  private final TextSet text;
-  private final Collector reporter;
+  private static final ThreadLocal<Search> INSTANCES = new ThreadLocal<Search>() {
+    @Override
+    protected Search initialValue() {
+      return new Search();
+    }
+  };
 
-  private final List<Integer> list = Lists.newArrayList();
-  private final List<Node> innerNodes = Lists.newArrayList();
+  private final SuffixTree tree = new SuffixTree();
+  private TextSet text;
+  private Collector reporter;
+
+  // attributes of nodes
+  private int[] depth = new int[0];
+  private int[] startSize = new int[0];
+  private int[] endSize = new int[0];
+
+  /**
+   * Depths of leaves in order of visiting.
+   */
+  private int[] list = new int[0];
+  private int listSize;
+
+  private int[] innerNodes = new int[0];
+  private int innerNodesCount;
+
+  private int[] stack = new int[0];
+  private int[] counts = new int[0];
+  private int[] sorted = new int[0];
 
   public static void perform(TextSet text, Collector reporter) {
-    new Search(SuffixTree.create(text), text, reporter).compute();
+    Search search = INSTANCES.get();
+    search.text = text;
+    search.reporter = reporter;
+    try {
+      search.compute();
+    } finally {
+      search.text = null;
+      search.reporter = null;
+    }
   }
 
-  private Search(SuffixTree tree, TextSet text, Collector reporter) {
-    this.tree = tree;
-    this.text = text;
-    this.reporter = reporter;
+  private Search() {
   }
 
   private void compute() {
+    // O(N)
+    tree.build(text);
+    ensureCapacity(tree.getNodesCount());
+
     // O(N)
     dfs();
 
-    // O(N * log(N))
-    Collections.sort(innerNodes, DEPTH_COMPARATOR);
+    // O(N)
+    sortInnerNodesByDepth();
 
     // O(N)
     visitInnerNodes();
   }
 
-  private static final Comparator<Node> DEPTH_COMPARATOR = new Comparator<Node>() {
-    public int compare(Node o1, Node o2) {
-      return o2.depth - o1.depth;
+  private void ensureCapacity(int nodes) {
+    if (depth.length < nodes) {
+      depth = new int[nodes];
+      startSize = new int[nodes];
+      endSize = new int[nodes];
+      list = new int[nodes];
+      innerNodes = new int[nodes];
+      stack = new int[nodes];
+      sorted = new int[nodes];
     }
-  };
+    if (counts.length < text.length() + 1) {
+      counts = new int[text.length() + 1];
+    }
+  }
 
   /**
    * Depth-first search (DFS).
    */
   private void dfs() {
-    LinkedList<Node> stack = Lists.newLinkedList();
-    stack.add(tree.getRootNode());
-    while (!stack.isEmpty()) {
-      Node node = stack.removeLast();
-      node.startSize = list.size();
-      if (node.getEdges().isEmpty()) { // leaf
-        list.add(node.depth);
-        node.endSize = list.size();
+    listSize = 0;
+    innerNodesCount = 0;
+    int root = tree.getRootNode();
+    int stackSize = 0;
+    depth[root] = 0;
+    stack[stackSize++] = root;
+    while (stackSize > 0) {
+      int node = stack[--stackSize];
+      startSize[node] = listSize;
+      if (tree.getFirstEdge(node) == SuffixTree.NONE) { // leaf
+        list[listSize++] = depth[node];
+        endSize[node] = listSize;
       } else {
-        if (!node.equals(tree.getRootNode())) { // inner node = not leaf and not root
-          innerNodes.add(node);
+        if (node != root) { // inner node = not leaf and not root
+          innerNodes[innerNodesCount++] = node;
         }
-        for (Edge edge : node.getEdges()) {
-          Node endNode = edge.getEndNode();
-          endNode.depth = node.depth + edge.getSpan() + 1;
-          stack.addLast(endNode);
+        for (int edge = tree.getFirstEdge(node); edge != SuffixTree.NONE; edge = tree.getNextEdge(edge)) {
+          int endNode = tree.getEndNode(edge);
+          depth[endNode] = depth[node] + tree.getSpan(edge) + 1;
+          stack[stackSize++] = endNode;
         }
       }
     }
     // At this point all inner nodes are ordered by the time of entering, so we visit them from last to first
-    ListIterator<Node> iterator = innerNodes.listIterator(innerNodes.size());
-    while (iterator.hasPrevious()) {
-      Node node = iterator.previous();
+    for (int i = innerNodesCount - 1; i >= 0; i--) {
+      int node = innerNodes[i];
       int max = -1;
-      for (Edge edge : node.getEdges()) {
-        max = Math.max(edge.getEndNode().endSize, max);
+      for (int edge = tree.getFirstEdge(node); edge != SuffixTree.NONE; edge = tree.getNextEdge(edge)) {
+        max = Math.max(endSize[tree.getEndNode(edge)], max);
       }
-      node.endSize = max;
+      endSize[node] = max;
+    }
+  }
+
+  /**
+   * Stable counting sort in descending order of depth, which can't be greater than length of text.
+   */
+  private void sortInnerNodesByDepth() {
+    int maxDepth = 0;
+    for (int i = 0; i < innerNodesCount; i++) {
+      maxDepth = Math.max(maxDepth, depth[innerNodes[i]]);
+    }
+    Arrays.fill(counts, 0, maxDepth + 1, 0);
+    for (int i = 0; i < innerNodesCount; i++) {
+      counts[maxDepth - depth[innerNodes[i]]]++;
+    }
+    int position = 0;
+    for (int d = 0; d <= maxDepth; d++) {
+      int count = counts[d];
+      counts[d] = position;
+      position += count;
+    }
+    for (int i = 0; i < innerNodesCount; i++) {
+      int node = innerNodes[i];
+      sorted[counts[maxDepth - depth[node]]++] = node;
     }
   }
 
@@ -98,7 +169,8 @@ public final class Search {
    * Each inner-node represents prefix of some suffixes, thus substring of text.
    */
   private void visitInnerNodes() {
-    for (Node node : innerNodes) {
+    for (int i = 0; i < innerNodesCount; i++) {
+      int node = sorted[i];
       if (containsOrigin(node)) {
         report(node);
       }
@@ -106,15 +178,15 @@ public final class Search {
   }
 
   /**
-   * TODO Godin: in fact computations here are the same as in {@link #report(Node)},
+   * TODO Godin: in fact computations here are the same as in {@link #report(int)},
    * so maybe would be better to remove this duplication,
    * however it should be noted that this check can't be done in {@link Collector#endOfGroup()},
    * because it might lead to creation of unnecessary new objects
    */
-  private boolean containsOrigin(Node node) {
-    for (int i = node.startSize; i < node.endSize; i++) {
-      int start = tree.text.length() - list.get(i);
-      int end = start + node.depth;
+  private boolean containsOrigin(int node) {
+    for (int i = startSize[node]; i < endSize[node]; i++) {
+      int start = text.length() - list[i];
+      int end = start + depth[node];
       if (text.isInsideOrigin(end)) {
         return true;
       }
@@ -122,11 +194,11 @@ public final class Search {
     return false;
   }
 
-  private void report(Node node) {
-    reporter.startOfGroup(node.endSize - node.startSize, node.depth);
-    for (int i = node.startSize; i < node.endSize; i++) {
-      int start = tree.text.length() - list.get(i);
-      int end = start + node.depth;
+  private void report(int node) {
+    reporter.startOfGroup(endSize[node] - startSize[node], depth[node]);
+    for (int i = startSize[node]; i < endSize[node]; i++) {
+      int start = text.length() - list[i];
+      int end = start + depth[node];
       reporter.part(start, end);
     }
     reporter.endOfGroup();
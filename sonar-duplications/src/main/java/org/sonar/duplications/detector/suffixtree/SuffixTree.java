@@ -19,7 +19,7 @@
  */
 package org.sonar.duplications.detector.suffixtree;
 
-import com.google.common.base.Objects;
+import java.util.Arrays;
 
 /**
  * Provides algorithm to construct suffix tree.
@@ -39,86 +39,265 @@ import com.google.common.base.Objects;
  * </p><p>
  * This implementation was adapted from <a href="http://illya-keeplearning.blogspot.com/search/label/suffix%20tree">Java-port</a> of
  * <a href="http://marknelson.us/1996/08/01/suffix-trees/">Mark Nelson's C++ implementation of Ukkonen's algorithm</a>.
+ * </p><p>
+ * Nodes and edges are identified by numbers and stored in arrays of primitives, which can be reused to build trees of other texts
+ * (see {@link #build(Text)}), so that construction does not allocate objects per node. Root is node number 0.
+ * Edges are found by start node and first symbol in an open-addressing hash table, children of a node are linked through {@link #getNextEdge(int)}.
  * </p>
  */
 public final class SuffixTree {
 
-  final Text text;
+  public static final int NONE = -1;
+
+  private static final int ROOT = 0;
+
+  Text text;
+  private int length;
+
+  // nodes
+  private int nodesCount;
+  private int[] suffixNode = new int[0];
+  private int[] firstEdge = new int[0];
+
+  // edges
+  private int edgesCount;
+  private int[] beginIndex = new int[0];
+  private int[] endIndex = new int[0];
+  private int[] endNode = new int[0];
+  private int[] nextEdge = new int[0];
+
+  // edges by start node and first symbol, value is number of edge plus one, so that zero means empty slot
+  private long[] tableKeys = new long[0];
+  private int[] tableValues = new int[0];
+  private int tableMask;
 
-  private final Node root;
+  // active point
+  private int activeNode;
+  private int activeBeginIndex;
+  private int activeEndIndex;
 
   public static SuffixTree create(Text text) {
-    SuffixTree tree = new SuffixTree(text);
-    Suffix active = new Suffix(tree.root, 0, -1);
-    for (int i = 0; i < text.length(); i++) {
-      tree.addPrefix(active, i);
-    }
+    SuffixTree tree = new SuffixTree();
+    tree.build(text);
     return tree;
   }
 
-  private SuffixTree(Text text) {
+  /**
+   * Builds tree for given text, reusing arrays of previous one.
+   */
+  void build(Text text) {
     this.text = text;
-    root = new Node(this, null);
+    this.length = text.length();
+    ensureCapacity(length);
+    nodesCount = 0;
+    edgesCount = 0;
+    Arrays.fill(tableValues, 0, tableMask + 1, 0);
+    newNode();
+
+    activeNode = ROOT;
+    activeBeginIndex = 0;
+    activeEndIndex = -1;
+    for (int i = 0; i < length; i++) {
+      addPrefix(i);
+    }
+  }
+
+  /**
+   * There are at most 2n nodes and 2n - 1 edges, where n is length of text.
+   */
+  private void ensureCapacity(int n) {
+    int capacity = 2 * n + 1;
+    if (suffixNode.length < capacity) {
+      suffixNode = new int[capacity];
+      firstEdge = new int[capacity];
+      beginIndex = new int[capacity];
+      endIndex = new int[capacity];
+      endNode = new int[capacity];
+      nextEdge = new int[capacity];
+    }
+    int tableSize = Integer.highestOneBit(Math.max(2 * capacity - 1, 1)) << 1;
+    if (tableKeys.length < tableSize) {
+      tableKeys = new long[tableSize];
+      tableValues = new int[tableSize];
+    }
+    tableMask = tableSize - 1;
   }
 
-  private void addPrefix(Suffix active, int endIndex) {
-    Node lastParentNode = null;
-    Node parentNode;
+  private void addPrefix(int end) {
+    int lastParentNode = NONE;
+    int parentNode;
 
     while (true) {
-      Edge edge;
-      parentNode = active.getOriginNode();
+      int edge;
+      parentNode = activeNode;
 
       // Step 1 is to try and find a matching edge for the given node.
       // If a matching edge exists, we are done adding edges, so we break out of this big loop.
-      if (active.isExplicit()) {
-        edge = active.getOriginNode().findEdge(symbolAt(endIndex));
-        if (edge != null) {
+      if (activeBeginIndex > activeEndIndex) {
+        edge = findEdge(activeNode, symbolAt(end));
+        if (edge != NONE) {
           break;
         }
       } else {
         // implicit node, a little more complicated
-        edge = active.getOriginNode().findEdge(symbolAt(active.getBeginIndex()));
-        int span = active.getSpan();
-        if (Objects.equal(symbolAt(edge.getBeginIndex() + span + 1), symbolAt(endIndex))) {
+        edge = findEdge(activeNode, symbolAt(activeBeginIndex));
+        int span = activeEndIndex - activeBeginIndex;
+        if (symbolAt(beginIndex[edge] + span + 1) == symbolAt(end)) {
           break;
         }
-        parentNode = edge.splitEdge(active);
+        parentNode = splitEdge(edge, span);
       }
 
       // We didn't find a matching edge, so we create a new one, add it to the tree at the parent node position,
       // and insert it into the hash table. When we create a new node, it also means we need to create
       // a suffix link to the new node from the last node we visited.
-      Edge newEdge = new Edge(endIndex, text.length() - 1, parentNode);
-      newEdge.insert();
+      addEdge(parentNode, end, length - 1, newNode());
       updateSuffixNode(lastParentNode, parentNode);
       lastParentNode = parentNode;
 
       // This final step is where we move to the next smaller suffix
-      if (active.getOriginNode() == root) {
-        active.incBeginIndex();
+      if (activeNode == ROOT) {
+        activeBeginIndex++;
       } else {
-        active.changeOriginNode();
+        activeNode = suffixNode[activeNode];
       }
-      active.canonize();
+      canonize();
     }
     updateSuffixNode(lastParentNode, parentNode);
-    active.incEndIndex(); // Now the endpoint is the next active point
-    active.canonize();
+    activeEndIndex++; // Now the endpoint is the next active point
+    canonize();
+  }
+
+  private void canonize() {
+    if (activeBeginIndex <= activeEndIndex) {
+      int edge = findEdge(activeNode, symbolAt(activeBeginIndex));
+      int edgeSpan = getSpan(edge);
+      while (edgeSpan <= activeEndIndex - activeBeginIndex) {
+        activeBeginIndex += edgeSpan + 1;
+        activeNode = endNode[edge];
+        if (activeBeginIndex <= activeEndIndex) {
+          edge = findEdge(activeNode, symbolAt(activeBeginIndex));
+          edgeSpan = getSpan(edge);
+        }
+      }
+    }
+  }
+
+  /**
+   * Splits edge after given number of symbols. Upper part keeps number of edge, so that it stays in the hash table,
+   * lower part becomes new edge.
+   *
+   * @return node between two parts
+   */
+  private int splitEdge(int edge, int span) {
+    int node = newNode();
+    suffixNode[node] = activeNode;
+    addEdge(node, beginIndex[edge] + span + 1, endIndex[edge], endNode[edge]);
+    endIndex[edge] = beginIndex[edge] + span;
+    endNode[edge] = node;
+    return node;
+  }
+
+  private void updateSuffixNode(int node, int suffix) {
+    if (node != NONE && node != ROOT) {
+      suffixNode[node] = suffix;
+    }
+  }
+
+  private int newNode() {
+    int node = nodesCount++;
+    suffixNode[node] = NONE;
+    firstEdge[node] = NONE;
+    return node;
+  }
+
+  private void addEdge(int startNode, int begin, int end, int targetNode) {
+    int edge = edgesCount++;
+    beginIndex[edge] = begin;
+    endIndex[edge] = end;
+    endNode[edge] = targetNode;
+    nextEdge[edge] = firstEdge[startNode];
+    firstEdge[startNode] = edge;
+
+    long key = key(startNode, symbolAt(begin));
+    int slot = slot(key);
+    while (tableValues[slot] != 0) {
+      slot = (slot + 1) & tableMask;
+    }
+    tableKeys[slot] = key;
+    tableValues[slot] = edge + 1;
   }
 
-  private void updateSuffixNode(Node node, Node suffixNode) {
-    if ((node != null) && (!node.equals(root))) {
-      node.setSuffixNode(suffixNode);
+  /**
+   * @return number of edge, which starts from given node with given symbol, or {@link #NONE}
+   */
+  public int findEdge(int node, int symbol) {
+    long key = key(node, symbol);
+    int slot = slot(key);
+    while (tableValues[slot] != 0) {
+      if (tableKeys[slot] == key) {
+        return tableValues[slot] - 1;
+      }
+      slot = (slot + 1) & tableMask;
     }
+    return NONE;
   }
 
-  public Object symbolAt(int index) {
+  private static long key(int node, int symbol) {
+    return ((long) node << 32) | (symbol & 0xFFFFFFFFL);
+  }
+
+  private int slot(long key) {
+    long h = key * 0x9e3779b97f4a7c15L;
+    return (int) (h ^ (h >>> 32)) & tableMask;
+  }
+
+  public int symbolAt(int index) {
     return text.symbolAt(index);
   }
 
-  public Node getRootNode() {
-    return root;
+  public int getRootNode() {
+    return ROOT;
+  }
+
+  /**
+   * @return number of nodes, which are numbered from 0
+   */
+  public int getNodesCount() {
+    return nodesCount;
+  }
+
+  /**
+   * @return first edge, which starts from given node, or {@link #NONE} for leaf
+   */
+  public int getFirstEdge(int node) {
+    return firstEdge[node];
+  }
+
+  /**
+   * @return next edge, which starts from the same node as given one, or {@link #NONE}
+   */
+  public int getNextEdge(int edge) {
+    return nextEdge[edge];
+  }
+
+  public int getBeginIndex(int edge) {
+    return beginIndex[edge];
+  }
+
+  public int getEndIndex(int edge) {
+    return endIndex[edge];
+  }
+
+  public int getEndNode(int edge) {
+    return endNode[edge];
+  }
+
+  /**
+   * @return length of given edge in symbols minus one
+   */
+  public int getSpan(int edge) {
+    return endIndex[edge] - beginIndex[edge];
   }
 
 }
@@ -19,10 +19,8 @@
  */
 package org.sonar.duplications.detector.suffixtree;
 
-import java.util.List;
-
 /**
- * Represents text.
+ * Represents text as a sequence of symbols, which are compared by value.
  */
 public interface Text {
 
@@ -34,8 +32,6 @@ public interface Text {
   /**
    * @return symbol at the specified index
    */
-  Object symbolAt(int index);
-
-  List<Object> sequence(int fromIndex, int toIndex);
+  int symbolAt(int index);
 
 }
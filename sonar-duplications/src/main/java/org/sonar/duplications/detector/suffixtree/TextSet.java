@@ -19,37 +19,68 @@
  */
 package org.sonar.duplications.detector.suffixtree;
 
-import java.util.List;
-
+import com.google.common.collect.Maps;
 import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
 
-import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Simplifies construction of <a href="http://en.wikipedia.org/wiki/Generalised_suffix_tree">generalised suffix-tree</a>.
+ * <p>
+ * Each distinct hash of blocks is represented by a non-negative number, and each sequence of blocks is followed by
+ * a distinct negative number, which plays role of terminator.
+ * </p>
  */
-public final class TextSet extends AbstractText {
+public final class TextSet implements Text {
 
   public static final class Builder {
 
-    private List<Object> symbols = Lists.newArrayList();
-    private Integer lengthOfOrigin;
+    private final Map<ByteArray, Integer> ids = Maps.newHashMap();
+    private int[] symbols = new int[16];
+    private Block[] blocks = new Block[16];
+    private int size;
+    private int lengthOfOrigin = -1;
     private int count;
 
     private Builder() {
     }
 
     public void add(List<Block> list) {
-      symbols.addAll(list);
-      symbols.add(new Terminator(count));
+      ensureCapacity(size + list.size() + 1);
+      for (Block block : list) {
+        Integer id = ids.get(block.getBlockHash());
+        if (id == null) {
+          id = ids.size();
+          ids.put(block.getBlockHash(), id);
+        }
+        symbols[size] = id;
+        blocks[size] = block;
+        size++;
+      }
       count++;
-      if (lengthOfOrigin == null) {
-        lengthOfOrigin = symbols.size();
+      symbols[size] = -count;
+      size++;
+      if (lengthOfOrigin == -1) {
+        lengthOfOrigin = size;
+      }
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (symbols.length < capacity) {
+        int newCapacity = Math.max(capacity, symbols.length * 2);
+        int[] newSymbols = new int[newCapacity];
+        System.arraycopy(symbols, 0, newSymbols, 0, size);
+        symbols = newSymbols;
+        Block[] newBlocks = new Block[newCapacity];
+        System.arraycopy(blocks, 0, newBlocks, 0, size);
+        blocks = newBlocks;
       }
     }
 
     public TextSet build() {
-      return new TextSet(symbols, lengthOfOrigin);
+      return new TextSet(symbols, blocks, size, lengthOfOrigin);
     }
 
   }
@@ -58,57 +89,35 @@ public final class TextSet extends AbstractText {
     return new Builder();
   }
 
+  private final int[] symbols;
+  private final Block[] blocks;
+  private final int length;
   private final int lengthOfOrigin;
 
-  private TextSet(List<Object> symbols, int lengthOfOrigin) {
-    super(symbols);
+  private TextSet(int[] symbols, Block[] blocks, int length, int lengthOfOrigin) {
+    this.symbols = symbols;
+    this.blocks = blocks;
+    this.length = length;
     this.lengthOfOrigin = lengthOfOrigin;
   }
 
-  public boolean isInsideOrigin(int pos) {
-    return pos < lengthOfOrigin;
+  public int length() {
+    return length;
   }
 
-  @Override
-  public Object symbolAt(int index) {
-    Object obj = super.symbolAt(index);
-    if (obj instanceof Block) {
-      return ((Block) obj).getBlockHash();
-    }
-    return obj;
+  public int symbolAt(int index) {
+    return symbols[index];
   }
 
-  public Block getBlock(int index) {
-    return (Block) super.symbolAt(index);
+  public boolean isInsideOrigin(int pos) {
+    return pos < lengthOfOrigin;
   }
 
-  public static class Terminator {
-
-    private final int stringNumber;
-
-    public Terminator(int i) {
-      this.stringNumber = i;
-    }
-
-    @Override
-    public boolean equals(Object obj) {
-      return (obj instanceof Terminator) && (((Terminator) obj).stringNumber == stringNumber);
-    }
-
-    @Override
-    public int hashCode() {
-      return stringNumber;
-    }
-
-    public int getStringNumber() {
-      return stringNumber;
-    }
-
-    @Override
-    public String toString() {
-      return "$" + stringNumber;
-    }
-
+  /**
+   * @return block at the specified index, or null for terminator
+   */
+  public Block getBlock(int index) {
+    return blocks[index];
   }
 
 }
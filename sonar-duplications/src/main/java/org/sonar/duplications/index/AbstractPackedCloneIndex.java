@@ -0,0 +1,324 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Provides an index, which keeps blocks packed in flat arrays of ints, so that it can be independent of storage of those arrays.
+ * <p>
+ * Each block takes hash and 6 ints: number of resource, index in file, first and last lines, first and last units.
+ * Resource is stored as a number, so the only data kept on heap per resource is its id.
+ * Blocks are sorted by hash, and second array keeps positions of blocks sorted by resource.
+ * </p>
+ * <p>
+ * Note that this implementation currently does not support deletion, however it's possible to implement.
+ * </p>
+ * <p>
+ * Queries can be executed concurrently, but not concurrently with insertions.
+ * </p>
+ */
+public abstract class AbstractPackedCloneIndex extends AbstractCloneIndex {
+
+  private static final int BLOCK_INTS = 6;
+
+  private final int hashInts;
+
+  private final int blockInts;
+
+  /**
+   * Indicates that index requires sorting to perform queries.
+   * Once sorted, the index is only read by queries, which therefore can be executed concurrently.
+   */
+  private volatile boolean sorted;
+
+  /**
+   * Current number of blocks in index.
+   */
+  private int size;
+
+  private final List<String> resourceIds = Lists.newArrayList();
+  private final Map<String, Integer> resourceNumbers = Maps.newHashMap();
+
+  private final IntStorage blockData;
+
+  private final IntStorage resourceIdsIndex;
+
+  /**
+   * @param hashBytes size of hash in bytes
+   * @param initialCapacity the initial capacity
+   * @param blockData storage for blocks
+   * @param resourceIdsIndex storage for positions of blocks sorted by resource
+   */
+  AbstractPackedCloneIndex(int hashBytes, int initialCapacity, IntStorage blockData, IntStorage resourceIdsIndex) {
+    this.sorted = false;
+    this.hashInts = hashBytes / 4;
+    this.blockInts = hashInts + BLOCK_INTS;
+    this.size = 0;
+    this.blockData = blockData;
+    this.resourceIdsIndex = resourceIdsIndex;
+    blockData.ensureCapacity(initialCapacity * blockInts);
+    resourceIdsIndex.ensureCapacity(initialCapacity);
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * <strong>Note that this implementation does not guarantee that blocks would be sorted by index.</strong>
+   * </p>
+   */
+  public Collection<Block> getByResourceId(String resourceId) {
+    ensureSorted();
+
+    Integer resourceNumber = resourceNumbers.get(resourceId);
+    if (resourceNumber == null) {
+      return Collections.emptyList();
+    }
+
+    int index = lowerBoundByResource(resourceNumber);
+
+    List<Block> result = Lists.newArrayList();
+    Block.Builder blockBuilder = Block.builder();
+    while (index < size && getResourceNumber(resourceIdsIndex.get(index)) == resourceNumber) {
+      // extract block (note that there is no need to extract resourceId)
+      int offset = resourceIdsIndex.get(index) * blockInts;
+      int[] hash = new int[hashInts];
+      for (int j = 0; j < hashInts; j++) {
+        hash[j] = blockData.get(offset++);
+      }
+      result.add(extractBlock(blockBuilder, offset + 1, resourceId, new ByteArray(hash)));
+      index++;
+    }
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
+    ensureSorted();
+
+    int[] hash = sequenceHash.toIntArray();
+    if (hash.length != hashInts) {
+      throw new IllegalArgumentException("Expected " + hashInts + " ints in hash, but got " + hash.length);
+    }
+
+    int index = lowerBoundByHash(hash);
+
+    List<Block> result = Lists.newArrayList();
+    Block.Builder blockBuilder = Block.builder();
+    while (index < size && compareHash(index, hash) == 0) {
+      // extract block (note that there is no need to extract hash)
+      String resourceId = resourceIds.get(getResourceNumber(index));
+      result.add(extractBlock(blockBuilder, index * blockInts + hashInts + 1, resourceId, sequenceHash));
+      index++;
+    }
+    return result;
+  }
+
+  private Block extractBlock(Block.Builder blockBuilder, int offset, String resourceId, ByteArray hash) {
+    int indexInFile = blockData.get(offset++);
+    int firstLineNumber = blockData.get(offset++);
+    int lastLineNumber = blockData.get(offset++);
+    int startUnit = blockData.get(offset++);
+    int endUnit = blockData.get(offset);
+    return blockBuilder
+        .setResourceId(resourceId)
+        .setBlockHash(hash)
+        .setIndexInFile(indexInFile)
+        .setLines(firstLineNumber, lastLineNumber)
+        .setUnit(startUnit, endUnit)
+        .build();
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * <strong>Note that this implementation allows insertion of two blocks with same index for one resource.</strong>
+   * </p>
+   */
+  public void insert(Block block) {
+    sorted = false;
+
+    int[] hash = block.getBlockHash().toIntArray();
+    if (hash.length != hashInts) {
+      throw new IllegalArgumentException("Expected " + hashInts + " ints in hash, but got " + hash.length);
+    }
+    blockData.ensureCapacity((size + 1) * blockInts);
+    resourceIdsIndex.ensureCapacity(size + 1);
+
+    int offset = size * blockInts;
+    for (int i = 0; i < hashInts; i++) {
+      blockData.put(offset++, hash[i]);
+    }
+    blockData.put(offset++, getOrCreateResourceNumber(block.getResourceId()));
+    blockData.put(offset++, block.getIndexInFile());
+    blockData.put(offset++, block.getStartLine());
+    blockData.put(offset++, block.getEndLine());
+    blockData.put(offset++, block.getStartUnit());
+    blockData.put(offset, block.getEndUnit());
+
+    size++;
+  }
+
+  private int getOrCreateResourceNumber(String resourceId) {
+    Integer resourceNumber = resourceNumbers.get(resourceId);
+    if (resourceNumber == null) {
+      resourceNumber = resourceIds.size();
+      resourceIds.add(resourceId);
+      resourceNumbers.put(resourceId, resourceNumber);
+    }
+    return resourceNumber;
+  }
+
+  private int getResourceNumber(int index) {
+    return blockData.get(index * blockInts + hashInts);
+  }
+
+  /**
+   * Performs sorting, if necessary.
+   */
+  private void ensureSorted() {
+    if (sorted) {
+      return;
+    }
+    synchronized (this) {
+      if (sorted) {
+        return;
+      }
+
+      DataUtils.sort(byBlockHash);
+      for (int i = 0; i < size; i++) {
+        resourceIdsIndex.put(i, i);
+      }
+      DataUtils.sort(byResourceId);
+
+      sorted = true;
+    }
+  }
+
+  /**
+   * Unlike {@link DataUtils#binarySearch(DataUtils.Sortable)} does not store value for search in arrays,
+   * so can be executed concurrently.
+   *
+   * @return position of first block with given resource, or position where it would be inserted
+   */
+  private int lowerBoundByResource(int resourceNumber) {
+    int lower = 0;
+    int upper = size;
+    while (lower < upper) {
+      int mid = (lower + upper) >> 1;
+      if (getResourceNumber(resourceIdsIndex.get(mid)) < resourceNumber) {
+        lower = mid + 1;
+      } else {
+        upper = mid;
+      }
+    }
+    return lower;
+  }
+
+  /**
+   * @return position of first block with given hash, or position where it would be inserted
+   */
+  private int lowerBoundByHash(int[] hash) {
+    int lower = 0;
+    int upper = size;
+    while (lower < upper) {
+      int mid = (lower + upper) >> 1;
+      if (compareHash(mid, hash) < 0) {
+        lower = mid + 1;
+      } else {
+        upper = mid;
+      }
+    }
+    return lower;
+  }
+
+  private int compareHash(int index, int[] hash) {
+    int offset = index * blockInts;
+    for (int k = 0; k < hashInts; k++, offset++) {
+      int value = blockData.get(offset);
+      if (value < hash[k]) {
+        return -1;
+      }
+      if (value > hash[k]) {
+        return 1;
+      }
+    }
+    return 0;
+  }
+
+  private final DataUtils.Sortable byBlockHash = new DataUtils.Sortable() {
+    public void swap(int i, int j) {
+      i *= blockInts;
+      j *= blockInts;
+      for (int k = 0; k < blockInts; k++, i++, j++) {
+        int x = blockData.get(i);
+        blockData.put(i, blockData.get(j));
+        blockData.put(j, x);
+      }
+    }
+
+    public boolean isLess(int i, int j) {
+      i *= blockInts;
+      j *= blockInts;
+      for (int k = 0; k < hashInts; k++, i++, j++) {
+        int x = blockData.get(i);
+        int y = blockData.get(j);
+        if (x < y) {
+          return true;
+        }
+        if (x > y) {
+          return false;
+        }
+      }
+      return false;
+    }
+
+    public int size() {
+      return size;
+    }
+  };
+
+  private final DataUtils.Sortable byResourceId = new DataUtils.Sortable() {
+    public void swap(int i, int j) {
+      int tmp = resourceIdsIndex.get(i);
+      resourceIdsIndex.put(i, resourceIdsIndex.get(j));
+      resourceIdsIndex.put(j, tmp);
+    }
+
+    public boolean isLess(int i, int j) {
+      return getResourceNumber(resourceIdsIndex.get(i)) < getResourceNumber(resourceIdsIndex.get(j));
+    }
+
+    public int size() {
+      return size;
+    }
+  };
+
+}
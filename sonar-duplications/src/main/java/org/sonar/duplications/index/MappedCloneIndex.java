@@ -0,0 +1,155 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.duplications.DuplicationsException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Provides an index, which keeps blocks outside of Java heap - in memory-mapped files.
+ * <p>
+ * Layout of blocks is described in {@link AbstractPackedCloneIndex},
+ * so the only data kept on heap is the list of distinct resources.
+ * When capacity is exceeded, only new segments of files are mapped, so data is never copied.
+ * </p>
+ * <p>
+ * Queries can be executed concurrently, but not concurrently with insertions.
+ * Method {@link #close()} must be called to release files.
+ * </p>
+ */
+public class MappedCloneIndex extends AbstractPackedCloneIndex implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MappedCloneIndex.class);
+
+  private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+
+  private final MappedFile blockData;
+  private final MappedFile resourceIdsIndex;
+
+  public MappedCloneIndex(File dir) {
+    this(dir, 8, DEFAULT_INITIAL_CAPACITY);
+  }
+
+  /**
+   * @param dir directory for files of index
+   * @param hashBytes size of hash in bytes
+   * @param initialCapacity the initial capacity
+   */
+  public MappedCloneIndex(File dir, int hashBytes, int initialCapacity) {
+    this(hashBytes, initialCapacity, new MappedFile(dir, "blocks"), new MappedFile(dir, "resources"));
+  }
+
+  private MappedCloneIndex(int hashBytes, int initialCapacity, MappedFile blockData, MappedFile resourceIdsIndex) {
+    super(hashBytes, initialCapacity, blockData, resourceIdsIndex);
+    this.blockData = blockData;
+    this.resourceIdsIndex = resourceIdsIndex;
+  }
+
+  /**
+   * Deletes files of this index.
+   */
+  public void close() {
+    blockData.close();
+    resourceIdsIndex.close();
+  }
+
+  /**
+   * Temporary file, which is mapped in memory as an array of ints.
+   * File is mapped by segments of fixed size, so that increase of size maps only new segments
+   * and does not leave previous mappings of whole file, which are released only by garbage collector.
+   */
+  private static final class MappedFile implements IntStorage {
+    private static final int SEGMENT_SHIFT = 18;
+    private static final int SEGMENT_INTS = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_INTS - 1;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private IntBuffer[] segments = new IntBuffer[0];
+
+    MappedFile(File dir, String prefix) {
+      try {
+        this.file = File.createTempFile(prefix, ".idx", dir);
+        this.file.deleteOnExit();
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+      } catch (IOException e) {
+        throw new DuplicationsException("Unable to create file of index in " + dir, e);
+      }
+    }
+
+    /**
+     * Maps new segments, so that file can hold given number of ints.
+     */
+    public void ensureCapacity(int ints) {
+      int required = (ints + SEGMENT_MASK) >>> SEGMENT_SHIFT;
+      if (required <= segments.length) {
+        return;
+      }
+      IntBuffer[] newSegments = new IntBuffer[required];
+      System.arraycopy(segments, 0, newSegments, 0, segments.length);
+      for (int i = segments.length; i < required; i++) {
+        newSegments[i] = mapSegment(i);
+      }
+      segments = newSegments;
+    }
+
+    private IntBuffer mapSegment(int segment) {
+      try {
+        return randomAccessFile.getChannel()
+            .map(FileChannel.MapMode.READ_WRITE, (long) segment * SEGMENT_INTS * 4, SEGMENT_INTS * 4L)
+            .order(ByteOrder.nativeOrder())
+            .asIntBuffer();
+      } catch (IOException e) {
+        throw new DuplicationsException("Unable to map file of index " + file, e);
+      }
+    }
+
+    public int get(int index) {
+      return segments[index >>> SEGMENT_SHIFT].get(index & SEGMENT_MASK);
+    }
+
+    public void put(int index, int value) {
+      segments[index >>> SEGMENT_SHIFT].put(index & SEGMENT_MASK, value);
+    }
+
+    void close() {
+      segments = new IntBuffer[0];
+      try {
+        randomAccessFile.close();
+      } catch (IOException e) {
+        // ignore
+      }
+      if (!file.delete()) {
+        // for example on Windows file can't be deleted, while it is still mapped
+        LOG.warn("Unable to delete file of index {}, it will be deleted on exit", file);
+      }
+    }
+  }
+
+}
@@ -26,9 +26,13 @@ import java.util.List;
 
 public class Statement implements CodeFragment {
 
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
   private final int startLine;
   private final int endLine;
   private final String value;
+  private final long valueHash;
 
   /**
    * Cache for hash code.
@@ -39,6 +43,7 @@ public class Statement implements CodeFragment {
     this.startLine = startLine;
     this.endLine = endLine;
     this.value = value;
+    this.valueHash = hash(value);
   }
 
   public Statement(List<Token> tokens) {
@@ -50,6 +55,7 @@ public class Statement implements CodeFragment {
       sb.append(token.getValue());
     }
     this.value = sb.toString();
+    this.valueHash = hash(value);
     this.startLine = tokens.get(0).getLine();
     this.endLine = tokens.get(tokens.size() - 1).getLine();
   }
@@ -66,6 +72,31 @@ public class Statement implements CodeFragment {
     return value;
   }
 
+  /**
+   * @return 64-bits hash of {@link #getValue() value}, which does not depend on JDK
+   * @since 3.2
+   */
+  public long getValueHash() {
+    return valueHash;
+  }
+
+  /**
+   * FNV-1a over characters, followed by finalization step of MurmurHash3 in order to spread bits.
+   */
+  private static long hash(String value) {
+    long h = FNV_OFFSET_BASIS;
+    for (int i = 0; i < value.length(); i++) {
+      h ^= value.charAt(i);
+      h *= FNV_PRIME;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
   @Override
   public int hashCode() {
     int h = hash;
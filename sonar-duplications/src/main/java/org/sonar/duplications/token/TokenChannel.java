@@ -25,15 +25,19 @@ import java.util.regex.Pattern;
 import org.sonar.channel.Channel;
 import org.sonar.channel.CodeBuffer.Cursor;
 import org.sonar.channel.CodeReader;
+import org.sonar.channel.FirstCharacters;
 
 class TokenChannel extends Channel<TokenQueue> {
 
   private final StringBuilder tmpBuilder = new StringBuilder();
   private final Matcher matcher;
+  private final FirstCharacters firstCharacters;
   private String normalizationValue;
 
   public TokenChannel(String regex) {
-    matcher = Pattern.compile(regex).matcher("");
+    Pattern pattern = Pattern.compile(regex);
+    matcher = pattern.matcher("");
+    firstCharacters = FirstCharacters.of(pattern);
   }
 
   public TokenChannel(String regex, String normalizationValue) {
@@ -56,4 +60,9 @@ class TokenChannel extends Channel<TokenQueue> {
     return false;
   }
 
+  @Override
+  public boolean acceptsFirstCharacter(int character) {
+    return firstCharacters.contains(character);
+  }
+
 }
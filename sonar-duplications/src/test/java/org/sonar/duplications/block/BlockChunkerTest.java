@@ -47,15 +47,15 @@ public class BlockChunkerTest extends BlockChunkerTestCase {
     assertThat(blocks.get(0).getBlockHash(), equalTo(hash("aaaaaa", "bbbbbb", "cccccc")));
     assertThat(blocks.get(1).getBlockHash(), equalTo(hash("bbbbbb", "cccccc", "dddddd")));
     assertThat(blocks.get(2).getBlockHash(), equalTo(hash("cccccc", "dddddd", "eeeeee")));
-    assertThat(blocks.get(0).getBlockHash().toString(), is("fffffeb6ae1af4c0"));
-    assertThat(blocks.get(1).getBlockHash().toString(), is("fffffebd8512d120"));
-    assertThat(blocks.get(2).getBlockHash().toString(), is("fffffec45c0aad80"));
+    assertThat(blocks.get(0).getBlockHash().toString(), is("4a70391fcf0c9907"));
+    assertThat(blocks.get(1).getBlockHash().toString(), is("154c96ec5c07e642"));
+    assertThat(blocks.get(2).getBlockHash().toString(), is("f1acf82f5efbe199"));
   }
 
   private ByteArray hash(String... statements) {
     long hash = 0;
     for (String statement : statements) {
-      hash = hash * 31 + statement.hashCode();
+      hash = hash * 0x9e3779b97f4a7c15L + new Statement(0, 0, statement).getValueHash();
     }
     return new ByteArray(hash);
   }
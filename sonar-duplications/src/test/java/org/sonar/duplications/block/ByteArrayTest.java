@@ -63,4 +63,15 @@ public class ByteArrayTest {
     assertThat(byteArray.toIntArray(), is(new int[] { 0x00000000, 0x31000000 }));
   }
 
+  @Test
+  public void shouldConvertToLong() {
+    assertThat(new ByteArray(0x12FF841344567899L).toLong(), is(0x12FF841344567899L));
+    assertThat(new ByteArray(-42L).toLong(), is(-42L));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotConvertToLongIfNotEightBytes() {
+    new ByteArray(42).toLong();
+  }
+
 }
@@ -22,13 +22,6 @@ package org.sonar.duplications.detector.suffixtree;
 import java.util.LinkedList;
 import java.util.Queue;
 
-import org.sonar.duplications.detector.suffixtree.Edge;
-import org.sonar.duplications.detector.suffixtree.Node;
-import org.sonar.duplications.detector.suffixtree.SuffixTree;
-import org.sonar.duplications.detector.suffixtree.Text;
-
-import com.google.common.base.Objects;
-
 public class StringSuffixTree {
 
   private final SuffixTree suffixTree;
@@ -43,17 +36,17 @@ public class StringSuffixTree {
   private StringSuffixTree(String text) {
     suffixTree = SuffixTree.create(new StringText(text));
 
-    Queue<Node> queue = new LinkedList<Node>();
+    Queue<Integer> queue = new LinkedList<Integer>();
     queue.add(suffixTree.getRootNode());
     while (!queue.isEmpty()) {
-      Node node = queue.remove();
-      if (node.getEdges().isEmpty()) {
+      int node = queue.remove();
+      if (suffixTree.getFirstEdge(node) == SuffixTree.NONE) {
         numberOfLeaves++;
       } else {
         numberOfInnerNodes++;
-        for (Edge edge : node.getEdges()) {
+        for (int edge = suffixTree.getFirstEdge(node); edge != SuffixTree.NONE; edge = suffixTree.getNextEdge(edge)) {
           numberOfEdges++;
-          queue.add(edge.getEndNode());
+          queue.add(suffixTree.getEndNode(edge));
         }
       }
     }
@@ -95,35 +88,32 @@ public class StringSuffixTree {
     }
 
     int index = -1;
-    Node node = tree.getRootNode();
+    int node = tree.getRootNode();
 
     int i = 0;
     while (i < str.length()) {
-      if (node == null) {
-        return -1;
-      }
       if (i == tree.text.length()) {
         return -1;
       }
 
-      Edge edge = node.findEdge(str.symbolAt(i));
-      if (edge == null) {
+      int edge = tree.findEdge(node, str.symbolAt(i));
+      if (edge == SuffixTree.NONE) {
         return -1;
       }
 
-      index = edge.getBeginIndex() - i;
+      index = tree.getBeginIndex(edge) - i;
       i++;
 
-      for (int j = edge.getBeginIndex() + 1; j <= edge.getEndIndex(); j++) {
+      for (int j = tree.getBeginIndex(edge) + 1; j <= tree.getEndIndex(edge); j++) {
         if (i == str.length()) {
           break;
         }
-        if (!Objects.equal(tree.symbolAt(j), str.symbolAt(i))) {
+        if (tree.symbolAt(j) != str.symbolAt(i)) {
           return -1;
         }
         i++;
       }
-      node = edge.getEndNode();
+      node = tree.getEndNode(edge);
     }
     return index;
   }
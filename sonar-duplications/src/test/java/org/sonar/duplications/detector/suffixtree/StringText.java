@@ -19,19 +19,20 @@
  */
 package org.sonar.duplications.detector.suffixtree;
 
-import org.sonar.duplications.detector.suffixtree.AbstractText;
-import org.sonar.duplications.detector.suffixtree.Text;
+public class StringText implements Text {
 
-/**
- * Implementation of {@link Text} based on {@link String}.
- */
-public class StringText extends AbstractText {
+  private final String text;
 
   public StringText(String text) {
-    super(text.length());
-    for (int i = 0; i < text.length(); i++) {
-      symbols.add(Character.valueOf(text.charAt(i)));
-    }
+    this.text = text;
+  }
+
+  public int length() {
+    return text.length();
+  }
+
+  public int symbolAt(int index) {
+    return text.charAt(index);
   }
 
 }
@@ -62,4 +62,17 @@ public class SuffixTreeTest {
     }
   }
 
+  @Test
+  public void shouldReuseTreeForAnotherText() {
+    String text = this.data + "$";
+    SuffixTree tree = SuffixTree.create(new StringText("abracadabra" + text + "#"));
+    tree.build(new StringText(text));
+
+    for (int beginIndex = 0; beginIndex < text.length(); beginIndex++) {
+      String substring = text.substring(beginIndex);
+      assertThat("index of " + substring + " in " + text, StringSuffixTree.indexOf(tree, new StringText(substring)), is(text.indexOf(substring)));
+    }
+    assertThat(StringSuffixTree.contains(tree, new StringText("#")), is(false));
+  }
+
 }
@@ -0,0 +1,168 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.index;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import java.util.Collection;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class MappedCloneIndexTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private MappedCloneIndex index;
+
+  @Before
+  public void setUp() {
+    index = new MappedCloneIndex(temp.getRoot());
+  }
+
+  @After
+  public void tearDown() {
+    index.close();
+  }
+
+  @Test
+  public void test() {
+    index.insert(newBlock("a", 1));
+    index.insert(newBlock("a", 2));
+    index.insert(newBlock("b", 1));
+    index.insert(newBlock("c", 1));
+    index.insert(newBlock("d", 1));
+    index.insert(newBlock("e", 1));
+    index.insert(newBlock("e", 2));
+    index.insert(newBlock("e", 3));
+
+    assertThat(index.getBySequenceHash(new ByteArray(1L)).size(), is(5));
+    assertThat(index.getBySequenceHash(new ByteArray(2L)).size(), is(2));
+    assertThat(index.getBySequenceHash(new ByteArray(3L)).size(), is(1));
+    assertThat(index.getBySequenceHash(new ByteArray(4L)).size(), is(0));
+    assertThat(index.getByResourceId("a").size(), is(2));
+    assertThat(index.getByResourceId("b").size(), is(1));
+    assertThat(index.getByResourceId("e").size(), is(3));
+    assertThat(index.getByResourceId("does not exist").size(), is(0));
+  }
+
+  @Test
+  public void should_restore_blocks() {
+    Block block = Block.builder()
+        .setResourceId("a")
+        .setBlockHash(new ByteArray(42L))
+        .setIndexInFile(3)
+        .setLines(4, 5)
+        .setUnit(6, 7)
+        .build();
+    index.insert(block);
+
+    Block byHash = index.getBySequenceHash(new ByteArray(42L)).iterator().next();
+    Block byResource = index.getByResourceId("a").iterator().next();
+    for (Block restored : new Block[] {byHash, byResource}) {
+      assertThat(restored, is(block));
+      assertThat(restored.getResourceId(), is("a"));
+      assertThat(restored.getStartLine(), is(4));
+      assertThat(restored.getEndLine(), is(5));
+      assertThat(restored.getStartUnit(), is(6));
+      assertThat(restored.getEndUnit(), is(7));
+    }
+  }
+
+  @Test
+  public void should_construct_blocks_with_normalized_hash() {
+    index.insert(newBlock("a", 1));
+    index.insert(newBlock("b", 1));
+    index.insert(newBlock("c", 1));
+    ByteArray requestedHash = new ByteArray(1L);
+    Collection<Block> blocks = index.getBySequenceHash(requestedHash);
+    assertThat(blocks.size(), is(3));
+    for (Block block : blocks) {
+      assertThat(block.getBlockHash(), sameInstance(requestedHash));
+    }
+  }
+
+  /**
+   * Given: index with initial capacity 1.
+   * Expected: blocks should be preserved, when capacity is increased after sorting.
+   */
+  @Test
+  public void should_increase_capacity() {
+    MappedCloneIndex index = new MappedCloneIndex(temp.getRoot(), 8, 1);
+    index.insert(newBlock("a", 1));
+    assertThat(index.getByResourceId("a").size(), is(1));
+    for (int i = 2; i <= 100; i++) {
+      index.insert(newBlock("a", i));
+    }
+    assertThat(index.getByResourceId("a").size(), is(100));
+    assertThat(index.getBySequenceHash(new ByteArray(50L)).size(), is(1));
+    index.close();
+  }
+
+  /**
+   * Given: more blocks, than fit into one mapped segment.
+   * Expected: blocks from all segments should be found.
+   */
+  @Test
+  public void should_map_several_segments() {
+    int blocks = 100000;
+    for (int i = 0; i < blocks; i++) {
+      index.insert(newBlock("a" + (i % 10), i));
+    }
+    assertThat(index.getByResourceId("a0").size(), is(blocks / 10));
+    assertThat(index.getBySequenceHash(new ByteArray(0L)).size(), is(1));
+    assertThat(index.getBySequenceHash(new ByteArray(blocks - 1L)).size(), is(1));
+  }
+
+  @Test
+  public void should_delete_files_when_closed() {
+    index.insert(newBlock("a", 1));
+    index.close();
+    assertThat(temp.getRoot().list().length, is(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void attempt_to_insert_hash_of_incorrect_size() {
+    MappedCloneIndex index = new MappedCloneIndex(temp.getRoot(), 4, 1);
+    try {
+      index.insert(newBlock("a", 1));
+    } finally {
+      index.close();
+    }
+  }
+
+  private static Block newBlock(String resourceId, long hash) {
+    return Block.builder()
+        .setResourceId(resourceId)
+        .setBlockHash(new ByteArray(hash))
+        .setIndexInFile(1)
+        .setLines(1, 2)
+        .build();
+  }
+
+}
@@ -25,6 +25,13 @@ import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.Lists;
 
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.sameInstance;
@@ -109,6 +116,38 @@ public class PackedMemoryCloneIndexTest {
     index.getBySequenceHash(new ByteArray(1L));
   }
 
+  /**
+   * Given: sorted index.
+   * Expected: same results for queries executed concurrently.
+   */
+  @Test
+  public void should_support_concurrent_queries() throws Exception {
+    for (int i = 0; i < 1000; i++) {
+      index.insert(newBlock("r" + (i % 10), i % 100));
+    }
+    ExecutorService executorService = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> futures = Lists.newArrayList();
+      for (int t = 0; t < 8; t++) {
+        futures.add(executorService.submit(new Callable<Boolean>() {
+          public Boolean call() {
+            boolean ok = true;
+            for (int i = 0; i < 1000; i++) {
+              ok &= index.getBySequenceHash(new ByteArray((long) (i % 100))).size() == 10;
+              ok &= index.getByResourceId("r" + (i % 10)).size() == 100;
+            }
+            return ok;
+          }
+        }));
+      }
+      for (Future<Boolean> future : futures) {
+        assertThat(future.get(), is(true));
+      }
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
   private static Block newBlock(String resourceId, long hash) {
     return Block.builder()
         .setResourceId(resourceId)
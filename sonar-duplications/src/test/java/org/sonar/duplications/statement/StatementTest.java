@@ -48,4 +48,14 @@ public class StatementTest {
     assertThat(statement.getEndLine(), is(2));
   }
 
+  /**
+   * Hash must not depend on JDK, because it is stored in database.
+   */
+  @Test
+  public void shouldComputeValueHash() {
+    assertThat(new Statement(1, 1, "a").getValueHash(), is(new Statement(Arrays.asList(new Token("a", 2, 1))).getValueHash()));
+    assertThat(new Statement(1, 1, "ab").getValueHash() == new Statement(1, 1, "ba").getValueHash(), is(false));
+    assertThat(new Statement(1, 1, "aaaaaa").getValueHash(), is(8487542507601917653L));
+  }
+
 }
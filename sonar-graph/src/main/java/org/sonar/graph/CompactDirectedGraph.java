@@ -0,0 +1,243 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.graph;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable graph optimized for large numbers of vertices. Vertices are mapped to dense indexes and adjacency is stored in
+ * compressed sparse row arrays : the outgoing edges of the vertex <code>i</code> are stored between <code>outgoingOffsets[i]</code>
+ * and <code>outgoingOffsets[i + 1]</code>, sorted by index of target vertex. Incoming edges are stored the same way and refer
+ * to the outgoing ones.
+ */
+public final class CompactDirectedGraph<V, E extends Edge<V>> implements DirectedGraphAccessor<V, E> {
+
+  private final Map<V, Integer> indexes;
+  private final Object[] vertices;
+  private final int[] outgoingOffsets;
+  private final int[] targets;
+  private final Object[] edges;
+  private final int[] incomingOffsets;
+  private final int[] incomingEdges;
+
+  public CompactDirectedGraph(Collection<V> vertices, Collection<E> edges) {
+    this.indexes = new HashMap<V, Integer>(vertices.size() * 2);
+    for (V vertex : vertices) {
+      indexOrAdd(vertex);
+    }
+    for (E edge : edges) {
+      indexOrAdd(edge.getFrom());
+      indexOrAdd(edge.getTo());
+    }
+    this.vertices = new Object[indexes.size()];
+    for (Map.Entry<V, Integer> entry : indexes.entrySet()) {
+      this.vertices[entry.getValue()] = entry.getKey();
+    }
+
+    int verticesCount = this.vertices.length;
+    int edgesCount = edges.size();
+    Object[] edgesInInsertionOrder = edges.toArray();
+    int[] sources = new int[edgesCount];
+    this.outgoingOffsets = new int[verticesCount + 1];
+    this.incomingOffsets = new int[verticesCount + 1];
+    for (int i = 0; i < edgesCount; i++) {
+      Edge<V> edge = (Edge<V>) edgesInInsertionOrder[i];
+      sources[i] = indexes.get(edge.getFrom());
+      outgoingOffsets[sources[i] + 1]++;
+      incomingOffsets[indexes.get(edge.getTo()) + 1]++;
+    }
+    for (int i = 0; i < verticesCount; i++) {
+      outgoingOffsets[i + 1] += outgoingOffsets[i];
+      incomingOffsets[i + 1] += incomingOffsets[i];
+    }
+
+    // edges are bucketed by source, then sorted by target within each bucket
+    long[] sortedEdges = new long[edgesCount];
+    int[] positions = new int[verticesCount];
+    System.arraycopy(outgoingOffsets, 0, positions, 0, verticesCount);
+    for (int i = 0; i < edgesCount; i++) {
+      int to = indexes.get(((Edge<V>) edgesInInsertionOrder[i]).getTo());
+      sortedEdges[positions[sources[i]]++] = (long) to << 32 | i;
+    }
+    this.targets = new int[edgesCount];
+    this.edges = new Object[edgesCount];
+    for (int vertex = 0; vertex < verticesCount; vertex++) {
+      Arrays.sort(sortedEdges, outgoingOffsets[vertex], outgoingOffsets[vertex + 1]);
+      for (int i = outgoingOffsets[vertex]; i < outgoingOffsets[vertex + 1]; i++) {
+        targets[i] = (int) (sortedEdges[i] >>> 32);
+        this.edges[i] = edgesInInsertionOrder[(int) sortedEdges[i]];
+        if (i > outgoingOffsets[vertex] && targets[i] == targets[i - 1]) {
+          throw new IllegalStateException("The graph already contains the edge : " + this.edges[i]);
+        }
+      }
+    }
+
+    this.incomingEdges = new int[edgesCount];
+    System.arraycopy(incomingOffsets, 0, positions, 0, verticesCount);
+    for (int i = 0; i < edgesCount; i++) {
+      incomingEdges[positions[targets[i]]++] = i;
+    }
+  }
+
+  /**
+   * Copies the given vertices of a graph along with the edges between them.
+   */
+  public static <V, E extends Edge<V>> CompactDirectedGraph<V, E> copyOf(DirectedGraphAccessor<V, E> graph, Collection<V> vertices) {
+    Set<V> includedVertices = vertices instanceof Set ? (Set<V>) vertices : new HashSet<V>(vertices);
+    List<E> edges = new ArrayList<E>();
+    for (V vertex : vertices) {
+      for (E edge : graph.getOutgoingEdges(vertex)) {
+        if (includedVertices.contains(edge.getTo())) {
+          edges.add(edge);
+        }
+      }
+    }
+    return new CompactDirectedGraph<V, E>(vertices, edges);
+  }
+
+  public static <V, E extends Edge<V>> CompactDirectedGraph<V, E> copyOf(DirectedGraphAccessor<V, E> graph) {
+    return copyOf(graph, graph.getVertices());
+  }
+
+  private void indexOrAdd(V vertex) {
+    if (!indexes.containsKey(vertex)) {
+      indexes.put(vertex, indexes.size());
+    }
+  }
+
+  public int getVerticesCount() {
+    return vertices.length;
+  }
+
+  public int getEdgesCount() {
+    return targets.length;
+  }
+
+  /**
+   * @return index of the vertex, or -1 if the vertex does not belong to the graph
+   */
+  public int indexOf(V vertex) {
+    Integer index = indexes.get(vertex);
+    return index == null ? -1 : index;
+  }
+
+  public V getVertex(int index) {
+    return (V) vertices[index];
+  }
+
+  public int getOutDegree(int vertex) {
+    return outgoingOffsets[vertex + 1] - outgoingOffsets[vertex];
+  }
+
+  /**
+   * @return index of the target vertex of the n-th outgoing edge of the vertex
+   */
+  public int getTarget(int vertex, int n) {
+    return targets[outgoingOffsets[vertex] + n];
+  }
+
+  public E getEdge(V from, V to) {
+    int edge = findEdge(from, to);
+    return edge < 0 ? null : (E) edges[edge];
+  }
+
+  public boolean hasEdge(V from, V to) {
+    return findEdge(from, to) >= 0;
+  }
+
+  private int findEdge(V from, V to) {
+    Integer fromIndex = indexes.get(from);
+    Integer toIndex = indexes.get(to);
+    if (fromIndex == null || toIndex == null) {
+      return -1;
+    }
+    int low = outgoingOffsets[fromIndex];
+    int high = outgoingOffsets[fromIndex + 1] - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (targets[middle] < toIndex) {
+        low = middle + 1;
+      } else if (targets[middle] > toIndex) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  public Set<V> getVertices() {
+    return Collections.unmodifiableSet(indexes.keySet());
+  }
+
+  public Collection<E> getOutgoingEdges(V from) {
+    Integer index = indexes.get(from);
+    if (index == null) {
+      return Collections.emptyList();
+    }
+    return new EdgesList(outgoingOffsets[index], outgoingOffsets[index + 1], null);
+  }
+
+  public Collection<E> getIncomingEdges(V to) {
+    Integer index = indexes.get(to);
+    if (index == null) {
+      return Collections.emptyList();
+    }
+    return new EdgesList(incomingOffsets[index], incomingOffsets[index + 1], incomingEdges);
+  }
+
+  /**
+   * Read-only view on a slice of the edges, possibly through an array of edge indexes.
+   */
+  private final class EdgesList extends AbstractList<E> {
+    private final int begin;
+    private final int end;
+    private final int[] edgeIndexes;
+
+    private EdgesList(int begin, int end, int[] edgeIndexes) {
+      this.begin = begin;
+      this.end = end;
+      this.edgeIndexes = edgeIndexes;
+    }
+
+    @Override
+    public E get(int index) {
+      if (index < 0 || index >= size()) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+      }
+      int position = begin + index;
+      return (E) edges[edgeIndexes == null ? position : edgeIndexes[position]];
+    }
+
+    @Override
+    public int size() {
+      return end - begin;
+    }
+  }
+}
@@ -21,8 +21,12 @@ package org.sonar.graph;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class CycleDetector<V> {
@@ -84,11 +88,18 @@ public class CycleDetector<V> {
     if (!cycles.isEmpty()) {
       throw new IllegalStateException("Cycle detection can't be executed twice on the same CycleDetector object.");
     }
+    Map<V, Set<V>> cyclicComponentByVertex = new HashMap<V, Set<V>>();
+    for (Set<V> component : new StronglyConnectedComponents<V>(graph, vertices, edgesToExclude).getCyclicComponents()) {
+      for (V vertex : component) {
+        cyclicComponentByVertex.put(vertex, component);
+      }
+    }
     try {
       for (V vertex : vertices) {
-        if (maxSearchDepthActivated || !analyzedVertices.contains(vertex)) {
+        Set<V> component = cyclicComponentByVertex.get(vertex);
+        if (component != null && (maxSearchDepthActivated || !analyzedVertices.contains(vertex))) {
           Set<V> tmpAnalyzedVertices = new HashSet<V>();
-          searchCycles(vertex, new ArrayList<V>(), tmpAnalyzedVertices);
+          searchCycles(vertex, component, tmpAnalyzedVertices);
           analyzedVertices.addAll(tmpAnalyzedVertices);
         }
       }
@@ -97,30 +108,49 @@ public class CycleDetector<V> {
     }
   }
 
-  private void searchCycles(V fromVertex, List<V> path, Set<V> tmpAnalyzedVertices) {
-    searchCyclesCalls++;
-    path.add(fromVertex);
-    tmpAnalyzedVertices.add(fromVertex);
-    for (Edge<V> edge : graph.getOutgoingEdges(fromVertex)) {
-      V toVertex = edge.getTo();
-      if (!edgesToExclude.contains(edge) && vertices.contains(toVertex)
-          && (maxSearchDepthActivated || !analyzedVertices.contains(toVertex))) {
-        if (path.contains(toVertex)) {
-          path.add(toVertex);
-          List<V> cyclePath = path.subList(path.indexOf(toVertex), path.size());
-          Cycle cycle = convertListOfVerticesToCycle(cyclePath);
-          cycles.add(cycle);
-
-          if (cycles.size() >= maxCyclesToFound) {
-            throw new MaximumCyclesToFoundException();
+  /**
+   * Depth-first search of the cycles going through the given vertex. A cycle never leaves the strongly connected component of
+   * its vertices, so the search is restricted to this component.
+   */
+  private void searchCycles(V fromVertex, Set<V> component, Set<V> tmpAnalyzedVertices) {
+    List<V> path = new ArrayList<V>();
+    Map<V, Integer> positionsInPath = new HashMap<V, Integer>();
+    LinkedList<Iterator<Edge<V>>> pendingEdges = new LinkedList<Iterator<Edge<V>>>();
+    enter(fromVertex, path, positionsInPath, pendingEdges, tmpAnalyzedVertices);
+    while (!pendingEdges.isEmpty()) {
+      Iterator<Edge<V>> edges = pendingEdges.getLast();
+      if (edges.hasNext()) {
+        Edge<V> edge = edges.next();
+        V toVertex = edge.getTo();
+        if (!edgesToExclude.contains(edge) && component.contains(toVertex)
+            && (maxSearchDepthActivated || !analyzedVertices.contains(toVertex))) {
+          Integer position = positionsInPath.get(toVertex);
+          if (position != null) {
+            List<V> cyclePath = new ArrayList<V>(path.subList(position, path.size()));
+            cyclePath.add(toVertex);
+            cycles.add(convertListOfVerticesToCycle(cyclePath));
+
+            if (cycles.size() >= maxCyclesToFound) {
+              throw new MaximumCyclesToFoundException();
+            }
+          } else if (!maxSearchDepthActivated || path.size() < maxSearchDepth) {
+            enter(toVertex, path, positionsInPath, pendingEdges, tmpAnalyzedVertices);
           }
-          path.remove(path.size() - 1);
-        } else if (!maxSearchDepthActivated || (maxSearchDepthActivated && path.size() < maxSearchDepth)) {
-          searchCycles(toVertex, path, tmpAnalyzedVertices);
         }
+      } else {
+        pendingEdges.removeLast();
+        positionsInPath.remove(path.remove(path.size() - 1));
       }
     }
-    path.remove(path.size() - 1);
+  }
+
+  private void enter(V vertex, List<V> path, Map<V, Integer> positionsInPath, LinkedList<Iterator<Edge<V>>> pendingEdges,
+      Set<V> tmpAnalyzedVertices) {
+    searchCyclesCalls++;
+    positionsInPath.put(vertex, path.size());
+    path.add(vertex);
+    tmpAnalyzedVertices.add(vertex);
+    pendingEdges.addLast((Iterator) graph.getOutgoingEdges(vertex).iterator());
   }
 
   private Cycle convertListOfVerticesToCycle(List<V> vertices) {
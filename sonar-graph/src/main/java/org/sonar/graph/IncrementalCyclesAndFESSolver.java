@@ -19,18 +19,29 @@
  */
 package org.sonar.graph;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Searches cycles and feedback edges, first with a limited search depth, then by iterations looking for the cycles that are not
+ * broken yet by the feedback edges. The strongly connected components are computed once : each component keeps its own cycles and
+ * feedback edges between iterations, and is not searched anymore as soon as its feedback edges break all of its cycles.
+ */
 public class IncrementalCyclesAndFESSolver<V> {
 
   private Set<Cycle> cycles = new HashSet<Cycle>();
   private long searchCyclesCalls = 0;
   private static final int DEFAULT_MAX_SEARCH_DEPTH_AT_FIRST = 3;
   private static final int DEFAULT_MAX_CYCLES_TO_FOUND_BY_ITERATION = 100;
-  private MinimumFeedbackEdgeSetSolver solver;
+  private final List<Component> components = new ArrayList<Component>();
   private int iterations = 0;
+  private final int threads;
+  private final long timeout;
+  private final TimeUnit timeoutUnit;
 
   public IncrementalCyclesAndFESSolver(DirectedGraphAccessor<V, ? extends Edge> graph, Collection<V> vertices) {
     this(graph, vertices, DEFAULT_MAX_SEARCH_DEPTH_AT_FIRST, DEFAULT_MAX_CYCLES_TO_FOUND_BY_ITERATION);
@@ -38,36 +49,77 @@ public class IncrementalCyclesAndFESSolver<V> {
 
   public IncrementalCyclesAndFESSolver(DirectedGraphAccessor<V, ? extends Edge> graph, Collection<V> vertices, int maxSearchDepthAtFirst,
       int maxCyclesToFoundByIteration) {
+    this(graph, vertices, maxSearchDepthAtFirst, maxCyclesToFoundByIteration, 1, 0, null);
+  }
+
+  /**
+   * Searches the feedback edges of each component with
+   * {@link MinimumFeedbackEdgeSetSolver#MinimumFeedbackEdgeSetSolver(Set, int, long, TimeUnit)}, so that each search runs on
+   * several threads and is stopped once the timeout is reached.
+   */
+  public IncrementalCyclesAndFESSolver(DirectedGraphAccessor<V, ? extends Edge> graph, Collection<V> vertices, int threads, long timeout,
+      TimeUnit unit) {
+    this(graph, vertices, DEFAULT_MAX_SEARCH_DEPTH_AT_FIRST, DEFAULT_MAX_CYCLES_TO_FOUND_BY_ITERATION, threads, timeout, unit);
+  }
+
+  private IncrementalCyclesAndFESSolver(DirectedGraphAccessor<V, ? extends Edge> graph, Collection<V> vertices, int maxSearchDepthAtFirst,
+      int maxCyclesToFoundByIteration, int threads, long timeout, TimeUnit timeoutUnit) {
+    this.threads = threads;
+    this.timeout = timeout;
+    this.timeoutUnit = timeoutUnit;
+    for (Set<V> vertexSet : new StronglyConnectedComponents<V>(graph, vertices, new HashSet<Edge>()).getCyclicComponents()) {
+      components.add(new Component(vertexSet));
+    }
 
     iterations++;
-    CycleDetector<V> cycleDetector = new CycleDetector<V>(graph, vertices);
-    cycleDetector.detectCyclesWithMaxSearchDepth(maxSearchDepthAtFirst);
-    searchCyclesCalls += cycleDetector.getSearchCyclesCalls();
-    cycles.addAll(cycleDetector.getCycles());
-    solver = new MinimumFeedbackEdgeSetSolver(cycles);
-    Set<Edge> edgesToExclude = solver.getEdges();
+    for (Component component : components) {
+      CycleDetector<V> cycleDetector = new CycleDetector<V>(graph, component.vertices);
+      cycleDetector.detectCyclesWithMaxSearchDepth(maxSearchDepthAtFirst);
+      component.addCycles(cycleDetector, false);
+    }
 
+    boolean newCycles;
     do {
       iterations++;
-      cycleDetector = new CycleDetector<V>(graph, vertices, edgesToExclude);
-      cycleDetector.detectCyclesWithUpperLimit(maxCyclesToFoundByIteration);
-      searchCyclesCalls += cycleDetector.getSearchCyclesCalls();
-      cycles.addAll(cycleDetector.getCycles());
-      solver = new MinimumFeedbackEdgeSetSolver(cycles);
-      edgesToExclude = solver.getEdges();
-    } while (cycleDetector.getCycles().size() != 0);
+      newCycles = false;
+      int remainingCycles = maxCyclesToFoundByIteration;
+      for (Component component : components) {
+        if (remainingCycles <= 0) {
+          break;
+        }
+        if (!component.settled) {
+          CycleDetector<V> cycleDetector = new CycleDetector<V>(graph, component.vertices, component.getFeedbackEdges());
+          cycleDetector.detectCyclesWithUpperLimit(remainingCycles);
+          remainingCycles -= cycleDetector.getCycles().size();
+          newCycles |= !cycleDetector.isAcyclicGraph();
+          component.addCycles(cycleDetector, true);
+        }
+      }
+    } while (newCycles);
   }
 
   public int getWeightOfFeedbackEdgeSet() {
-    return solver.getWeightOfFeedbackEdgeSet();
+    int weight = 0;
+    for (Component component : components) {
+      weight += component.solver.getWeightOfFeedbackEdgeSet();
+    }
+    return weight;
   }
 
   public int getNumberOfLoops() {
-    return solver.getNumberOfLoops();
+    int loops = 0;
+    for (Component component : components) {
+      loops += component.solver.getNumberOfLoops();
+    }
+    return loops;
   }
 
   public Set<Edge> getFeedbackEdgeSet() {
-    return solver.getEdges();
+    Set<Edge> edges = new HashSet<Edge>();
+    for (Component component : components) {
+      edges.addAll(component.getFeedbackEdges());
+    }
+    return edges;
   }
 
   public Set<Cycle> getCycles() {
@@ -85,4 +137,40 @@ public class IncrementalCyclesAndFESSolver<V> {
   public int getIterations() {
     return iterations;
   }
+
+  private MinimumFeedbackEdgeSetSolver newSolver(Set<Cycle> componentCycles) {
+    if (timeoutUnit == null) {
+      return new MinimumFeedbackEdgeSetSolver(componentCycles);
+    }
+    return new MinimumFeedbackEdgeSetSolver(componentCycles, threads, timeout, timeoutUnit);
+  }
+
+  private final class Component {
+    private final Set<V> vertices;
+    private final Set<Cycle> componentCycles = new HashSet<Cycle>();
+    private MinimumFeedbackEdgeSetSolver solver;
+    private boolean settled = false;
+
+    private Component(Set<V> vertices) {
+      this.vertices = vertices;
+    }
+
+    private void addCycles(CycleDetector<V> cycleDetector, boolean exhaustiveSearch) {
+      searchCyclesCalls += cycleDetector.getSearchCyclesCalls();
+      if (cycleDetector.isAcyclicGraph()) {
+        // the feedback edges break all the cycles of the component, unless the search depth was limited
+        settled = exhaustiveSearch;
+      } else {
+        componentCycles.addAll(cycleDetector.getCycles());
+        cycles.addAll(cycleDetector.getCycles());
+      }
+      if (solver == null || !cycleDetector.isAcyclicGraph()) {
+        solver = newSolver(componentCycles);
+      }
+    }
+
+    private Set<Edge> getFeedbackEdges() {
+      return solver.getEdges();
+    }
+  }
 }
@@ -20,17 +20,21 @@
 package org.sonar.graph;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MinimumFeedbackEdgeSetSolver {
 
-  private final List<FeedbackCycle> feedbackCycles;
-  private Set<FeedbackEdge> feedbackEdges;
-  private int minimumFeedbackEdgesWeight = Integer.MAX_VALUE;
-  private final int cyclesNumber;
-  private final int maxNumberCyclesForSearchingMinimumFeedback;
+  private Set<FeedbackEdge> feedbackEdges = new HashSet<FeedbackEdge>();
+  private int minimumFeedbackEdgesWeight = 0;
   private static final int DEFAULT_MAXIMUM_NUMBER_OF_LOOPS = 1000000;
   private static final int MAXIMUM_NUMBER_OF_CYCLE_THAT_CAN_BE_HANDLED = 1500;
-  private final int maximumNumberOfLoops;
+  private static final long NO_DEADLINE = -1;
 
   public int getNumberOfLoops() {
     return numberOfLoops;
@@ -47,11 +51,127 @@ public class MinimumFeedbackEdgeSetSolver {
   }
 
   public MinimumFeedbackEdgeSetSolver(Set<Cycle> cycles, int maximumNumberOfLoops, int maxNumberCyclesForSearchingMinimumFeedback) {
-    this.maximumNumberOfLoops = maximumNumberOfLoops;
-    this.feedbackCycles = FeedbackCycle.buildFeedbackCycles(cycles);
-    this.cyclesNumber = cycles.size();
-    this.maxNumberCyclesForSearchingMinimumFeedback = maxNumberCyclesForSearchingMinimumFeedback;
-    this.run();
+    for (Set<Cycle> independentCycles : groupCyclesSharingEdges(cycles)) {
+      List<FeedbackCycle> feedbackCycles = FeedbackCycle.buildFeedbackCycles(independentCycles);
+      Set<FeedbackEdge> lightFeedbackEdges = lightResearchForFeedbackEdges(feedbackCycles);
+      if (feedbackCycles.size() < maxNumberCyclesForSearchingMinimumFeedback) {
+        Search search = new Search(feedbackCycles, null, new AtomicInteger(getWeight(lightFeedbackEdges)), maximumNumberOfLoops,
+            NO_DEADLINE);
+        search.call();
+        addSolution(Arrays.asList(search), lightFeedbackEdges);
+      } else {
+        addSolution(Collections.<Search> emptyList(), lightFeedbackEdges);
+      }
+    }
+  }
+
+  /**
+   * Runs the exhaustive search on several threads, each of them exploring the solutions that start with a different edge of
+   * the first cycle. The search is stopped once the timeout is reached, in which case the best solution found so far is kept.
+   * As with the other constructors, groups of 1500 cycles sharing edges or more only get the light solution.
+   */
+  public MinimumFeedbackEdgeSetSolver(Set<Cycle> cycles, int threads, long timeout, TimeUnit unit) {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    try {
+      List<Set<FeedbackEdge>> lightSolutions = new ArrayList<Set<FeedbackEdge>>();
+      List<List<Future<Search>>> searchesByGroup = new ArrayList<List<Future<Search>>>();
+      for (Set<Cycle> independentCycles : groupCyclesSharingEdges(cycles)) {
+        List<FeedbackCycle> feedbackCycles = FeedbackCycle.buildFeedbackCycles(independentCycles);
+        Set<FeedbackEdge> lightFeedbackEdges = lightResearchForFeedbackEdges(feedbackCycles);
+        List<Future<Search>> searches = new ArrayList<Future<Search>>();
+        if (feedbackCycles.size() < MAXIMUM_NUMBER_OF_CYCLE_THAT_CAN_BE_HANDLED) {
+          AtomicInteger bound = new AtomicInteger(getWeight(lightFeedbackEdges));
+          for (FeedbackEdge firstEdge : getCandidateEdges(feedbackCycles.get(0))) {
+            searches.add(executorService.submit(new Search(feedbackCycles, firstEdge, bound, Integer.MAX_VALUE, deadline)));
+          }
+        }
+        lightSolutions.add(lightFeedbackEdges);
+        searchesByGroup.add(searches);
+      }
+      for (int i = 0; i < lightSolutions.size(); i++) {
+        List<Search> searches = new ArrayList<Search>();
+        for (Future<Search> future : searchesByGroup.get(i)) {
+          searches.add(future.get());
+        }
+        addSolution(searches, lightSolutions.get(i));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Search of minimum feedback edge set has been interrupted", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Unable to search minimum feedback edge set", e.getCause());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  /**
+   * Keeps the lightest solution found by the searches, the first one in case of tie, or else the light solution.
+   */
+  private void addSolution(List<Search> searches, Set<FeedbackEdge> lightFeedbackEdges) {
+    Set<FeedbackEdge> edges = lightFeedbackEdges;
+    int weight = getWeight(lightFeedbackEdges);
+    boolean found = false;
+    for (Search search : searches) {
+      numberOfLoops += search.loops;
+      if (search.feedbackEdges != null && (!found || search.weight < weight)) {
+        edges = search.feedbackEdges;
+        weight = search.weight;
+        found = true;
+      }
+    }
+    feedbackEdges.addAll(edges);
+    minimumFeedbackEdgesWeight += weight;
+  }
+
+  /**
+   * Cycles without any edge in common can be broken independently : each group of cycles connected by their edges, which never
+   * spans several strongly connected components, is solved on its own and the feedback edge sets are merged.
+   */
+  private static List<Set<Cycle>> groupCyclesSharingEdges(Set<Cycle> cycles) {
+    List<Cycle> cyclesList = new ArrayList<Cycle>(cycles);
+    int[] parents = new int[cyclesList.size()];
+    Map<Edge, Integer> cycleByEdge = new HashMap<Edge, Integer>();
+    for (int i = 0; i < parents.length; i++) {
+      parents[i] = i;
+      for (Edge edge : cyclesList.get(i).getEdges()) {
+        Integer other = cycleByEdge.get(edge);
+        if (other == null) {
+          cycleByEdge.put(edge, i);
+        } else {
+          parents[findRoot(parents, i)] = findRoot(parents, other);
+        }
+      }
+    }
+    Map<Integer, Set<Cycle>> groups = new LinkedHashMap<Integer, Set<Cycle>>();
+    for (int i = 0; i < parents.length; i++) {
+      Integer root = findRoot(parents, i);
+      Set<Cycle> group = groups.get(root);
+      if (group == null) {
+        group = new HashSet<Cycle>();
+        groups.put(root, group);
+      }
+      group.add(cyclesList.get(i));
+    }
+    return new ArrayList<Set<Cycle>>(groups.values());
+  }
+
+  private static int findRoot(int[] parents, int index) {
+    int root = index;
+    while (parents[root] != root) {
+      root = parents[root];
+    }
+    int current = index;
+    while (parents[current] != root) {
+      int next = parents[current];
+      parents[current] = root;
+      current = next;
+    }
+    return root;
   }
 
   public int getWeightOfFeedbackEdgeSet() {
@@ -69,84 +189,134 @@ public class MinimumFeedbackEdgeSetSolver {
     return edges;
   }
 
-  private void run() {
-    Set<FeedbackEdge> pendingFeedbackEdges = new HashSet<FeedbackEdge>();
-    if (cyclesNumber < maxNumberCyclesForSearchingMinimumFeedback) {
-      searchFeedbackEdges(0, 0, pendingFeedbackEdges);
-    }
-    else {
-      lightResearchForFeedbackEdges();
-    }
-  }
-
-  private void lightResearchForFeedbackEdges() {
-    feedbackEdges = new HashSet<FeedbackEdge>();
+  private static Set<FeedbackEdge> lightResearchForFeedbackEdges(List<FeedbackCycle> feedbackCycles) {
+    Set<FeedbackEdge> edges = new HashSet<FeedbackEdge>();
     for (FeedbackCycle cycle : feedbackCycles) {
       for (FeedbackEdge edge : cycle) {
-        feedbackEdges.add(edge);
+        edges.add(edge);
         break;
       }
     }
-    minimumFeedbackEdgesWeight = 0;
-    for(FeedbackEdge edge : feedbackEdges) {
-      minimumFeedbackEdgesWeight += edge.getWeight();
+    return edges;
+  }
+
+  private static int getWeight(Set<FeedbackEdge> edges) {
+    int weight = 0;
+    for (FeedbackEdge edge : edges) {
+      weight += edge.getWeight();
     }
+    return weight;
   }
 
-  private void searchFeedbackEdges(int level, int pendingWeight, Set<FeedbackEdge> pendingFeedbackEdges) {
-    if (numberOfLoops++ > maximumNumberOfLoops) {
-      return;
+  /**
+   * Edges of the cycle worth trying : all edges shared with other cycles, but only the lightest of the edges that are not.
+   */
+  private static List<FeedbackEdge> getCandidateEdges(FeedbackCycle feedbackCycle) {
+    List<FeedbackEdge> candidates = new ArrayList<FeedbackEdge>();
+    boolean hasAnEdgeWithOccurrenceOfOneBeenUsed = false;
+    for (FeedbackEdge feedbackEdge : feedbackCycle) {
+      if (feedbackEdge.getOccurences() == 1) {
+        if (hasAnEdgeWithOccurrenceOfOneBeenUsed) {
+          continue;
+        }
+        hasAnEdgeWithOccurrenceOfOneBeenUsed = true;
+      }
+      candidates.add(feedbackEdge);
     }
+    return candidates;
+  }
 
-    if (pendingWeight >= minimumFeedbackEdgesWeight) {
-      return;
+  /**
+   * Branch and bound search of the lightest feedback edge set. The bound is shared between concurrent searches : a search gives up
+   * the solutions strictly heavier than the best one found by the others, but still reports its own solutions of the same weight
+   * so that the result does not depend on the scheduling of the threads.
+   */
+  private static final class Search implements Callable<Search> {
+
+    private static final int LOOPS_BETWEEN_DEADLINE_CHECKS = 1024;
+
+    private final List<FeedbackCycle> feedbackCycles;
+    private final FeedbackEdge firstEdge;
+    private final AtomicInteger sharedBound;
+    private final int maximumNumberOfLoops;
+    private final long deadline;
+    private final Set<FeedbackEdge> pendingFeedbackEdges = new HashSet<FeedbackEdge>();
+    private Set<FeedbackEdge> feedbackEdges;
+    private int weight = Integer.MAX_VALUE;
+    private int loops = 0;
+    private boolean stopped = false;
+
+    private Search(List<FeedbackCycle> feedbackCycles, FeedbackEdge firstEdge, AtomicInteger sharedBound, int maximumNumberOfLoops,
+        long deadline) {
+      this.feedbackCycles = feedbackCycles;
+      this.firstEdge = firstEdge;
+      this.sharedBound = sharedBound;
+      this.maximumNumberOfLoops = maximumNumberOfLoops;
+      this.deadline = deadline;
     }
 
-    if (level == cyclesNumber) {
-      minimumFeedbackEdgesWeight = pendingWeight;
-      feedbackEdges = new HashSet<FeedbackEdge>(pendingFeedbackEdges);
-      return;
+    public Search call() {
+      if (firstEdge == null) {
+        searchFeedbackEdges(0, 0);
+      } else {
+        pendingFeedbackEdges.add(firstEdge);
+        searchFeedbackEdges(1, firstEdge.getWeight());
+      }
+      return this;
     }
 
-    FeedbackCycle feedbackCycle = feedbackCycles.get(level);
+    private void searchFeedbackEdges(int level, int pendingWeight) {
+      if (isStopped()) {
+        return;
+      }
 
-    if (doesFeedbackEdgesContainAnEdgeOfTheCycle(pendingFeedbackEdges, feedbackCycle)) {
-      searchFeedbackEdges(level + 1, pendingWeight, pendingFeedbackEdges);
-    }
-    else {
-      boolean hasAnEdgeWithOccurrenceOfOneBeenUsed = false;
-      for (FeedbackEdge feedbackEdge : feedbackCycle) {
-        if (feedbackEdge.getOccurences() == 1) {
-          if (hasAnEdgeWithOccurrenceOfOneBeenUsed) {
-            continue;
-          }
-          else {
-            hasAnEdgeWithOccurrenceOfOneBeenUsed = true;
-          }
-        }
-        int edgeWeight = addNewEdge(feedbackEdge, pendingFeedbackEdges);
-        pendingWeight += edgeWeight;
+      if (pendingWeight >= weight || pendingWeight > sharedBound.get()) {
+        return;
+      }
 
-        searchFeedbackEdges(level + 1, pendingWeight, pendingFeedbackEdges);
-        pendingWeight -= edgeWeight;
+      // cycles already broken by the pending edges are skipped without recursion
+      int currentLevel = level;
+      while (currentLevel < feedbackCycles.size() && doesFeedbackEdgesContainAnEdgeOfTheCycle(feedbackCycles.get(currentLevel))) {
+        currentLevel++;
+      }
+
+      if (currentLevel == feedbackCycles.size()) {
+        weight = pendingWeight;
+        feedbackEdges = new HashSet<FeedbackEdge>(pendingFeedbackEdges);
+        lowerSharedBound(pendingWeight);
+        return;
+      }
+
+      for (FeedbackEdge feedbackEdge : getCandidateEdges(feedbackCycles.get(currentLevel))) {
+        pendingFeedbackEdges.add(feedbackEdge);
+        searchFeedbackEdges(currentLevel + 1, pendingWeight + feedbackEdge.getWeight());
         pendingFeedbackEdges.remove(feedbackEdge);
       }
     }
-  }
 
-  private boolean doesFeedbackEdgesContainAnEdgeOfTheCycle(Set<FeedbackEdge> pendingFeedbackEdges, FeedbackCycle cycle) {
-    boolean contains = false;
-    for (FeedbackEdge feedbackEdge : cycle) {
-      if (pendingFeedbackEdges.contains(feedbackEdge)) {
-        contains = true;
-        break;
+    private boolean isStopped() {
+      if (!stopped) {
+        loops++;
+        stopped = loops > maximumNumberOfLoops
+          || (deadline != NO_DEADLINE && loops % LOOPS_BETWEEN_DEADLINE_CHECKS == 0 && System.nanoTime() - deadline > 0);
+      }
+      return stopped;
+    }
+
+    private void lowerSharedBound(int newBound) {
+      int bound = sharedBound.get();
+      while (newBound < bound && !sharedBound.compareAndSet(bound, newBound)) {
+        bound = sharedBound.get();
       }
     }
-    return contains;
-  }
 
-  private int addNewEdge(FeedbackEdge feedbackEdge, Set<FeedbackEdge> pendingFeedbackEdges) {
-    pendingFeedbackEdges.add(feedbackEdge);
-    return feedbackEdge.getWeight();
+    private boolean doesFeedbackEdgesContainAnEdgeOfTheCycle(FeedbackCycle cycle) {
+      for (FeedbackEdge feedbackEdge : cycle) {
+        if (pendingFeedbackEdges.contains(feedbackEdge)) {
+          return true;
+        }
+      }
+      return false;
+    }
   }
 }
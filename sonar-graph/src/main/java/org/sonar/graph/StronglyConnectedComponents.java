@@ -0,0 +1,155 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.graph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decomposes a graph into its strongly connected components with the Tarjan algorithm. Every cycle of the graph lies in a
+ * single component, so that cycle searches can be restricted to cyclic components. The depth-first traversal is driven by an
+ * explicit stack in order to support deep graphs.
+ */
+public class StronglyConnectedComponents<V> {
+
+  private final DirectedGraphAccessor<V, ? extends Edge> graph;
+  private final Set<V> vertices;
+  private final Set<Edge> edgesToExclude;
+  private final Map<V, VertexState<V>> states = new HashMap<V, VertexState<V>>();
+  private final LinkedList<V> componentStack = new LinkedList<V>();
+  private final List<Set<V>> components = new ArrayList<Set<V>>();
+  private final List<Set<V>> cyclicComponents = new ArrayList<Set<V>>();
+  private int index = 0;
+
+  public StronglyConnectedComponents(DirectedGraphAccessor<V, ? extends Edge> graph) {
+    this(graph, graph.getVertices(), new HashSet<Edge>());
+  }
+
+  public StronglyConnectedComponents(DirectedGraphAccessor<V, ? extends Edge> graph, Collection<V> vertices, Set<Edge> edgesToExclude) {
+    this.graph = graph;
+    this.vertices = vertices instanceof Set ? (Set<V>) vertices : new HashSet<V>(vertices);
+    this.edgesToExclude = edgesToExclude;
+    for (V vertex : vertices) {
+      if (!states.containsKey(vertex)) {
+        visit(vertex);
+      }
+    }
+  }
+
+  private void visit(V root) {
+    LinkedList<VertexState<V>> path = new LinkedList<VertexState<V>>();
+    path.addLast(enter(root));
+    while (!path.isEmpty()) {
+      VertexState<V> current = path.getLast();
+      if (current.outgoingEdges.hasNext()) {
+        Edge<V> edge = current.outgoingEdges.next();
+        if (isFollowed(edge)) {
+          VertexState<V> next = states.get(edge.getTo());
+          if (next == null) {
+            path.addLast(enter(edge.getTo()));
+          } else if (next.onStack) {
+            current.lowLink = Math.min(current.lowLink, next.index);
+          }
+        }
+      } else {
+        path.removeLast();
+        if (current.lowLink == current.index) {
+          popComponent(current.vertex);
+        }
+        if (!path.isEmpty()) {
+          VertexState<V> parent = path.getLast();
+          parent.lowLink = Math.min(parent.lowLink, current.lowLink);
+        }
+      }
+    }
+  }
+
+  private VertexState<V> enter(V vertex) {
+    Iterator<Edge<V>> outgoingEdges = (Iterator) graph.getOutgoingEdges(vertex).iterator();
+    VertexState<V> state = new VertexState<V>(vertex, index, outgoingEdges);
+    index++;
+    states.put(vertex, state);
+    componentStack.addLast(vertex);
+    return state;
+  }
+
+  private void popComponent(V root) {
+    Set<V> component = new HashSet<V>();
+    V vertex;
+    do {
+      vertex = componentStack.removeLast();
+      states.get(vertex).onStack = false;
+      component.add(vertex);
+    } while (!vertex.equals(root));
+    components.add(component);
+    if (component.size() > 1 || hasLoop(root)) {
+      cyclicComponents.add(component);
+    }
+  }
+
+  private boolean hasLoop(V vertex) {
+    Edge edge = graph.getEdge(vertex, vertex);
+    return edge != null && !edgesToExclude.contains(edge);
+  }
+
+  private boolean isFollowed(Edge<V> edge) {
+    return !edgesToExclude.contains(edge) && vertices.contains(edge.getTo());
+  }
+
+  /**
+   * Components in reverse topological order : no edge goes from a component to a component that precedes it.
+   */
+  public List<Set<V>> getComponents() {
+    return components;
+  }
+
+  /**
+   * Components containing at least one cycle, i.e. made of several vertices or of a vertex that depends on itself.
+   */
+  public List<Set<V>> getCyclicComponents() {
+    return cyclicComponents;
+  }
+
+  public boolean isAcyclicGraph() {
+    return cyclicComponents.isEmpty();
+  }
+
+  private static final class VertexState<V> {
+    private final V vertex;
+    private final int index;
+    private final Iterator<Edge<V>> outgoingEdges;
+    private int lowLink;
+    private boolean onStack = true;
+
+    private VertexState(V vertex, int index, Iterator<Edge<V>> outgoingEdges) {
+      this.vertex = vertex;
+      this.index = index;
+      this.lowLink = index;
+      this.outgoingEdges = outgoingEdges;
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.graph;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class CompactDirectedGraphTest {
+
+  private DirectedGraph<String, StringEdge> source;
+  private CompactDirectedGraph<String, StringEdge> graph;
+
+  @Before
+  public void init() {
+    source = DirectedGraph.createStringDirectedGraph();
+    source.addEdge("A", "C").addEdge("A", "B", 4).addEdge("B", "C");
+    source.addVertex("D");
+    graph = CompactDirectedGraph.copyOf(source);
+  }
+
+  @Test
+  public void testGetVertices() {
+    assertThat(graph.getVertices(), hasItems("A", "B", "C", "D"));
+    assertThat(graph.getVertices().size(), is(4));
+    assertThat(graph.getVerticesCount(), is(4));
+    assertThat(graph.getEdgesCount(), is(3));
+  }
+
+  @Test
+  public void testGetEdge() {
+    assertThat(graph.getEdge("A", "B").getWeight(), is(4));
+    assertThat(graph.getEdge("B", "C"), is(new StringEdge("B", "C")));
+    assertNull(graph.getEdge("C", "B"));
+    assertNull(graph.getEdge("A", "T"));
+    assertTrue(graph.hasEdge("A", "C"));
+    assertFalse(graph.hasEdge("D", "A"));
+  }
+
+  @Test
+  public void testGetOutgoingEdges() {
+    assertThat(graph.getOutgoingEdges("A").size(), is(2));
+    assertThat(graph.getOutgoingEdges("A"), hasItems(new StringEdge("A", "B"), new StringEdge("A", "C")));
+    assertThat(graph.getOutgoingEdges("D").isEmpty(), is(true));
+    assertThat(graph.getOutgoingEdges("T").isEmpty(), is(true));
+  }
+
+  @Test
+  public void testGetIncomingEdges() {
+    assertThat(graph.getIncomingEdges("C").size(), is(2));
+    assertThat(graph.getIncomingEdges("C"), hasItems(new StringEdge("A", "C"), new StringEdge("B", "C")));
+    assertThat(graph.getIncomingEdges("A").isEmpty(), is(true));
+  }
+
+  @Test
+  public void testIndexes() {
+    int a = graph.indexOf("A");
+    assertThat(graph.getVertex(a), is("A"));
+    assertThat(graph.getOutDegree(a), is(2));
+    assertThat(graph.getVertex(graph.getTarget(a, 0)), anyOf(is("B"), is("C")));
+    assertThat(graph.indexOf("T"), is(-1));
+  }
+
+  @Test
+  public void testCopyLimitedSetOfVertices() {
+    graph = CompactDirectedGraph.copyOf(source, Arrays.asList("A", "B"));
+    assertThat(graph.getVertices().size(), is(2));
+    assertThat(graph.getEdgesCount(), is(1));
+    assertNull(graph.getEdge("A", "C"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testDuplicatedEdge() {
+    new CompactDirectedGraph<String, StringEdge>(Collections.<String> emptyList(), Arrays.asList(new StringEdge("A", "B"),
+        new StringEdge("A", "C"), new StringEdge("A", "B")));
+  }
+
+  @Test
+  public void testCycleDetection() {
+    source.addEdge("C", "A").addEdge("C", "D").addEdge("D", "B");
+    CycleDetector<String> cycleDetector = new CycleDetector<String>(CompactDirectedGraph.copyOf(source));
+    cycleDetector.detectCycles();
+    assertThat(cycleDetector.getCycles().size(), is(3));
+    assertThat(cycleDetector.getCycles(), is(new CycleDetector<String>(source).detectCycles()));
+  }
+}
@@ -21,6 +21,8 @@ package org.sonar.graph;
 
 import org.junit.Test;
 
+import java.util.concurrent.TimeUnit;
+
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
@@ -69,4 +71,48 @@ public class IncrementalCyclesAndFESSolverTest {
     cyclesAndFESSolver.getFeedbackEdgeSet();
   }
 
+  @Test
+  public void testDoNotSearchAcyclicParts() {
+    DirectedGraph<String, StringEdge> dcg = DirectedGraph.createStringDirectedGraph();
+    dcg.addEdge("A", "B").addEdge("B", "C").addEdge("A", "C");
+
+    IncrementalCyclesAndFESSolver<String> cyclesAndFESSolver = new IncrementalCyclesAndFESSolver<String>(dcg, dcg.getVertices());
+    assertThat(cyclesAndFESSolver.isAcyclicGraph(), is(true));
+    assertThat(cyclesAndFESSolver.getSearchCyclesCalls(), is(0L));
+    assertThat(cyclesAndFESSolver.getFeedbackEdgeSet().isEmpty(), is(true));
+    assertThat(cyclesAndFESSolver.getWeightOfFeedbackEdgeSet(), is(0));
+  }
+
+  @Test
+  public void testSolveEachComponent() {
+    DirectedGraph<String, StringEdge> dcg = DirectedGraph.createStringDirectedGraph();
+    dcg.addEdge("A", "B", 2).addEdge("B", "A", 3);
+    dcg.addEdge("B", "C");
+    dcg.addEdge("C", "D", 4).addEdge("D", "E", 5).addEdge("E", "F", 6).addEdge("F", "C", 7);
+
+    IncrementalCyclesAndFESSolver<String> cyclesAndFESSolver = new IncrementalCyclesAndFESSolver<String>(dcg, dcg.getVertices(), 2,
+        Integer.MAX_VALUE);
+    assertThat(cyclesAndFESSolver.getCycles().size(), is(2));
+    assertThat(cyclesAndFESSolver.getFeedbackEdgeSet().size(), is(2));
+    assertThat(cyclesAndFESSolver.getFeedbackEdgeSet().contains(dcg.getEdge("A", "B")), is(true));
+    assertThat(cyclesAndFESSolver.getFeedbackEdgeSet().contains(dcg.getEdge("C", "D")), is(true));
+    assertThat(cyclesAndFESSolver.getWeightOfFeedbackEdgeSet(), is(6));
+  }
+
+  @Test
+  public void testSolveEachComponentWithinTimeout() {
+    DirectedGraph<String, StringEdge> dcg = DirectedGraph.createStringDirectedGraph();
+    dcg.addEdge("A", "B", 2).addEdge("B", "A", 3);
+    dcg.addEdge("B", "C");
+    dcg.addEdge("C", "D", 4).addEdge("D", "E", 5).addEdge("E", "F", 6).addEdge("F", "C", 7);
+
+    IncrementalCyclesAndFESSolver<String> cyclesAndFESSolver = new IncrementalCyclesAndFESSolver<String>(dcg, dcg.getVertices(), 2, 1,
+        TimeUnit.MINUTES);
+    assertThat(cyclesAndFESSolver.getCycles().size(), is(2));
+    assertThat(cyclesAndFESSolver.getFeedbackEdgeSet().size(), is(2));
+    assertThat(cyclesAndFESSolver.getFeedbackEdgeSet().contains(dcg.getEdge("A", "B")), is(true));
+    assertThat(cyclesAndFESSolver.getFeedbackEdgeSet().contains(dcg.getEdge("C", "D")), is(true));
+    assertThat(cyclesAndFESSolver.getWeightOfFeedbackEdgeSet(), is(6));
+  }
+
 }
@@ -20,6 +20,7 @@
 package org.sonar.graph;
 
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
@@ -107,4 +108,39 @@ public class MinimumFeedbackEdgeSetSolverTest {
     assertTrue(approximateSolver.getEdges().contains(dcg.getEdge("C", "A")));
   }
 
+  @Test
+  public void testParallelSearchFindsSameSolution() {
+    DirectedGraph<String, StringEdge> dcg = DirectedGraph.createStringDirectedGraph();
+    dcg.addEdge("A", "B", 5).addEdge("B", "C", 9).addEdge("C", "A", 1);
+    dcg.addEdge("D", "B", 5).addEdge("C", "D", 7);
+    dcg.addEdge("F", "B", 5).addEdge("C", "F", 4);
+    dcg.addEdge("G", "H", 2).addEdge("H", "G", 3);
+    CycleDetector<String> cycleDetector = new CycleDetector<String>(dcg);
+    cycleDetector.detectCycles();
+
+    MinimumFeedbackEdgeSetSolver sequentialSolver = new MinimumFeedbackEdgeSetSolver(cycleDetector.getCycles());
+    MinimumFeedbackEdgeSetSolver parallelSolver = new MinimumFeedbackEdgeSetSolver(cycleDetector.getCycles(), 4, 1, TimeUnit.MINUTES);
+    assertThat(parallelSolver.getEdges(), is(sequentialSolver.getEdges()));
+    assertThat(parallelSolver.getWeightOfFeedbackEdgeSet(), is(11));
+    assertTrue(parallelSolver.getEdges().contains(dcg.getEdge("B", "C")));
+    assertTrue(parallelSolver.getEdges().contains(dcg.getEdge("G", "H")));
+  }
+
+  @Test
+  public void testKeepBestSolutionWhenTimeoutIsReached() {
+    DirectedGraph<String, StringEdge> dcg = DirectedGraph.createStringDirectedGraph();
+    dcg.addEdge("A", "B", 7).addEdge("B", "C", 3).addEdge("C", "A", 2);
+    dcg.addEdge("A", "C", 1).addEdge("C", "B", 4);
+    CycleDetector<String> cycleDetector = new CycleDetector<String>(dcg);
+    cycleDetector.detectCycles();
+
+    MinimumFeedbackEdgeSetSolver solver = new MinimumFeedbackEdgeSetSolver(cycleDetector.getCycles(), 2, 0, TimeUnit.MILLISECONDS);
+    for (Cycle cycle : cycleDetector.getCycles()) {
+      boolean broken = false;
+      for (Edge edge : cycle.getEdges()) {
+        broken |= solver.getEdges().contains(edge);
+      }
+      assertTrue(broken);
+    }
+  }
 }
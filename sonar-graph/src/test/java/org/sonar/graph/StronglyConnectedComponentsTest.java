@@ -0,0 +1,113 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.graph;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class StronglyConnectedComponentsTest {
+
+  @Test
+  public void testAcyclicGraph() {
+    DirectedGraph<String, StringEdge> dag = DirectedGraph.createStringDirectedGraph();
+    dag.addEdge("A", "B").addEdge("B", "C").addEdge("A", "C");
+
+    StronglyConnectedComponents<String> components = new StronglyConnectedComponents<String>(dag);
+    assertThat(components.getComponents().size(), is(3));
+    assertTrue(components.isAcyclicGraph());
+  }
+
+  @Test
+  public void testComponentsInReverseTopologicalOrder() {
+    DirectedGraph<String, StringEdge> dcg = DirectedGraph.createStringDirectedGraph();
+    dcg.addEdge("A", "B").addEdge("B", "A");
+    dcg.addEdge("B", "C");
+    dcg.addEdge("C", "D").addEdge("D", "E").addEdge("E", "C");
+
+    StronglyConnectedComponents<String> components = new StronglyConnectedComponents<String>(dcg);
+    List<Set<String>> cyclicComponents = components.getCyclicComponents();
+    assertThat(cyclicComponents.size(), is(2));
+    assertThat(cyclicComponents.get(0), is(vertices("C", "D", "E")));
+    assertThat(cyclicComponents.get(1), is(vertices("A", "B")));
+  }
+
+  @Test
+  public void testLoop() {
+    DirectedGraph<String, StringEdge> dcg = DirectedGraph.createStringDirectedGraph();
+    dcg.addEdge("A", "A").addEdge("A", "B");
+
+    StronglyConnectedComponents<String> components = new StronglyConnectedComponents<String>(dcg);
+    assertThat(components.getComponents().size(), is(2));
+    assertThat(components.getCyclicComponents().size(), is(1));
+    assertThat(components.getCyclicComponents().get(0), is(vertices("A")));
+  }
+
+  @Test
+  public void testExcludeEdges() {
+    DirectedGraph<String, StringEdge> dcg = DirectedGraph.createStringDirectedGraph();
+    dcg.addEdge("A", "B").addEdge("B", "C").addEdge("C", "A");
+    dcg.addEdge("C", "C");
+
+    Set<Edge> edgesToExclude = new HashSet<Edge>();
+    edgesToExclude.add(dcg.getEdge("C", "A"));
+    edgesToExclude.add(dcg.getEdge("C", "C"));
+
+    StronglyConnectedComponents<String> components = new StronglyConnectedComponents<String>(dcg, dcg.getVertices(), edgesToExclude);
+    assertThat(components.getComponents().size(), is(3));
+    assertTrue(components.isAcyclicGraph());
+  }
+
+  @Test
+  public void testLimitedSetOfVertices() {
+    DirectedGraph<String, StringEdge> dcg = DirectedGraph.createStringDirectedGraph();
+    dcg.addEdge("A", "B").addEdge("B", "C").addEdge("C", "A");
+
+    StronglyConnectedComponents<String> components = new StronglyConnectedComponents<String>(dcg, Arrays.asList("A", "B"), new HashSet<Edge>());
+    assertThat(components.getComponents().size(), is(2));
+    assertTrue(components.isAcyclicGraph());
+  }
+
+  @Test
+  public void testDeepGraph() {
+    DirectedGraph<String, StringEdge> dcg = DirectedGraph.createStringDirectedGraph();
+    int size = 100000;
+    for (int i = 0; i < size; i++) {
+      dcg.addEdge("V" + i, "V" + (i + 1));
+    }
+    dcg.addEdge("V" + size, "V0");
+
+    StronglyConnectedComponents<String> components = new StronglyConnectedComponents<String>(dcg);
+    assertThat(components.getComponents().size(), is(1));
+    assertFalse(components.isAcyclicGraph());
+  }
+
+  private static Set<String> vertices(String... vertices) {
+    return new HashSet<String>(Arrays.asList(vertices));
+  }
+}
@@ -244,6 +244,15 @@ public interface CoreProperties {
   String DESIGN_SKIP_PACKAGE_DESIGN_PROPERTY = "sonar.skipPackageDesign";
   boolean DESIGN_SKIP_PACKAGE_DESIGN_DEFAULT_VALUE = false;
 
+  /**
+   * Maximum duration in seconds of each search of minimum feedback edges in design analysis. When positive, the search runs on
+   * all available processors and keeps the best solution found when the time is over. Zero bounds the search by a number of loops only.
+   *
+   * @since 3.2
+   */
+  String DESIGN_FEEDBACK_EDGES_TIMEOUT_PROPERTY = "sonar.design.feedbackEdgesTimeout";
+  int DESIGN_FEEDBACK_EDGES_TIMEOUT_DEFAULT_VALUE = 0;
+
   /* Findbugs */
   String FINDBUGS_PLUGIN = "findbugs";
   String FINDBUGS_EFFORT_PROPERTY = "sonar.findbugs.effort";
@@ -21,7 +21,11 @@ package org.sonar.api.batch;
 
 import com.google.common.base.Predicates;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
 import org.apache.commons.lang.ClassUtils;
 import org.sonar.api.BatchExtension;
 import org.sonar.api.batch.maven.DependsUponMavenPlugin;
@@ -36,7 +40,10 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @since 1.11
@@ -129,6 +136,44 @@ public class BatchExtensionDictionnary {
     return Collections2.filter(sortedList, Predicates.in(extensions));
   }
 
+  /**
+   * Returns, for each of the given extensions, the other given extensions that must be executed before it, directly or
+   * through intermediate objects declared with {@link DependsUpon}, {@link DependedUpon} and {@link Phase}. Two extensions
+   * that are not predecessors of each other can be executed in any order.
+   *
+   * @since 3.2
+   */
+  public <T> Map<T, Set<T>> getPredecessors(Collection<T> extensions) {
+    SetMultimap<Object, Object> edges = HashMultimap.create();
+    for (T extension : extensions) {
+      for (Object dependency : getDependencies(extension)) {
+        edges.put(extension, dependency);
+      }
+      for (Object generates : getDependents(extension)) {
+        edges.put(generates, extension);
+      }
+      completePhaseDependencies(edges, extension);
+    }
+
+    Map<T, Set<T>> result = Maps.newLinkedHashMap();
+    for (T extension : extensions) {
+      Set<T> predecessors = Sets.newLinkedHashSet();
+      Set<Object> visited = Sets.newHashSet();
+      LinkedList<Object> stack = Lists.newLinkedList(edges.get(extension));
+      while (!stack.isEmpty()) {
+        Object node = stack.removeFirst();
+        if (visited.add(node)) {
+          if (node != extension && extensions.contains(node)) {
+            predecessors.add((T) node);
+          }
+          stack.addAll(edges.get(node));
+        }
+      }
+      result.put(extension, predecessors);
+    }
+    return result;
+  }
+
   /**
    * Extension dependencies
    */
@@ -155,6 +200,18 @@ public class BatchExtensionDictionnary {
     }
   }
 
+  private void completePhaseDependencies(SetMultimap<Object, Object> edges, Object extension) {
+    Phase.Name phase = evaluatePhase(extension);
+    edges.put(extension, phase);
+    for (Phase.Name name : Phase.Name.values()) {
+      if (phase.compareTo(name) < 0) {
+        edges.put(name, extension);
+      } else if (phase.compareTo(name) > 0) {
+        edges.put(extension, name);
+      }
+    }
+  }
+
 
   protected List evaluateAnnotatedClasses(Object extension, Class<? extends Annotation> annotation) {
     List<Object> results = Lists.newArrayList();
@@ -0,0 +1,51 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2012 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.api.batch;
+
+import org.sonar.api.BatchExtension;
+import org.sonar.api.resources.InputFile;
+import org.sonar.api.resources.Language;
+import org.sonar.api.resources.Resource;
+import org.sonar.duplications.statement.StatementChunker;
+import org.sonar.duplications.token.TokenChunker;
+
+/**
+ * Rules to split source files of a language into tokens and statements, used to detect duplicated code
+ * in the same way as for Java. Takes precedence over {@link CpdMapping} of the same language.
+ *
+ * @since 3.2
+ */
+public interface CpdStatementMapping extends BatchExtension {
+
+  Language getLanguage();
+
+  /**
+   * Chunkers are not shared between threads, so a new instance is requested for each of them.
+   */
+  TokenChunker createTokenChunker();
+
+  /**
+   * @see #createTokenChunker()
+   */
+  StatementChunker createStatementChunker();
+
+  Resource createResource(InputFile inputFile);
+
+}
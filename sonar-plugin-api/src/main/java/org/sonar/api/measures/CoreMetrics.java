@@ -989,6 +989,27 @@ public final class CoreMetrics {
       .setOptimizedBestValue(true)
       .create();
 
+  /**
+   * @since 3.2
+   */
+  public static final String DUPLICATIONS_TIMED_OUT_FILES_KEY = "duplications_timed_out_files";
+
+  /**
+   * For files: 1 if detection of duplications was cancelled because of timeout, so that duplications of this file are unknown.
+   * For other resources: amount of such files under this resource.
+   *
+   * @since 3.2
+   */
+  public static final Metric DUPLICATIONS_TIMED_OUT_FILES = new Metric.Builder(DUPLICATIONS_TIMED_OUT_FILES_KEY,
+      "Files with duplications timeout", Metric.ValueType.INT)
+      .setDescription("Files for which detection of duplications was cancelled because of timeout")
+      .setDirection(Metric.DIRECTION_WORST)
+      .setQualitative(false)
+      .setDomain(DOMAIN_DUPLICATION)
+      .setBestValue(0.0)
+      .setOptimizedBestValue(true)
+      .create();
+
   public static final String DUPLICATED_LINES_DENSITY_KEY = "duplicated_lines_density";
   public static final Metric DUPLICATED_LINES_DENSITY = new Metric.Builder(DUPLICATED_LINES_DENSITY_KEY, "Duplicated lines (%)", Metric.ValueType.PERCENT)
       .setDescription("Duplicated lines balanced by statements")
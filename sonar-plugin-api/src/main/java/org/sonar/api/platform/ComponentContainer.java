@@ -35,7 +35,7 @@ import org.sonar.api.config.PropertyDefinitions;
  */
 public class ComponentContainer implements BatchComponent, ServerComponent {
 
-  ComponentContainer parent, child; // no need for multiple children
+  ComponentContainer parent, child; // child is the last created one
   MutablePicoContainer pico;
   PropertyDefinitions propertyDefinitions;
 
@@ -129,6 +129,20 @@ public class ComponentContainer implements BatchComponent, ServerComponent {
     return this;
   }
 
+  /**
+   * Removes the given child container. Contrary to {@link #removeChild()}, it supports the parent containers
+   * that have several children at the same time.
+   *
+   * @since 3.2
+   */
+  public final ComponentContainer removeChild(ComponentContainer childToBeRemoved) {
+    pico.removeChildContainer(childToBeRemoved.pico);
+    if (child == childToBeRemoved) {
+      child = null;
+    }
+    return this;
+  }
+
   public final ComponentContainer createChild() {
     return new ComponentContainer(this);
   }
@@ -20,6 +20,7 @@
 package org.sonar.api.batch;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.junit.Test;
 import org.sonar.api.BatchExtension;
 import org.sonar.api.measures.CoreMetrics;
@@ -27,8 +28,11 @@ import org.sonar.api.measures.Metric;
 import org.sonar.api.platform.ComponentContainer;
 import org.sonar.api.resources.Project;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
@@ -233,6 +237,24 @@ public class BatchExtensionDictionnaryTest {
     assertEquals(post, extensions.get(2));
   }
 
+  @Test
+  public void getPredecessors() {
+    BatchExtension pre = new PreSensor();
+    BatchExtension a = new GeneratesSomething("foo");
+    BatchExtension b = new MethodDependentOf("foo");
+    BatchExtension c = new MethodDependentOf(b);
+    BatchExtension independent = new FakeSensor();
+
+    BatchExtensionDictionnary selector = newSelector();
+    Map<BatchExtension, Set<BatchExtension>> predecessors = selector.getPredecessors(Arrays.asList(c, independent, b, a, pre));
+
+    assertThat(predecessors.get(pre).isEmpty(), is(true));
+    assertThat(predecessors.get(a), is((Set) Sets.newHashSet(pre)));
+    assertThat(predecessors.get(b), is((Set) Sets.newHashSet(pre, a)));
+    assertThat(predecessors.get(c), is((Set) Sets.newHashSet(pre, a, b)));
+    assertThat(predecessors.get(independent), is((Set) Sets.newHashSet(pre)));
+  }
+
   @Test
   public void buildStatusCheckersAreExecutedAfterOtherPostJobs() {
     BuildBreaker checker = new BuildBreaker() {
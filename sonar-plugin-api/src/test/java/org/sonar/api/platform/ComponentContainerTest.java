@@ -80,6 +80,23 @@ public class ComponentContainerTest {
     assertThat(parent.getChild()).isNull();
   }
 
+  @Test
+  public void shouldRemoveOneOfSeveralChildren() {
+    ComponentContainer parent = new ComponentContainer();
+    parent.startComponents();
+
+    ComponentContainer first = parent.createChild();
+    ComponentContainer second = parent.createChild();
+    assertThat(parent.getChild()).isSameAs(second);
+
+    parent.removeChild(first);
+    assertThat(parent.getChild()).isSameAs(second);
+    assertThat(parent.getPicoContainer().removeChildContainer(first.getPicoContainer())).isFalse();
+
+    parent.removeChild(second);
+    assertThat(parent.getChild()).isNull();
+  }
+
   @Test
   public void shouldForwardStartAndStopToDescendants() {
     ComponentContainer grandParent = new ComponentContainer();
@@ -243,10 +243,11 @@ class ResourceController < ApplicationController
 
     # create duplication groups
     @duplication_groups = []
-    if duplications_data && duplications_data.measure_data && duplications_data.measure_data.data
-      dups = Document.new duplications_data.measure_data.data.to_s
-      if XPath.match(dups, "//g").size > 0
-        parse_duplications(dups, @duplication_groups)
+    data = duplications_data.raw_data if duplications_data
+    if data
+      blocks_by_group = read_duplications(data)
+      if blocks_by_group
+        parse_duplications(blocks_by_group, @duplication_groups)
       else
         # This is the format prior to Sonar 2.12 => we display nothing but a message
         @duplication_group_warning = message('duplications.old_format_should_reanalyze')
@@ -283,14 +284,36 @@ class ResourceController < ApplicationController
     render :action => 'index', :layout => !request.xhr?
   end
 
-  def parse_duplications(dups, duplication_groups)
+  # Returns an array of groups of blocks {:r, :l, :s}, or nil if data is in the format prior to Sonar 2.12
+  def read_duplications(data)
+    if Java::OrgSonarCoreDuplication::DuplicationsData.isCompact(data)
+      # see org.sonar.core.duplication.DuplicationsData
+      Java::OrgSonarCoreDuplication::DuplicationsData.decode(data).getGroups().map do |group|
+        group.map { |block| {:r => block.getResourceKey(), :l => block.getLines(), :s => block.getStartLine()} }
+      end
+    else
+      dups = Document.new data.to_s
+      return nil if XPath.match(dups, "//g").empty?
+      blocks_by_group = []
+      dups.elements.each("duplications/g") do |group|
+        blocks = []
+        group.each_element("b") do |block|
+          blocks << {:r => block.attributes['r'], :l => block.attributes['l'], :s => block.attributes['s']}
+        end
+        blocks_by_group << blocks
+      end
+      blocks_by_group
+    end
+  end
+
+  def parse_duplications(blocks_by_group, duplication_groups)
     resource_by_key = {}
     resource_by_key[@resource.key] = @resource
     dups_found_on_deleted_resource = false
-    dups.elements.each("duplications/g") do |group|
+    blocks_by_group.each do |group|
       dup_group = []
-      group.each_element("b") do |block|
-        resource_key = block.attributes['r']
+      group.each do |block|
+        resource_key = block[:r]
         resource = resource_by_key[resource_key]
         unless resource
           # we use the resource_by_key map for optimization
@@ -298,7 +321,7 @@ class ResourceController < ApplicationController
           resource_by_key[resource_key] = resource
         end
         if resource
-          dup_group << {:resource => resource, :lines_count => block.attributes['l'], :from_line => block.attributes['s']}
+          dup_group << {:resource => resource, :lines_count => block[:l], :from_line => block[:s]}
         else
           dups_found_on_deleted_resource = true
         end
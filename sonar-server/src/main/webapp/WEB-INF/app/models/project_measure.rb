@@ -50,12 +50,22 @@ class ProjectMeasure < ActiveRecord::Base
 
   def data
     if metric.data?
-      text_value || (measure_data ? measure_data.data : nil)
+      value = raw_data
+      if metric.key=='duplications_data'
+        # duplications can be stored in a compact format by the batch, see org.sonar.core.duplication.DuplicationsData
+        value = Java::OrgSonarCoreDuplication::DuplicationsData.toXml(value)
+      end
+      value
     else
       text_value
     end
   end
 
+  # data as stored by the batch, whatever its length
+  def raw_data
+    text_value || (measure_data ? measure_data.data : nil)
+  end
+
   def data_as_line_distribution
     @line_distribution ||=
       begin
@@ -22,6 +22,11 @@ include ActionView::Helpers::JavaScriptHelper
 class SnapshotSource < ActiveRecord::Base
   belongs_to :snapshot
 
+  # sources can be stored compressed by the batch, see org.sonar.core.source.SourceCompression
+  def data
+    Java::OrgSonarCoreSource::SourceCompression.decompress(read_attribute(:data))
+  end
+
   def to_hash_json(options={})
     from = (options[:from] ? options[:from].to_i - 1 : 0)
     to = (options[:to] ? options[:to].to_i - 2 : -1)
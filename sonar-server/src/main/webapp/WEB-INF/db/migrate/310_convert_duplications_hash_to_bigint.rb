@@ -0,0 +1,49 @@
+#
+# Sonar, open source software quality management tool.
+# Copyright (C) 2008-2012 SonarSource
+# mailto:contact AT sonarsource DOT com
+#
+# Sonar is free software; you can redistribute it and/or
+# modify it under the terms of the GNU Lesser General Public
+# License as published by the Free Software Foundation; either
+# version 3 of the License, or (at your option) any later version.
+#
+# Sonar is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+# Lesser General Public License for more details.
+#
+# You should have received a copy of the GNU Lesser General Public
+# License along with Sonar; if not, write to the Free Software
+# Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+#
+#
+# Sonar 3.2
+#
+class ConvertDuplicationsHashToBigint < ActiveRecord::Migration
+
+  class DuplicationsIndex < ActiveRecord::Base
+    set_table_name 'duplications_index'
+  end
+
+  def self.up
+    # blocks are hashed differently since Sonar 3.2, so the stored blocks can not match anymore.
+    # They are replaced by the next analysis of each project.
+    DuplicationsIndex.delete_all
+
+    begin
+      remove_index 'duplications_index', :name => 'duplications_index_hash'
+    rescue
+      # ignore
+    end
+    remove_column 'duplications_index', 'hash'
+    add_column 'duplications_index', 'hash_value', :big_integer, :null => false
+
+    begin
+      add_index 'duplications_index', 'hash_value', :name => 'duplications_index_hash'
+    rescue
+      # ignore
+    end
+  end
+
+end